@@ -0,0 +1,79 @@
+package benchmarks;
+
+import backend.BackendException;
+import backend.BackendSession;
+import config.Config;
+import model.Post;
+import model.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end round trips of the most frequent BackendSession operations against a real node.
+ * The user cache is disabled, so every call reaches the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BackendSessionBenchmark {
+
+    private static final int USERS = 100;
+
+    @Param({"10", "100"})
+    int postsPerUser;
+
+    BackendSession session;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        String contactPoint = EmbeddedCassandra.contactPoint();
+        EmbeddedCassandra.createSchema(contactPoint);
+
+        Properties properties = new Properties();
+        properties.setProperty("user_cache_max_size", "0");
+        session = new BackendSession(contactPoint, EmbeddedCassandra.KEYSPACE, new Config(properties));
+
+        for (int u = 0; u < USERS; u++) {
+            session.addUser(nick(u), "password", "Jan", "Kowalski", "01-02-1997", "Hello, my name is Jan");
+            for (int p = 0; p < postsPerUser; p++) {
+                session.addPost(nick(u), "post number " + p);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        session.close();
+    }
+
+    private static String nick(int i) {
+        return "user" + i;
+    }
+
+    private String nextNick() {
+        next = (next + 1) % USERS;
+        return nick(next);
+    }
+
+    @Benchmark
+    public User selectUser() throws BackendException {
+        return session.selectUser(nextNick());
+    }
+
+    @Benchmark
+    public ArrayList<Post> selectPosts() throws BackendException {
+        return session.selectPosts(nextNick());
+    }
+
+    @Benchmark
+    public Post addPost() throws BackendException {
+        return session.addPost(nextNick(), "benchmark post");
+    }
+}
@@ -0,0 +1,210 @@
+package benchmarks;
+
+import backend.BackendSession;
+import cdc.CdcConsumer;
+import cdc.ChangeHandler;
+import cdc.ChangeHandlers;
+import config.Config;
+import graph.SocialGraph;
+import model.ChangeEvent;
+import model.Post;
+import model.User;
+import org.openjdk.jmh.annotations.*;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Reading and decoding the CDC log of the embedded node. The setup writes users, follows, posts in both layouts,
+ * post edits, profile copy rewrites and unfollows, drains the node so that its segments move to cdc_raw, and
+ * checks once that the consumer decodes each of them into the expected events and brings an empty follow graph
+ * to the expected edges. Every invocation then consumes hard links to the same segments with a new consumer.
+ * Needs the embedded node, as the consumer reads its files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CdcConsumerBenchmark {
+
+    private static final int USERS = 100;
+    private static final int FOLLOWS_PER_USER = 10;
+    private static final int UNFOLLOWS_PER_USER = 2;
+    private static final int POSTS_PER_USER = 10;
+    private static final int EDITS_PER_USER = 2;
+
+    BackendSession session;
+    Config consumerConfig;
+    Path segments;
+    Path copy;
+    CdcConsumer consumer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        String contactPoint = EmbeddedCassandra.contactPoint();
+        Path storage = EmbeddedCassandra.storageDirectory();
+        if (storage == null) {
+            throw new IllegalStateException("CdcConsumerBenchmark reads the files of the embedded node, "
+                    + "it cannot run against -Dbench.contact_point");
+        }
+        EmbeddedCassandra.createSchema(contactPoint);
+
+        Properties properties = new Properties();
+        properties.setProperty("user_cache_max_size", "0");
+        session = new BackendSession(contactPoint, EmbeddedCassandra.KEYSPACE, new Config(properties));
+        properties.setProperty("posts_layout", "bucketed");
+        try (BackendSession bucketed = new BackendSession(contactPoint, EmbeddedCassandra.KEYSPACE, new Config(properties))) {
+            CdcConsumer.setCdcEnabled(session, true);
+            writeChanges(bucketed);
+        }
+
+        // the consumer resolves cassandra.yaml paths relative to the node's storage directory
+        System.setProperty("cassandra.storagedir", storage.toString());
+        Properties consumerProperties = new Properties();
+        consumerProperties.setProperty("cdc_consumer", "true");
+        consumerProperties.setProperty("cdc_cassandra_config", storage.resolve("cassandra.yaml").toString());
+        consumerProperties.setProperty("cdc_checkpoint_file", storage.resolve("cdc-checkpoint").toString());
+        consumerConfig = new Config(consumerProperties);
+        // registers the schema while the node still accepts connections
+        CdcConsumer.fromConfig(session, consumerConfig, Collections.emptyList());
+
+        drain();
+        segments = storage.resolve("cdc_raw");
+        copy = storage.resolve("cdc_copy");
+        verify();
+    }
+
+    private void writeChanges(BackendSession bucketed) throws Exception {
+        for (int u = 0; u < USERS; u++) {
+            session.addUser(nick(u), "password", "Jan", "Kowalski", "01-02-1997", "Hello, my name is Jan");
+        }
+        List<User> users = new ArrayList<>(USERS);
+        for (int u = 0; u < USERS; u++) {
+            users.add(session.selectUser(nick(u)));
+        }
+        for (int u = 0; u < USERS; u++) {
+            for (int f = 1; f <= FOLLOWS_PER_USER; f++) {
+                session.addFollowAsync(users.get(u), users.get((u + f) % USERS)).get();
+            }
+            for (int p = 0; p < POSTS_PER_USER; p++) {
+                Post post = (p % 2 == 0 ? session : bucketed).addPost(nick(u), "post number " + p);
+                if (p < EDITS_PER_USER) {
+                    post.setText("edited post number " + p);
+                    session.updatePost(post);
+                }
+            }
+        }
+        long now = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+        for (int u = 0; u < USERS; u++) {
+            // a profile copy rewrite of the first followee, which must not touch the graph
+            session.updateFollowingAsync(nick(u), users.get((u + 1) % USERS), now).get();
+            for (int f = 1; f <= UNFOLLOWS_PER_USER; f++) {
+                session.removeFollowerIfPresentAsync(nick(u), nick((u + f) % USERS)).get();
+                session.removeFollowingAsync(nick(u), nick((u + f) % USERS)).get();
+            }
+        }
+    }
+
+    /**
+     * Flushes the node and moves all its commit log segments to cdc_raw. The node stops accepting writes.
+     */
+    private static void drain() throws Exception {
+        JMXServiceURL url = new JMXServiceURL("service:jmx:rmi:///jndi/rmi://127.0.0.1:"
+                + EmbeddedCassandra.JMX_PORT + "/jmxrmi");
+        try (JMXConnector connector = JMXConnectorFactory.connect(url)) {
+            MBeanServerConnection connection = connector.getMBeanServerConnection();
+            connection.invoke(new ObjectName("org.apache.cassandra.db:type=StorageService"), "drain", null, null);
+        }
+    }
+
+    private void verify() throws Exception {
+        linkSegments();
+        List<ChangeEvent> events = new ArrayList<>();
+        SocialGraph graph = new SocialGraph.Builder(0, 0).build();
+        ChangeHandler collector = events::add;
+        CdcConsumer verifying = new CdcConsumer(session, copy.toFile(), copy.resolve("checkpoint"),
+                List.of(collector, ChangeHandlers.graphMaintenance(graph)));
+        verifying.pollOnce();
+
+        int users = 0, follows = 0, unfollows = 0, profileRewrites = 0, posts = 0, edits = 0;
+        for (ChangeEvent event : events) {
+            switch (event.getTable()) {
+                case USERS:
+                    if (event.isInserted()) users++;
+                    break;
+                case FOLLOWING:
+                    if (event.isDeletion()) unfollows++;
+                    else if (event.isInserted()) follows++;
+                    else if (event.getColumns().contains("followingbio")) profileRewrites++;
+                    break;
+                case POSTS:
+                    if (event.isInserted()) posts++;
+                    else if (event.getColumns().contains("text")) edits++;
+                    break;
+                default:
+            }
+        }
+        check("users", users, USERS);
+        check("follows", follows, USERS * FOLLOWS_PER_USER);
+        check("unfollows", unfollows, USERS * UNFOLLOWS_PER_USER);
+        check("profile copy rewrites", profileRewrites, USERS);
+        check("posts", posts, USERS * POSTS_PER_USER);
+        check("post edits", edits, USERS * EDITS_PER_USER);
+        check("graph edges", graph.edgeCount(), USERS * (FOLLOWS_PER_USER - UNFOLLOWS_PER_USER));
+        try (DirectoryStream<Path> left = Files.newDirectoryStream(copy, "CommitLog-*")) {
+            if (left.iterator().hasNext()) throw new IllegalStateException("Consumed segments were not deleted");
+        }
+        Files.delete(copy.resolve("checkpoint"));
+    }
+
+    private static void check(String what, long actual, long expected) {
+        if (actual != expected) {
+            throw new IllegalStateException("Decoded " + actual + " " + what + ", expected " + expected);
+        }
+    }
+
+    private void linkSegments() throws IOException {
+        Files.createDirectories(copy);
+        try (Stream<Path> files = Files.list(segments)) {
+            for (Path segment : (Iterable<Path>) files::iterator) {
+                Files.createLink(copy.resolve(segment.getFileName()), segment);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        session.close();
+    }
+
+    @Setup(Level.Invocation)
+    public void linkCopy() throws Exception {
+        linkSegments();
+        Files.deleteIfExists(copy.resolve("checkpoint"));
+        consumer = new CdcConsumer(session, copy.toFile(), copy.resolve("checkpoint"), Collections.emptyList());
+    }
+
+    private static String nick(int i) {
+        return "user" + i;
+    }
+
+    @Benchmark
+    public int pollOnce() throws IOException {
+        return consumer.pollOnce();
+    }
+}
@@ -0,0 +1,138 @@
+package benchmarks;
+
+import backend.BackendException;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Session;
+import schema.SchemaMigrator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provides a database for end-to-end benchmarks. When {@code -Dbench.contact_point} is given the benchmark
+ * runs against that node, otherwise a single Cassandra node is started in a child JVM. Cassandra 3.11 only runs
+ * on Java 8, so the child runs the {@code java} of {@code -Dbench.java_home}, the {@code JAVA8_HOME} environment
+ * variable or, when neither is set, of the benchmark JVM itself, with the benchmark jar as its classpath.
+ * The node keeps its data, commit log and CDC log in a temporary directory ({@link #storageDirectory()}),
+ * writes its output to {@code node.log} there and is stopped when the benchmark JVM exits.
+ * <p>
+ * A fresh keyspace is created and brought up to date with {@link SchemaMigrator}, so every benchmark run
+ * also checks that all migrations apply to an empty keyspace.
+ */
+final class EmbeddedCassandra {
+
+    static final String KEYSPACE = "bench";
+    static final int NATIVE_PORT = 9042;
+    static final int JMX_PORT = 7199;
+    private static final long STARTUP_TIMEOUT_SECONDS = 120;
+
+    private static Process node;
+    private static Path storage;
+
+    private EmbeddedCassandra() {
+    }
+
+    static synchronized String contactPoint() throws IOException {
+        String contactPoint = System.getProperty("bench.contact_point");
+        if (contactPoint != null) return contactPoint;
+
+        if (node == null) {
+            start();
+        }
+        return "127.0.0.1";
+    }
+
+    /**
+     * Directory of the node started by {@link #contactPoint()}, {@code null} when an external node is used.
+     */
+    static synchronized Path storageDirectory() {
+        return storage;
+    }
+
+    private static void start() throws IOException {
+        storage = Files.createTempDirectory("cassandra-bench");
+        Path yaml = storage.resolve("cassandra.yaml");
+        try (InputStream stream = EmbeddedCassandra.class.getResourceAsStream("/cassandra-embedded.yaml")) {
+            Files.copy(stream, yaml);
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add(javaHome().resolve("bin").resolve("java").toString());
+        command.add("-Xmx1g");
+        command.add("-Dcassandra.config=" + yaml.toUri());
+        command.add("-Dcassandra.storagedir=" + storage);
+        command.add("-Dcassandra-foreground=yes");
+        // lets the benchmarks flush the node over JMX
+        command.add("-Dcassandra.jmx.local.port=" + JMX_PORT);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("org.apache.cassandra.service.CassandraDaemon");
+        node = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(storage.resolve("node.log").toFile())
+                .start();
+        Runtime.getRuntime().addShutdownHook(new Thread(EmbeddedCassandra::stop, "embedded-cassandra-stop"));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(STARTUP_TIMEOUT_SECONDS);
+        while (!acceptsConnections()) {
+            if (!node.isAlive() || System.nanoTime() > deadline) {
+                stop();
+                throw new IOException("Embedded Cassandra did not start, see " + storage.resolve("node.log")
+                        + "; it needs Java 8, set -Dbench.java_home or JAVA8_HOME");
+            }
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while starting embedded Cassandra.", e);
+            }
+        }
+    }
+
+    private static Path javaHome() {
+        String home = System.getProperty("bench.java_home");
+        if (home == null) home = System.getenv("JAVA8_HOME");
+        if (home == null) home = System.getProperty("java.home");
+        return Paths.get(home);
+    }
+
+    private static boolean acceptsConnections() {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("127.0.0.1", NATIVE_PORT), 1000);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static synchronized void stop() {
+        if (node == null) return;
+        node.destroy();
+        try {
+            if (!node.waitFor(30, TimeUnit.SECONDS)) {
+                node.destroyForcibly().waitFor();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        node = null;
+    }
+
+    static void createSchema(String contactPoint) throws BackendException {
+        try (Cluster cluster = Cluster.builder().addContactPoint(contactPoint).build();
+             Session session = cluster.connect()) {
+            session.execute("DROP KEYSPACE IF EXISTS " + KEYSPACE);
+            session.execute("CREATE KEYSPACE " + KEYSPACE + " WITH REPLICATION = { 'class': 'SimpleStrategy', 'replication_factor': 1 }");
+            session.execute("USE " + KEYSPACE);
+            new SchemaMigrator(session, true).migrate();
+        }
+    }
+}
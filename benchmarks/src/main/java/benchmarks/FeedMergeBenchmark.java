@@ -0,0 +1,66 @@
+package benchmarks;
+
+import model.Post;
+import org.openjdk.jmh.annotations.*;
+import utils.PostMerger;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares assembling a feed by sorting all followees' posts (the original getRecentPosts approach)
+ * with the k-way merge of already ordered partitions used by FeedProvider.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeedMergeBenchmark {
+
+    @Param({"10", "100", "500"})
+    int followees;
+
+    @Param({"10", "100"})
+    int postsPerFollowee;
+
+    @Param({"100"})
+    int limit;
+
+    List<ArrayList<Post>> partitions;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        long now = System.currentTimeMillis();
+        partitions = new ArrayList<>(followees);
+        for (int f = 0; f < followees; f++) {
+            ArrayList<Post> posts = new ArrayList<>(postsPerFollowee);
+            long time = now - random.nextInt(60_000);
+            for (int p = 0; p < postsPerFollowee; p++) {
+                posts.add(new Post("user" + f, time, "post " + p));
+                time -= 1 + random.nextInt(3_600_000);
+            }
+            partitions.add(posts);
+        }
+    }
+
+    @Benchmark
+    public List<Post> globalSort() {
+        ArrayList<Post> recentPosts = new ArrayList<>();
+        for (ArrayList<Post> partition : partitions) {
+            recentPosts.addAll(partition);
+        }
+        recentPosts.sort(Comparator.comparingLong(Post::getCreationDate));
+        return recentPosts.subList(Math.max(0, recentPosts.size() - limit), recentPosts.size());
+    }
+
+    @Benchmark
+    public List<Post> heapMerge() {
+        return PostMerger.mergeNewestFirst(partitions, limit);
+    }
+}
@@ -0,0 +1,80 @@
+package benchmarks;
+
+import backend.BackendException;
+import graph.FollowRecommender;
+import graph.SocialGraph;
+import model.FollowSuggestion;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uncached "who to follow" computation for users following {@code degree} users, on a random graph in which every
+ * user follows {@code followeesPerUser} users, with the second degree taken from the in-memory follow graph.
+ * Compares counting on one thread with the fork-join pool of {@code parallelism} threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class RecommendationBenchmark {
+
+    private static final int USERS = 100000;
+    private static final int QUERIES = 16;
+
+    @Param({"10", "100", "1000"})
+    int degree;
+
+    @Param({"100"})
+    int followeesPerUser;
+
+    @Param({"1", "4"})
+    int parallelism;
+
+    FollowRecommender recommender;
+    String[] queryNicks;
+    int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        SocialGraph.Builder builder = new SocialGraph.Builder(USERS, USERS * followeesPerUser);
+        Set<Integer> followees = new HashSet<>();
+        for (int u = 0; u < USERS; u++) {
+            // the queried users follow degree users, the others followeesPerUser
+            int count = u < QUERIES ? degree : followeesPerUser;
+            followees.clear();
+            while (followees.size() < count) {
+                int followee = random.nextInt(USERS);
+                if (followee != u && followees.add(followee)) builder.add(nick(u), nick(followee));
+            }
+        }
+        SocialGraph graph = builder.build();
+        recommender = new FollowRecommender(null, graph, FollowRecommender.DEFAULT_RESULTS, degree,
+                FollowRecommender.DEFAULT_MAX_IN_FLIGHT, parallelism, 0, 0);
+        queryNicks = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queryNicks[i] = nick(i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        recommender.close();
+    }
+
+    private static String nick(int i) {
+        return "user" + i;
+    }
+
+    @Benchmark
+    public List<FollowSuggestion> compute() throws BackendException {
+        return recommender.compute(queryNicks[next++ & (QUERIES - 1)]);
+    }
+}
@@ -0,0 +1,132 @@
+package benchmarks;
+
+import backend.RowMappers;
+import backend.TimestampMillisCodec;
+import com.datastax.driver.core.CodecRegistry;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.DriverRows;
+import com.datastax.driver.core.Row;
+import model.Post;
+import model.User;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning result rows into model objects, as done for every row read by BackendSession.
+ * The {@code *ByName} methods map the same rows the way it was done before mappers read columns by index,
+ * looking every column up by name and decoding timestamps to {@link Date}. Run with {@code -prof gc}
+ * to compare allocated bytes per row ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowMappingBenchmark {
+
+    private static final int ROWS = 100;
+
+    Row[] userRows;
+    Row[] followerRows;
+    Row[] followerSummaryRows;
+    Row[] postRows;
+
+    @Setup
+    public void setUp() {
+        // same codecs as the cluster built by ClusterFactory
+        CodecRegistry registry = new CodecRegistry().register(TimestampMillisCodec.INSTANCE);
+        userRows = new Row[ROWS];
+        followerRows = new Row[ROWS];
+        followerSummaryRows = new Row[ROWS];
+        postRows = new Row[ROWS];
+        long now = System.currentTimeMillis();
+        // columns in the order of RowMappers column lists
+        for (int i = 0; i < ROWS; i++) {
+            userRows[i] = DriverRows.row(registry, "users",
+                    "nick", DataType.varchar(), "user" + i,
+                    "password", DataType.varchar(), "password",
+                    "firstName", DataType.varchar(), "Jan",
+                    "lastName", DataType.varchar(), "Kowalski",
+                    "birthDate", DataType.varchar(), "01-02-1997",
+                    "bio", DataType.varchar(), "Hello, my name is Jan");
+            followerRows[i] = DriverRows.row(registry, "followers",
+                    "followerNick", DataType.varchar(), "user" + i,
+                    "followerFirstName", DataType.varchar(), "Jan",
+                    "followerLastName", DataType.varchar(), "Kowalski",
+                    "followerBirthDate", DataType.varchar(), "01-02-1997",
+                    "followerBio", DataType.varchar(), "Hello, my name is Jan");
+            followerSummaryRows[i] = DriverRows.row(registry, "followers",
+                    "followerNick", DataType.varchar(), "user" + i,
+                    "followerFirstName", DataType.varchar(), "Jan",
+                    "followerLastName", DataType.varchar(), "Kowalski");
+            postRows[i] = DriverRows.row(registry, "posts",
+                    "authorNick", DataType.varchar(), "user" + i,
+                    "creationDate", DataType.timestamp(), now - i * 1000L,
+                    "text", DataType.varchar(), "I have worked last 96 hours nonstop and I feel great!");
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void toUser(Blackhole blackhole) {
+        for (Row row : userRows) {
+            blackhole.consume(RowMappers.toUser(row));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void toUserByName(Blackhole blackhole) {
+        for (Row row : userRows) {
+            blackhole.consume(new User(row.getString("nick"), row.getString("password"), row.getString("firstName"),
+                    row.getString("lastName"), row.getString("birthDate"), row.getString("bio")));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void toProfileCopy(Blackhole blackhole) {
+        for (Row row : followerRows) {
+            blackhole.consume(RowMappers.toProfileCopy(row));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void toFollowerByName(Blackhole blackhole) {
+        for (Row row : followerRows) {
+            blackhole.consume(new User(row.getString("followerNick"), "", row.getString("followerFirstName"),
+                    row.getString("followerLastName"), row.getString("followerBirthDate"), row.getString("followerBio")));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void toUserSummary(Blackhole blackhole) {
+        for (Row row : followerSummaryRows) {
+            blackhole.consume(RowMappers.toUserSummary(row));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void toPost(Blackhole blackhole) {
+        for (Row row : postRows) {
+            blackhole.consume(RowMappers.toPost(row));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void toPostByName(Blackhole blackhole) {
+        for (Row row : postRows) {
+            Date date = row.getTimestamp("creationDate");
+            blackhole.consume(date);
+            blackhole.consume(new Post(row.getString("authorNick"), date.getTime(), row.getString("text")));
+        }
+    }
+}
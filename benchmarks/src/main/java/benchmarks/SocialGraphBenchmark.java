@@ -0,0 +1,82 @@
+package benchmarks;
+
+import graph.SocialGraph;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follow checks and followee enumeration answered by the in-memory follow graph, on a random graph of
+ * {@code users * followeesPerUser} follows. The heap taken by the graph is printed during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class SocialGraphBenchmark {
+
+    private static final int QUERIES = 1024;
+
+    @Param({"100000", "1000000"})
+    int users;
+
+    @Param({"10"})
+    int followeesPerUser;
+
+    SocialGraph graph;
+    String[] nicks;
+    String[] queryNicks;
+    String[] queryTargets;
+    int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        nicks = new String[users];
+        for (int u = 0; u < users; u++) {
+            nicks[u] = "user" + u;
+        }
+        SocialGraph.Builder builder = new SocialGraph.Builder(users, users * followeesPerUser);
+        Set<Integer> followees = new HashSet<>();
+        for (int u = 0; u < users; u++) {
+            followees.clear();
+            while (followees.size() < followeesPerUser) {
+                int followee = random.nextInt(users);
+                if (followee != u && followees.add(followee)) builder.add(nicks[u], nicks[followee]);
+            }
+        }
+        graph = builder.build();
+        System.out.printf("%n%d users, %d follows, %.1f MB%n", graph.userCount(), graph.edgeCount(),
+                graph.sizeInBytes() / 1e6);
+
+        // half of the checked pairs are follows
+        queryNicks = new String[QUERIES];
+        queryTargets = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queryNicks[i] = nicks[random.nextInt(users)];
+            queryTargets[i] = i % 2 == 0 ? graph.following(queryNicks[i]).get(0) : nicks[random.nextInt(users)];
+        }
+    }
+
+    @Benchmark
+    public boolean isFollowing() {
+        int i = next++ & (QUERIES - 1);
+        return graph.isFollowing(queryNicks[i], queryTargets[i]);
+    }
+
+    @Benchmark
+    public void following(Blackhole blackhole) {
+        blackhole.consume(graph.following(queryNicks[next++ & (QUERIES - 1)]));
+    }
+
+    @Benchmark
+    public void followers(Blackhole blackhole) {
+        blackhole.consume(graph.followers(queryTargets[next++ & (QUERIES - 1)], 100));
+    }
+}
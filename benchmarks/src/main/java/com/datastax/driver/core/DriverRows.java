@@ -0,0 +1,44 @@
+package com.datastax.driver.core;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds real driver rows from Java values, so that row mapping can be measured without a database,
+ * including value decoding and column lookups done by the driver. Lives in the driver package because
+ * row construction is not part of the public driver API.
+ */
+public final class DriverRows {
+
+    private DriverRows() {
+    }
+
+    /**
+     * @param table           table the columns come from
+     * @param namesTypesValues consecutive triples of column name, {@link DataType} and value
+     */
+    public static Row row(String table, Object... namesTypesValues) {
+        return row(CodecRegistry.DEFAULT_INSTANCE, table, namesTypesValues);
+    }
+
+    /**
+     * @param registry         codecs used to encode the values and later to decode them from the row
+     * @param table            table the columns come from
+     * @param namesTypesValues consecutive triples of column name, {@link DataType} and value
+     */
+    public static Row row(CodecRegistry registry, String table, Object... namesTypesValues) {
+        int columns = namesTypesValues.length / 3;
+        ColumnDefinitions.Definition[] definitions = new ColumnDefinitions.Definition[columns];
+        List<ByteBuffer> data = new ArrayList<>(columns);
+        for (int i = 0; i < columns; i++) {
+            String name = (String) namesTypesValues[3 * i];
+            DataType type = (DataType) namesTypesValues[3 * i + 1];
+            Object value = namesTypesValues[3 * i + 2];
+            definitions[i] = new ColumnDefinitions.Definition("app", table, name.toLowerCase(), type);
+            data.add(registry.codecFor(type, value).serialize(value, ProtocolVersion.NEWEST_SUPPORTED));
+        }
+        return ArrayBackedRow.fromData(new ColumnDefinitions(definitions, registry), null,
+                ProtocolVersion.NEWEST_SUPPORTED, data);
+    }
+}
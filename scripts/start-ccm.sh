@@ -7,5 +7,5 @@ fi
 
 ccm create test -i $1 -v 3.11.8 -n 1 -s
 ccm node1 cqlsh -f ./scripts/create-keyspace.cql
-ccm node1 cqlsh -f ./scripts/create-schema.cql
+mvn -q compile exec:java -Dexec.mainClass=schema.SchemaMigrator -Dexec.args="contact_point=${1}1"
 ccm node1 cqlsh -f ./scripts/import-sample-data.cql
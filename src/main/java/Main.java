@@ -2,8 +2,16 @@ import backend.BackendException;
 import backend.BackendSession;
 import cli.Menu;
 import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import config.Config;
+import graph.FollowRecommender;
+import graph.SocialGraph;
+import model.FeedPage;
+import model.FollowSuggestion;
+import model.Page;
 import model.Post;
 import model.User;
+import model.UserMatch;
+import model.UserSummary;
 import org.apache.cassandra.exceptions.RequestTimeoutException;
 import org.apache.tools.ant.taskdefs.Sleep;
 import utils.*;
@@ -11,6 +19,8 @@ import utils.*;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
 import java.util.Properties;
 
 public class Main {
@@ -26,6 +36,7 @@ public class Main {
         BackendSession session = null;
 
         Properties properties = new Properties();
+        Config config = new Config(properties);
         try {
             properties.load(Main.class.getClassLoader().getResourceAsStream(PROPERTIES_FILENAME));
 
@@ -36,16 +47,42 @@ public class Main {
         }
 
         try {
-            session = new BackendSession(contactPoint, keyspace);
+            session = new BackendSession(contactPoint, keyspace, config);
         } catch (BackendException ex) {
             handleException(ex);
         }
 
+        SocialGraph graph = null;
+        try {
+            graph = SocialGraph.fromConfig(session, config);
+        } catch (BackendException ex) {
+            handleException(ex);
+        }
+
+        FanoutService fanoutService = null;
+        if ("fanout".equalsIgnoreCase(config.getString("feed_mode", "pull"))) {
+            fanoutService = new FanoutService(session,
+                    config.getInt("fanout_follower_threshold", FanoutService.DEFAULT_FOLLOWER_THRESHOLD),
+                    config.getInt("fanout_batch_size", FanoutService.DEFAULT_BATCH_SIZE), graph);
+        }
+
+        // interrupted propagations are resumed by the API server or utils.ProfilePropagator, not by every client
+        ProfilePropagator profilePropagator = new ProfilePropagator(session,
+                config.getInt("propagation_page_size", ProfilePropagator.DEFAULT_PAGE_SIZE),
+                config.getInt("propagation_max_in_flight", ProfilePropagator.DEFAULT_MAX_IN_FLIGHT));
+
+        FeedCache feedCache = FeedCache.fromConfig(session, config);
         LoginValidator loginValidator = new LoginValidator(session);
-        UserDataValidator userDataValidator = new UserDataValidator(session);
-        PostManager postManager = new PostManager(session);
-        FeedProvider feedProvider = new FeedProvider(session);
-        FollowerManager followerManager = new FollowerManager(session);
+        UserDataValidator userDataValidator = new UserDataValidator(session, profilePropagator);
+        PostWriteQueue postQueue = PostWriteQueue.fromConfig(session, config);
+        PostManager postManager = new PostManager(session, fanoutService, feedCache, postQueue);
+        FeedProvider feedProvider = new FeedProvider(session,
+                config.getInt("feed_max_in_flight", FeedProvider.DEFAULT_MAX_IN_FLIGHT), fanoutService, feedCache, graph);
+        FollowerManager followerManager = new FollowerManager(session, fanoutService, feedCache, graph);
+        UserSearch userSearch = new UserSearch(session, config);
+        FollowRecommender recommender = FollowRecommender.fromConfig(session, config, graph);
+        int feedPageSize = config.getInt("feed_page_size", FeedProvider.DEFAULT_PAGE_SIZE);
+        int listPageSize = config.getInt("list_page_size", Menu.DEFAULT_LIST_PAGE_SIZE);
 
 //		String output = session.selectAllPosts();
 //		System.out.println("Table contents: \n" + output);
@@ -131,10 +168,14 @@ public class Main {
                 if (action.equals(Menu.S_FOLLOWING)) {
                     System.out.println(menu.getFollowingHeader());
                     try {
-                        ArrayList<String> following = session.selectFollowingUsersNicknames(nickname);
-                        for (String name : following) {
-                            System.out.println(name);
-                        }
+                        String cursor = null;
+                        do {
+                            Page<UserSummary> page = session.selectFollowingPage(nickname, cursor, listPageSize);
+                            for (UserSummary user : page.getItems()) {
+                                System.out.println(user.getNickname());
+                            }
+                            cursor = page.getCursor();
+                        } while (cursor != null && menu.askForMoreUsers());
                     } catch (Exception ex) {
                         handleException(ex);
                     }
@@ -143,10 +184,14 @@ public class Main {
                 if (action.equals(Menu.S_FOLLOWERS)) {
                     System.out.println(menu.getFollowersHeader());
                     try {
-                        ArrayList<User> followers = session.selectFollowers(nickname);
-                        for (User user : followers) {
-                            System.out.println(user.getNickname());
-                        }
+                        String cursor = null;
+                        do {
+                            Page<UserSummary> page = session.selectFollowersPage(nickname, cursor, listPageSize);
+                            for (UserSummary user : page.getItems()) {
+                                System.out.println(user.getNickname());
+                            }
+                            cursor = page.getCursor();
+                        } while (cursor != null && menu.askForMoreUsers());
                     } catch (Exception ex) {
                         handleException(ex);
                     }
@@ -154,14 +199,17 @@ public class Main {
 
                 if (action.equals(Menu.POSTS)) {
                     System.out.println(menu.getPostsHeader());
-                    ArrayList<Post> posts;
                     try {
-                        posts = feedProvider.getRecentPosts(nickname);
-                        for (Post post : posts) {
-                            System.out.println(post.getAuthorNick() + " at " + post.getCreationDate() + " posted:");
-                            System.out.println(post.getText());
-                            System.out.println("\n\t\t\t***\t\t\t***\t\t\t\n");
-                        }
+                        String cursor = null;
+                        do {
+                            FeedPage page = feedProvider.getFeedPage(nickname, cursor, feedPageSize);
+                            for (Post post : page.getPosts()) {
+                                System.out.println(post.getAuthorNick() + " at " + new Date(post.getCreationDate()) + " posted:");
+                                System.out.println(post.getText());
+                                System.out.println("\n\t\t\t***\t\t\t***\t\t\t\n");
+                            }
+                            cursor = page.getCursor();
+                        } while (cursor != null && menu.askForNextPage());
                     } catch (Exception ex) {
                         handleException(ex);
                     }
@@ -169,10 +217,25 @@ public class Main {
 
                 if (action.equals(Menu.SEARCH)) {
 
+                    if (recommender != null) {
+                        try {
+                            List<FollowSuggestion> suggestions = recommender.recommend(nickname);
+                            if (!suggestions.isEmpty()) System.out.println(menu.getSuggestions(suggestions));
+                        } catch (BackendException exception) {
+                            System.out.println(exception.getMessage());
+                        }
+                    }
                     String searchedName = menu.getSearchedName();
                     User searchedUser = null;
                     try {
                         searchedUser = session.selectUser(searchedName);
+                        if (searchedUser == null) {
+                            List<UserMatch> matches = userSearch.search(searchedName);
+                            if (!matches.isEmpty()) {
+                                searchedName = matches.get(menu.getSearchResultNumber(matches)).getNick();
+                                searchedUser = session.selectUser(searchedName);
+                            }
+                        }
                     } catch (Exception ex) {
                         handleException(ex);
                     }
@@ -181,6 +244,11 @@ public class Main {
                     } else {
                         System.out.println(menu.getUserInfoHeader(searchedName));
                         System.out.println(searchedUser.toString());
+                        try {
+                            System.out.println(menu.getUserCounters(session.selectCounters(searchedName)));
+                        } catch (BackendException exception) {
+                            System.out.println(exception.getMessage());
+                        }
 
                         boolean follow = false;
                         boolean unfollow = false;
@@ -207,6 +275,9 @@ public class Main {
                                         followerManager.unfollowUser(loggedUser, searchedUser);
                                         System.out.println("You are no longer following " + searchedName);
                                     }
+                                    if (recommender != null && !userAction.equals(Menu.EXIT)) {
+                                        recommender.invalidate(nickname);
+                                    }
                                 } catch (Exception ex) {
                                     handleException(ex);
                                 }
@@ -238,6 +309,20 @@ public class Main {
             }
         }
 
+        if (recommender != null) {
+            recommender.close();
+        }
+        if (postQueue != null) {
+            postQueue.close();
+        }
+        if (fanoutService != null) {
+            fanoutService.close();
+        }
+        profilePropagator.close();
+        if (graph != null) {
+            graph.close();
+        }
+        session.close();
         System.exit(0);
     }
 
@@ -0,0 +1,120 @@
+package backend;
+
+import com.codahale.metrics.*;
+import config.Config;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Application metrics: latency, call and error counts of prepared statements and manager operations,
+ * together with cache, retry and driver statistics. Published through JMX and periodically reported
+ * to the log or to CSV files.
+ */
+public class AppMetrics implements AutoCloseable {
+
+    @FunctionalInterface
+    public interface TimedOperation<T> {
+        T call() throws BackendException;
+    }
+
+    private final MetricRegistry registry = new MetricRegistry();
+    private final JmxReporter jmxReporter;
+    private final ScheduledReporter scheduledReporter;
+
+    public AppMetrics(Config config) {
+        if (config.getBoolean("metrics_jmx_enabled", true)) {
+            jmxReporter = JmxReporter.forRegistry(registry)
+                    .inDomain(config.getString("metrics_jmx_domain", "cassandra-faceter"))
+                    .convertDurationsTo(TimeUnit.MILLISECONDS)
+                    .build();
+            jmxReporter.start();
+        } else {
+            jmxReporter = null;
+        }
+
+        long interval = config.getLong("metrics_report_interval_seconds", 0);
+        if (interval > 0) {
+            scheduledReporter = "csv".equalsIgnoreCase(config.getString("metrics_reporter", "log"))
+                    ? csvReporter(new File(config.getString("metrics_csv_directory", "metrics")))
+                    : Slf4jReporter.forRegistry(registry)
+                            .outputTo(LoggerFactory.getLogger("metrics"))
+                            .convertDurationsTo(TimeUnit.MILLISECONDS)
+                            .build();
+            scheduledReporter.start(interval, TimeUnit.SECONDS);
+        } else {
+            scheduledReporter = null;
+        }
+    }
+
+    private CsvReporter csvReporter(File directory) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Could not create metrics directory " + directory);
+        }
+        return CsvReporter.forRegistry(registry)
+                .formatFor(Locale.ROOT)
+                .convertDurationsTo(TimeUnit.MILLISECONDS)
+                .build(directory);
+    }
+
+    public MetricRegistry getRegistry() {
+        return registry;
+    }
+
+    public Timer timer(String name) {
+        return registry.timer(name);
+    }
+
+    public Histogram histogram(String name) {
+        return registry.histogram(name);
+    }
+
+    /**
+     * Counts a failure of {@code name} operation under its exception type.
+     */
+    public void markError(String name, Throwable error) {
+        Throwable cause = error instanceof BackendException && error.getCause() != null ? error.getCause() : error;
+        registry.meter(MetricRegistry.name(name, "errors", cause.getClass().getSimpleName())).mark();
+    }
+
+    /**
+     * Runs a manager operation measuring its latency and counting its failures.
+     */
+    public <T> T time(String name, TimedOperation<T> operation) throws BackendException {
+        Timer.Context context = registry.timer(MetricRegistry.name(name, "latency")).time();
+        try {
+            return operation.call();
+        } catch (BackendException | RuntimeException e) {
+            markError(name, e);
+            throw e;
+        } finally {
+            context.stop();
+        }
+    }
+
+    public void registerGauge(String name, Gauge<?> gauge) {
+        registry.remove(name);
+        registry.register(name, gauge);
+    }
+
+    /**
+     * Publishes all metrics of {@code metrics} under {@code prefix}.
+     */
+    public void registerAll(String prefix, MetricSet metrics) {
+        registry.removeMatching((metricName, metric) -> metricName.startsWith(prefix + "."));
+        registry.register(prefix, metrics);
+    }
+
+    @Override
+    public void close() {
+        if (scheduledReporter != null) {
+            scheduledReporter.report();
+            scheduledReporter.stop();
+        }
+        if (jmxReporter != null) {
+            jmxReporter.stop();
+        }
+    }
+}
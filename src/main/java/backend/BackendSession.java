@@ -1,16 +1,47 @@
 package backend;
 
 import com.datastax.driver.core.*;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.datastax.driver.core.exceptions.NoHostAvailableException;
-import com.datastax.driver.core.policies.DefaultRetryPolicy;
+import com.datastax.driver.core.exceptions.PagingStateException;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import config.Config;
+import model.Page;
 import model.Post;
+import model.PropagationCheckpoint;
 import model.User;
+import model.UserCounters;
+import model.UserMatch;
+import model.UserSummary;
 import org.apache.cassandra.exceptions.RequestTimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import schema.SchemaMigrator;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /*
  * For error handling done right see:
@@ -23,66 +54,201 @@ import java.util.Date;
  * https://stackoverflow.com/questions/30329956/cassandra-datastax-driver-retry-policy )
  */
 
-public class BackendSession {
+/**
+ * Access to the database. Thread-safe: prepared statements and caches belong to the instance, so one instance
+ * is shared by the whole process and closed when the process stops using the database.
+ */
+public class BackendSession implements AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(BackendSession.class);
 
+    public static final int DEFAULT_USER_CACHE_SIZE = 10000;
+    public static final int DEFAULT_USER_CACHE_TTL_SECONDS = 300;
+    public static final int DEFAULT_USER_CACHE_NEGATIVE_TTL_SECONDS = 10;
+    private static final int KNOWN_BUCKETS_CACHE_SIZE = 10000;
+
+    private Cluster cluster;
     private Session session;
+    private ResilientExecutor executor;
+    private final ExpiringLruCache<String, User> userCache;
+    private final AppMetrics metrics;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    // time bucket width of the bucketed posts layout, null when posts are kept in one partition per author
+    private final PostBucketSize postBucketSize;
+    // author buckets already recorded in the authorbuckets table, saves an index write per post
+    private final ExpiringLruCache<String, Boolean> knownBuckets;
+    // metric names of prepared statements, e.g. SELECT_POSTS
+    private final Map<PreparedStatement, String> statementNames = new IdentityHashMap<>();
+    // writes which can be safely retried; reads are marked idempotent in the driver
+    private final Set<PreparedStatement> idempotentWrites = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Config config;
+    private final Map<String, ExecutionProfile> executionProfiles;
+    // profiles with settings applied to every bound statement, consistency levels are set on prepared statements
+    private final Map<PreparedStatement, ExecutionProfile> statementProfiles = new IdentityHashMap<>();
 
     public BackendSession(String contactPoint, String keyspace) throws BackendException {
+        this(contactPoint, keyspace, new Config(new Properties()));
+    }
+
+    /**
+     * @param contactPoints comma separated list of contact points, driver tuning is taken from {@code config}
+     */
+    public BackendSession(String contactPoints, String keyspace, Config config) throws BackendException {
+        userCache = new ExpiringLruCache<>(config.getInt("user_cache_max_size", DEFAULT_USER_CACHE_SIZE),
+                TimeUnit.SECONDS.toMillis(config.getInt("user_cache_ttl_seconds", DEFAULT_USER_CACHE_TTL_SECONDS)),
+                TimeUnit.SECONDS.toMillis(config.getInt("user_cache_negative_ttl_seconds", DEFAULT_USER_CACHE_NEGATIVE_TTL_SECONDS)));
+        metrics = new AppMetrics(config);
+        postBucketSize = PostBucketSize.fromConfig(config);
+        knownBuckets = new ExpiringLruCache<>(KNOWN_BUCKETS_CACHE_SIZE, TimeUnit.HOURS.toMillis(1), 0);
+        this.config = config;
+        executionProfiles = ExecutionProfile.fromConfig(config);
 
-        Cluster cluster = Cluster.builder().addContactPoint(contactPoint).withRetryPolicy(DefaultRetryPolicy.INSTANCE).build();
         try {
+            cluster = ClusterFactory.build(contactPoints, config);
             session = cluster.connect(keyspace);
+            executor = new ResilientExecutor(session, config);
+            registerGauges(cluster);
         } catch (NoHostAvailableException e) {
+            close();
             throw new BackendException("Could not connect to the database. Please try again later.", e);
         } catch (Exception e) {
+            close();
             throw new BackendException("Unknown problem occured. Try restarting the application.", e);
         }
-        prepareStatements();
+        try {
+            if (config.getBoolean("schema_migrate_on_startup", false)) {
+                new SchemaMigrator(session).migrate();
+            }
+            prepareStatements();
+        } catch (BackendException e) {
+            close();
+            throw e;
+        }
     }
 
-    private static PreparedStatement SELECT_USER;
-    private static PreparedStatement SELECT_FOLLOWING_USERS;
-    private static PreparedStatement SELECT_FOLLOWING;
-    private static PreparedStatement SELECT_FOLLOWERS;
-    private static PreparedStatement SELECT_FOLLOWER;
-    private static PreparedStatement SELECT_POSTS;
-
-    private static PreparedStatement ADD_USER;
-    private static PreparedStatement ADD_POST;
-    private static PreparedStatement ADD_FOLLOWER;
-    private static PreparedStatement ADD_FOLLOWING;
-
-    private static PreparedStatement UPDATE_POST;
-
-    private static PreparedStatement UPDATE_FOLLOWERS;
-    private static PreparedStatement UPDATE_FOLLOWING;
-
-    private static PreparedStatement REMOVE_FOLLOWER;
-    private static PreparedStatement REMOVE_FOLLOWING;
+    private PreparedStatement SELECT_USER;
+    private PreparedStatement SELECT_FOLLOWING_USERS;
+    private PreparedStatement SELECT_FOLLOWING_SUMMARIES;
+    private PreparedStatement SELECT_FOLLOWING_NICKS;
+    private PreparedStatement SELECT_FOLLOWING;
+    private PreparedStatement SELECT_FOLLOWERS;
+    private PreparedStatement SELECT_FOLLOWER_SUMMARIES;
+    private PreparedStatement SELECT_FOLLOWER;
+    private PreparedStatement SELECT_POSTS;
+    private PreparedStatement SELECT_RECENT_POSTS;
+    private PreparedStatement SELECT_FOLLOWER_NICKS;
+    private PreparedStatement SELECT_TIMELINE;
+    private PreparedStatement SELECT_POSTS_BEFORE;
+    private PreparedStatement SELECT_POSTS_AFTER;
+    private PreparedStatement SELECT_TIMELINE_BEFORE;
+    private PreparedStatement SELECT_PULL_AUTHORS;
+    private PreparedStatement SELECT_FOLLOWER_NICKS_AFTER;
+    private PreparedStatement SELECT_FOLLOWING_NICKS_AFTER;
+    private PreparedStatement SELECT_PROPAGATIONS;
+    private PreparedStatement SELECT_COUNTERS;
+    private PreparedStatement RECONCILE_SELECT_COUNTERS;
+    private PreparedStatement COUNT_FOLLOWERS;
+    private PreparedStatement COUNT_FOLLOWING;
+    private PreparedStatement COUNT_POSTS;
+    private PreparedStatement SELECT_USER_NICKS;
+    private PreparedStatement SELECT_USER_NICKS_AFTER;
+    private PreparedStatement SELECT_POSTS_RANGE;
+    private PreparedStatement SELECT_FOLLOWS_RANGE;
+    private PreparedStatement SELECT_AUTHOR_BUCKETS;
+    private PreparedStatement SELECT_BUCKET_POSTS;
+    private PreparedStatement SELECT_BUCKET_POSTS_BEFORE;
+    private PreparedStatement SELECT_BUCKET_POSTS_AFTER;
+    private PreparedStatement COUNT_BUCKET_POSTS;
+    private PreparedStatement RECONCILE_SELECT_AUTHOR_BUCKETS;
+
+    private PreparedStatement ADD_USER;
+    private PreparedStatement REGISTER_USER;
+    private PreparedStatement ADD_POST;
+    private PreparedStatement ADD_FOLLOWER;
+    private PreparedStatement ADD_FOLLOWER_IF_ABSENT;
+    private PreparedStatement ADD_FOLLOWING;
+    private PreparedStatement ADD_TIMELINE_POST;
+    private PreparedStatement ADD_PULL_AUTHOR;
+    private PreparedStatement SAVE_PROPAGATION;
+    private PreparedStatement ADD_BUCKET_POST;
+    private PreparedStatement ADD_AUTHOR_BUCKET;
+
+    private PreparedStatement UPDATE_POST;
+    private PreparedStatement UPDATE_BUCKET_POST;
+
+    private PreparedStatement UPDATE_FOLLOWERS;
+    private PreparedStatement UPDATE_FOLLOWING;
+
+    private PreparedStatement REMOVE_FOLLOWER_IF_PRESENT;
+    private PreparedStatement REMOVE_FOLLOWING;
+    private PreparedStatement REMOVE_PROPAGATION;
+    private PreparedStatement SELECT_SEARCH_TERMS;
+    private PreparedStatement ADD_SEARCH_TERM;
+    private PreparedStatement REMOVE_SEARCH_TERM;
+
+    private PreparedStatement UPDATE_FOLLOWERS_COUNT;
+    private PreparedStatement UPDATE_FOLLOWING_COUNT;
+    private PreparedStatement UPDATE_POSTS_COUNT;
 
 
     private void prepareStatements() throws BackendException {
         try {
-            SELECT_USER = session.prepare("SELECT * FROM users WHERE nick = ?");
-            SELECT_FOLLOWER = session.prepare("SELECT * FROM followers WHERE nick = ? AND followerNick = ?;");
-            SELECT_FOLLOWERS = session.prepare("SELECT * FROM followers WHERE nick = ?;");
-            SELECT_FOLLOWING = session.prepare("SELECT * FROM following WHERE nick = ? AND followingNick = ?;");
-            SELECT_FOLLOWING_USERS = session.prepare("SELECT * FROM following WHERE nick = ?;");
-            SELECT_POSTS = session.prepare("SELECT * FROM posts WHERE authornick=? LIMIT 100;");
-
-            ADD_USER = session.prepare("INSERT INTO users (nick, password, firstName, lastName, birthDate, bio) VALUES (?, ?, ?, ?, ?, ?);");
-            ADD_POST = session.prepare("INSERT INTO posts (authornick, creationdate, text) VALUES (?, ?, ?);");
-            ADD_FOLLOWER = session.prepare("INSERT INTO followers (nick, followerNick, followerFirstName, followerLastName, followerBirthDate, followerBio) VALUES (?, ?, ?, ?, ?, ?);");
-            ADD_FOLLOWING = session.prepare("INSERT INTO following (nick, followingNick, followingFirstName, followingLastName, followingBirthDate, followingBio) VALUES (?, ?, ?, ?, ?, ?);");
-
-            REMOVE_FOLLOWER = session.prepare("DELETE FROM followers WHERE nick=? AND followerNick=?;");
-            REMOVE_FOLLOWING = session.prepare("DELETE FROM following WHERE nick=? AND followingNick=?;");
-
-            UPDATE_POST =  session.prepare("UPDATE posts SET text=? WHERE authorNick=? AND creationDate=?");
-//            UPDATE_FOLLOWERS = session.prepare("UPDATE followers SET followerFirstName=?, followerLastName=?, followerBirthDate=?, followerBio=? WHERE followerNick=? ALLOW FILTERING;");
-//            UPDATE_FOLLOWING = session.prepare("UPDATE following SET followingFirstName=?, followingLastName=?, followingBirthDate=?, followingBio=? WHERE followingNick=? ALLOW FILTERING;");
+            SELECT_USER = prepareRead("SELECT_USER", "SELECT " + RowMappers.USER_COLUMNS + " FROM users WHERE nick = ?");
+            SELECT_FOLLOWER = prepareRead("SELECT_FOLLOWER", "SELECT " + RowMappers.FOLLOWER_COLUMNS + " FROM followers WHERE nick = ? AND followerNick = ?;");
+            SELECT_FOLLOWERS = prepareRead("SELECT_FOLLOWERS", "SELECT " + RowMappers.FOLLOWER_COLUMNS + " FROM followers WHERE nick = ?;");
+            SELECT_FOLLOWER_SUMMARIES = prepareRead("SELECT_FOLLOWER_SUMMARIES", "SELECT " + RowMappers.FOLLOWER_SUMMARY_COLUMNS + " FROM followers WHERE nick = ?;");
+            SELECT_FOLLOWING = prepareRead("SELECT_FOLLOWING", "SELECT " + RowMappers.FOLLOWING_COLUMNS + " FROM following WHERE nick = ? AND followingNick = ?;");
+            SELECT_FOLLOWING_USERS = prepareRead("SELECT_FOLLOWING_USERS", "SELECT " + RowMappers.FOLLOWING_COLUMNS + " FROM following WHERE nick = ?;");
+            SELECT_FOLLOWING_SUMMARIES = prepareRead("SELECT_FOLLOWING_SUMMARIES", "SELECT " + RowMappers.FOLLOWING_SUMMARY_COLUMNS + " FROM following WHERE nick = ?;");
+            SELECT_FOLLOWING_NICKS = prepareRead("SELECT_FOLLOWING_NICKS", "SELECT followingNick FROM following WHERE nick = ?;");
+            SELECT_POSTS = prepareRead("SELECT_POSTS", "SELECT " + RowMappers.POST_COLUMNS + " FROM posts WHERE authornick=? LIMIT 100;");
+            SELECT_RECENT_POSTS = prepareRead("SELECT_RECENT_POSTS", "SELECT " + RowMappers.POST_COLUMNS + " FROM posts WHERE authornick=? ORDER BY creationdate DESC LIMIT ?;");
+            SELECT_FOLLOWER_NICKS = prepareRead("SELECT_FOLLOWER_NICKS", "SELECT followerNick FROM followers WHERE nick = ? LIMIT ?;");
+            SELECT_TIMELINE = prepareRead("SELECT_TIMELINE", "SELECT " + RowMappers.POST_COLUMNS + " FROM timeline WHERE nick = ? LIMIT ?;");
+            SELECT_POSTS_BEFORE = prepareRead("SELECT_POSTS_BEFORE", "SELECT " + RowMappers.POST_COLUMNS + " FROM posts WHERE authornick=? AND creationdate <= ? ORDER BY creationdate DESC;");
+            SELECT_POSTS_AFTER = prepareRead("SELECT_POSTS_AFTER", "SELECT " + RowMappers.POST_COLUMNS + " FROM posts WHERE authornick=? AND creationdate > ? ORDER BY creationdate DESC LIMIT ?;");
+            SELECT_TIMELINE_BEFORE = prepareRead("SELECT_TIMELINE_BEFORE", "SELECT " + RowMappers.POST_COLUMNS + " FROM timeline WHERE nick = ? AND creationdate <= ?;");
+            SELECT_PULL_AUTHORS = prepareRead("SELECT_PULL_AUTHORS", "SELECT nick FROM pullauthors;");
+            SELECT_FOLLOWER_NICKS_AFTER = prepareRead("SELECT_FOLLOWER_NICKS_AFTER", "SELECT followerNick FROM followers WHERE nick = ? AND followerNick > ? LIMIT ?;");
+            SELECT_FOLLOWING_NICKS_AFTER = prepareRead("SELECT_FOLLOWING_NICKS_AFTER", "SELECT followingNick FROM following WHERE nick = ? AND followingNick > ? LIMIT ?;");
+            SELECT_PROPAGATIONS = prepareRead("SELECT_PROPAGATIONS", "SELECT * FROM profilepropagation;");
+            SELECT_COUNTERS = prepareRead("SELECT_COUNTERS", "SELECT * FROM usercounters WHERE nick = ?;");
+            RECONCILE_SELECT_COUNTERS = prepareRead("RECONCILE_SELECT_COUNTERS", "SELECT * FROM usercounters WHERE nick = ?;");
+            COUNT_FOLLOWERS = prepareRead("COUNT_FOLLOWERS", "SELECT COUNT(*) FROM followers WHERE nick = ?;");
+            COUNT_FOLLOWING = prepareRead("COUNT_FOLLOWING", "SELECT COUNT(*) FROM following WHERE nick = ?;");
+            COUNT_POSTS = prepareRead("COUNT_POSTS", "SELECT COUNT(*) FROM posts WHERE authornick = ?;");
+            SELECT_USER_NICKS = prepareRead("SELECT_USER_NICKS", "SELECT nick FROM users LIMIT ?;");
+            SELECT_USER_NICKS_AFTER = prepareRead("SELECT_USER_NICKS_AFTER", "SELECT nick FROM users WHERE token(nick) > token(?) LIMIT ?;");
+            SELECT_POSTS_RANGE = prepareRead("SELECT_POSTS_RANGE", "SELECT " + RowMappers.POST_COLUMNS + " FROM posts WHERE token(authornick) > ? AND token(authornick) <= ?;");
+            SELECT_FOLLOWS_RANGE = prepareRead("SELECT_FOLLOWS_RANGE", "SELECT nick, followingNick FROM following WHERE token(nick) > ? AND token(nick) <= ?;");
+
+            ADD_USER = prepareIdempotentWrite("ADD_USER", "INSERT INTO users (nick, password, firstName, lastName, birthDate, bio) VALUES (?, ?, ?, ?, ?, ?);");
+            REGISTER_USER = prepareWrite("REGISTER_USER", "INSERT INTO users (nick, password, firstName, lastName, birthDate, bio) VALUES (?, ?, ?, ?, ?, ?) IF NOT EXISTS;");
+            ADD_POST = prepareIdempotentWrite("ADD_POST", "INSERT INTO posts (authornick, creationdate, text) VALUES (?, ?, ?);");
+            ADD_FOLLOWER = prepareIdempotentWrite("ADD_FOLLOWER", "INSERT INTO followers (nick, followerNick, followerFirstName, followerLastName, followerBirthDate, followerBio) VALUES (?, ?, ?, ?, ?, ?);");
+            ADD_FOLLOWER_IF_ABSENT = prepareWrite("ADD_FOLLOWER_IF_ABSENT", "INSERT INTO followers (nick, followerNick, followerFirstName, followerLastName, followerBirthDate, followerBio) VALUES (?, ?, ?, ?, ?, ?) IF NOT EXISTS;");
+            ADD_FOLLOWING = prepareIdempotentWrite("ADD_FOLLOWING", "INSERT INTO following (nick, followingNick, followingFirstName, followingLastName, followingBirthDate, followingBio) VALUES (?, ?, ?, ?, ?, ?);");
+            ADD_TIMELINE_POST = prepareIdempotentWrite("ADD_TIMELINE_POST", "INSERT INTO timeline (nick, creationDate, authorNick, text) VALUES (?, ?, ?, ?);");
+            ADD_PULL_AUTHOR = prepareIdempotentWrite("ADD_PULL_AUTHOR", "INSERT INTO pullauthors (nick) VALUES (?);");
+            SAVE_PROPAGATION = prepareIdempotentWrite("SAVE_PROPAGATION", "INSERT INTO profilepropagation (nick, phase, position, rowsDone) VALUES (?, ?, ?, ?);");
+
+            REMOVE_FOLLOWER_IF_PRESENT = prepareWrite("REMOVE_FOLLOWER_IF_PRESENT", "DELETE FROM followers WHERE nick=? AND followerNick=? IF EXISTS;");
+            REMOVE_FOLLOWING = prepareIdempotentWrite("REMOVE_FOLLOWING", "DELETE FROM following WHERE nick=? AND followingNick=?;");
+            SELECT_SEARCH_TERMS = prepareRead("SELECT_SEARCH_TERMS", "SELECT nick, firstName, lastName, term FROM usersearch WHERE prefix = ? AND term >= ? AND term < ? LIMIT ?;");
+            ADD_SEARCH_TERM = prepareIdempotentWrite("ADD_SEARCH_TERM", "INSERT INTO usersearch (prefix, term, nick, firstName, lastName) VALUES (?, ?, ?, ?, ?);");
+            REMOVE_SEARCH_TERM = prepareIdempotentWrite("REMOVE_SEARCH_TERM", "DELETE FROM usersearch WHERE prefix = ? AND term = ? AND nick = ?;");
+            REMOVE_PROPAGATION = prepareIdempotentWrite("REMOVE_PROPAGATION", "DELETE FROM profilepropagation WHERE nick=?;");
+
+            UPDATE_FOLLOWERS_COUNT = prepareWrite("UPDATE_FOLLOWERS_COUNT", "UPDATE usercounters SET followers_count = followers_count + ? WHERE nick = ?;");
+            UPDATE_FOLLOWING_COUNT = prepareWrite("UPDATE_FOLLOWING_COUNT", "UPDATE usercounters SET following_count = following_count + ? WHERE nick = ?;");
+            UPDATE_POSTS_COUNT = prepareWrite("UPDATE_POSTS_COUNT", "UPDATE usercounters SET posts_count = posts_count + ? WHERE nick = ?;");
+
+            UPDATE_POST = prepareIdempotentWrite("UPDATE_POST", "UPDATE posts SET text=? WHERE authorNick=? AND creationDate=?");
+            UPDATE_FOLLOWERS = prepareIdempotentWrite("UPDATE_FOLLOWERS", "UPDATE followers USING TIMESTAMP ? SET followerFirstName=?, followerLastName=?, followerBirthDate=?, followerBio=? WHERE nick=? AND followerNick=?;");
+            UPDATE_FOLLOWING = prepareIdempotentWrite("UPDATE_FOLLOWING", "UPDATE following USING TIMESTAMP ? SET followingFirstName=?, followingLastName=?, followingBirthDate=?, followingBio=? WHERE nick=? AND followingNick=?;");
+            if (postBucketSize != null) {
+                prepareBucketedPostStatements();
+            }
         } catch (Exception e) {
             throw new BackendException("There is a problem with query preparation. Please contact administrator.", e);
         }
@@ -90,7 +256,78 @@ public class BackendSession {
         logger.info("Statements prepared");
     }
 
+    /**
+     * Bucketed layout tables may not exist when the single partition layout is used, so they are prepared on demand.
+     */
+    private void prepareBucketedPostStatements() {
+        SELECT_AUTHOR_BUCKETS = prepareRead("SELECT_AUTHOR_BUCKETS", "SELECT bucket FROM authorbuckets WHERE authornick = ? AND bucket >= ? AND bucket <= ?;");
+        SELECT_BUCKET_POSTS = prepareRead("SELECT_BUCKET_POSTS", "SELECT " + RowMappers.POST_COLUMNS + " FROM postsbybucket WHERE authornick = ? AND bucket = ? LIMIT ?;");
+        SELECT_BUCKET_POSTS_BEFORE = prepareRead("SELECT_BUCKET_POSTS_BEFORE", "SELECT " + RowMappers.POST_COLUMNS + " FROM postsbybucket WHERE authornick = ? AND bucket = ? AND creationdate <= ?;");
+        SELECT_BUCKET_POSTS_AFTER = prepareRead("SELECT_BUCKET_POSTS_AFTER", "SELECT " + RowMappers.POST_COLUMNS + " FROM postsbybucket WHERE authornick = ? AND bucket = ? AND creationdate > ? LIMIT ?;");
+        COUNT_BUCKET_POSTS = prepareRead("COUNT_BUCKET_POSTS", "SELECT COUNT(*) FROM postsbybucket WHERE authornick = ? AND bucket = ?;");
+        RECONCILE_SELECT_AUTHOR_BUCKETS = prepareRead("RECONCILE_SELECT_AUTHOR_BUCKETS", "SELECT bucket FROM authorbuckets WHERE authornick = ? AND bucket >= ? AND bucket <= ?;");
+        ADD_BUCKET_POST = prepareIdempotentWrite("ADD_BUCKET_POST", "INSERT INTO postsbybucket (authornick, bucket, creationdate, text) VALUES (?, ?, ?, ?);");
+        ADD_AUTHOR_BUCKET = prepareIdempotentWrite("ADD_AUTHOR_BUCKET", "INSERT INTO authorbuckets (authornick, bucket) VALUES (?, ?);");
+        UPDATE_BUCKET_POST = prepareIdempotentWrite("UPDATE_BUCKET_POST", "UPDATE postsbybucket SET text=? WHERE authornick=? AND bucket=? AND creationdate=?;");
+    }
+
+    /**
+     * Reads are idempotent, which makes them eligible for speculative execution and retries.
+     */
+    private PreparedStatement prepareRead(String name, String query) {
+        return prepare(name, query, true, true);
+    }
+
+    /**
+     * Writes which give the same result when applied twice (upserts of fully specified rows, deletes),
+     * so they can be retried after a timeout. They are not executed speculatively.
+     * ADD_POST belongs here because the post timestamp is generated by the client.
+     */
+    private PreparedStatement prepareIdempotentWrite(String name, String query) {
+        return prepare(name, query, false, true);
+    }
+
+    /**
+     * Writes which must not be applied twice, like counter increments. They are never retried.
+     */
+    private PreparedStatement prepareWrite(String name, String query) {
+        return prepare(name, query, false, false);
+    }
+
+    /**
+     * Prepares a statement with the execution profile assigned to {@code name}, which may also override
+     * its idempotence, see {@link ExecutionProfile}.
+     */
+    private PreparedStatement prepare(String name, String query, boolean read, boolean idempotent) {
+        PreparedStatement statement = session.prepare(query);
+        ExecutionProfile profile = ExecutionProfile.forStatement(name, executionProfiles, config);
+        if (profile != null) {
+            profile.applyTo(statement);
+            idempotent = profile.isIdempotent(idempotent);
+            if (profile.hasExecutionSettings()) statementProfiles.put(statement, profile);
+        }
+        if (read) {
+            statement.setIdempotent(idempotent);
+        } else if (idempotent) {
+            idempotentWrites.add(statement);
+        }
+        statementNames.put(statement, name);
+        return statement;
+    }
+
+    private boolean isIdempotent(Statement statement) {
+        return Boolean.TRUE.equals(statement.isIdempotent())
+                || (statement instanceof BoundStatement && idempotentWrites.contains(((BoundStatement) statement).preparedStatement()));
+    }
+
+    /**
+     * Returns user profile, served from the in-process cache when possible. Missing users are cached too.
+     */
     public User selectUser(String nickname) throws BackendException {
+        return userCache.get(nickname, this::selectUserFromDatabase);
+    }
+
+    private User selectUserFromDatabase(String nickname) throws BackendException {
         BoundStatement bs = new BoundStatement(SELECT_USER);
         bs.bind(nickname);
 
@@ -98,23 +335,41 @@ public class BackendSession {
 
         Row record = rs.one();
         if (record == null) return null;
-        return new User(nickname, record.getString("password"), record.getString("firstName"),
-                record.getString("lastName"), record.getString("birthDate"), record.getString("bio"));
+        return RowMappers.toUser(record);
     }
 
     public ArrayList<String> selectFollowingUsersNicknames(String nick) throws BackendException {
-        BoundStatement bs = new BoundStatement(SELECT_FOLLOWING_USERS);
+        BoundStatement bs = new BoundStatement(SELECT_FOLLOWING_NICKS);
         bs.bind(nick);
 
-        ArrayList<String> followingList = new ArrayList<>();
-
         ResultSet rs = executeStatement(bs, "Could not fetch feed content.");
 
+        return mapNicknames(rs);
+    }
+
+    public ListenableFuture<ArrayList<String>> selectFollowingUsersNicknamesAsync(String nick) {
+        BoundStatement bs = new BoundStatement(SELECT_FOLLOWING_NICKS);
+        bs.bind(nick);
+
+        return Futures.transform(executeStatementAsync(bs), (Function<ResultSet, ArrayList<String>>) this::mapNicknames);
+    }
+
+    /**
+     * Returns nicknames of at most {@code limit} users following {@code nick}.
+     */
+    public ArrayList<String> selectFollowerNicknames(String nick, int limit) throws BackendException {
+        BoundStatement bs = new BoundStatement(SELECT_FOLLOWER_NICKS);
+        bs.bind(nick, limit);
+
+        ArrayList<String> followerList = new ArrayList<>();
+
+        ResultSet rs = executeStatement(bs, "Could not fetch follower list.");
+
         for (Row row : rs) {
-            followingList.add(row.getString("followingNick"));
+            followerList.add(row.getString(0));
         }
 
-        return followingList;
+        return followerList;
     }
 
     public ArrayList<User> selectFollowers(String nick) throws BackendException {
@@ -126,37 +381,289 @@ public class BackendSession {
         ResultSet rs = executeStatement(bs, "Could not fetch follower list.");
 
         for (Row row : rs) {
-            String fNick = row.getString("followerNick");
-            String fFirstName = row.getString("followerFirstName");
-            String fLastName = row.getString("followerLastName");
-            String fBirthDate = row.getString("followerBirthDate");
-            String fBio = row.getString("followerBio");
-            followerList.add(new User(fNick, "", fFirstName, fLastName, fBirthDate, fBio));
+            followerList.add(RowMappers.toProfileCopy(row));
         }
 
         return followerList;
     }
 
+    /**
+     * Returns {@code pageSize} followers of {@code nick} following the position in {@code cursor}
+     * ({@code null} for the first page).
+     */
+    public Page<UserSummary> selectFollowersPage(String nick, String cursor, int pageSize) throws BackendException {
+        BoundStatement bs = new BoundStatement(SELECT_FOLLOWER_SUMMARIES);
+        bs.bind(nick);
+
+        return selectPage(bs, cursor, pageSize, RowMappers::toUserSummary, "Could not fetch follower list.");
+    }
+
+    /**
+     * Returns {@code pageSize} users followed by {@code nick} following the position in {@code cursor}
+     * ({@code null} for the first page).
+     */
+    public Page<UserSummary> selectFollowingPage(String nick, String cursor, int pageSize) throws BackendException {
+        BoundStatement bs = new BoundStatement(SELECT_FOLLOWING_SUMMARIES);
+        bs.bind(nick);
+
+        return selectPage(bs, cursor, pageSize, RowMappers::toUserSummary, "Could not fetch following list.");
+    }
+
+    /**
+     * Reads a single page of the query. The cursor is the driver's paging state, which also lets the server
+     * continue from the position without scanning the preceding rows; it is only valid for the same query.
+     *
+     * @throws IllegalArgumentException when the cursor is malformed or comes from another query
+     */
+    private <T> Page<T> selectPage(BoundStatement bs, String cursor, int pageSize, Function<Row, T> mapper,
+                                   String failMessage) throws BackendException {
+        bs.setFetchSize(pageSize);
+        if (cursor != null) {
+            try {
+                bs.setPagingState(PagingState.fromString(cursor));
+            } catch (PagingStateException e) {
+                throw new IllegalArgumentException("Malformed page cursor: " + cursor, e);
+            }
+        }
+        ResultSet rs = executeStatement(bs, failMessage);
+
+        int available = rs.getAvailableWithoutFetching();
+        ArrayList<T> items = new ArrayList<>(available);
+        Iterator<Row> rows = rs.iterator();
+        for (int i = 0; i < available; i++) {
+            items.add(mapper.apply(rows.next()));
+        }
+        PagingState next = rs.getExecutionInfo().getPagingState();
+        return new Page<>(items, next == null ? null : next.toString());
+    }
+
+    /**
+     * Returns up to 100 posts of given author. With the bucketed layout these are the newest ones, newest first.
+     */
     public ArrayList<Post> selectPosts(String followingNick) throws BackendException {
+        if (postBucketSize != null) {
+            return awaitResult(selectRecentPostsAsync(followingNick, 100), "Could not fetch recent posts.");
+        }
         BoundStatement bs = new BoundStatement(SELECT_POSTS);
         bs.bind(followingNick);
 //        bs.setList("nicklist", followingNicks);
 
         ResultSet rs = executeStatement(bs, "Could not fetch recent posts.");
 
+        return mapPosts(rs);
+    }
+
+    /**
+     * Asynchronously fetches at most {@code limit} newest posts of given author, ordered newest first.
+     */
+    public ListenableFuture<ArrayList<Post>> selectRecentPostsAsync(String authorNick, int limit) {
+        if (postBucketSize != null) {
+            return Futures.transform(selectAuthorBucketsAsync(authorNick, Long.MAX_VALUE),
+                    (AsyncFunction<List<Long>, ArrayList<Post>>) buckets ->
+                            collectFromBuckets(authorNick, buckets.iterator(), Long.MIN_VALUE, new ArrayList<>(), limit));
+        }
+        BoundStatement bs = new BoundStatement(SELECT_RECENT_POSTS);
+        bs.bind(authorNick, limit);
+
+        return Futures.transform(executeStatementAsync(bs), (Function<ResultSet, ArrayList<Post>>) this::mapPosts);
+    }
+
+    /**
+     * Asynchronously fetches at most {@code limit} newest posts of given author created strictly after {@code after},
+     * ordered newest first. With the bucketed layout buckets older than the one of {@code after} are not read.
+     */
+    public ListenableFuture<ArrayList<Post>> selectPostsAfterAsync(String authorNick, long after, int limit) {
+        if (postBucketSize != null) {
+            return Futures.transform(selectAuthorBucketsAsync(authorNick, after, Long.MAX_VALUE),
+                    (AsyncFunction<List<Long>, ArrayList<Post>>) buckets ->
+                            collectFromBuckets(authorNick, buckets.iterator(), after, new ArrayList<>(), limit));
+        }
+        BoundStatement bs = new BoundStatement(SELECT_POSTS_AFTER);
+        bs.bind(authorNick, after, limit);
+
+        return Futures.transform(executeStatementAsync(bs), (Function<ResultSet, ArrayList<Post>>) this::mapPosts);
+    }
+
+    /**
+     * Reads buckets newest first, one at a time, until {@code limit} posts created after {@code after}
+     * (any post when {@link Long#MIN_VALUE}) are collected.
+     */
+    private ListenableFuture<ArrayList<Post>> collectFromBuckets(String authorNick, Iterator<Long> buckets, long after,
+                                                                 ArrayList<Post> posts, int limit) {
+        if (posts.size() >= limit || !buckets.hasNext()) {
+            return Futures.immediateFuture(posts);
+        }
+        BoundStatement bs;
+        if (after == Long.MIN_VALUE) {
+            bs = new BoundStatement(SELECT_BUCKET_POSTS);
+            bs.bind(authorNick, (int) (long) buckets.next(), limit - posts.size());
+        } else {
+            bs = new BoundStatement(SELECT_BUCKET_POSTS_AFTER);
+            bs.bind(authorNick, (int) (long) buckets.next(), after, limit - posts.size());
+        }
+
+        return Futures.transform(executeStatementAsync(bs), (AsyncFunction<ResultSet, ArrayList<Post>>) rs -> {
+            posts.addAll(mapPosts(rs));
+            return collectFromBuckets(authorNick, buckets, after, posts, limit);
+        });
+    }
+
+    /**
+     * Asynchronously opens a newest-first stream of author's posts created not later than {@code before},
+     * fetched from the database in pages of {@code fetchSize} rows. With the bucketed layout older buckets
+     * are read only when the newer ones run out.
+     */
+    public ListenableFuture<Iterator<Post>> selectPostsBeforeAsync(String authorNick, long before, int fetchSize) {
+        if (postBucketSize != null) {
+            return Futures.transform(selectAuthorBucketsAsync(authorNick, before),
+                    (AsyncFunction<List<Long>, Iterator<Post>>) buckets -> {
+                        if (buckets.isEmpty()) {
+                            return Futures.immediateFuture(Collections.<Post>emptyIterator());
+                        }
+                        Iterator<Long> remaining = buckets.iterator();
+                        return Futures.transform(openBucketBefore(authorNick, remaining.next(), before, fetchSize),
+                                (Function<PostStream, Iterator<Post>>) first -> new BucketedPostStream(first, remaining,
+                                        bucket -> openBucketBefore(authorNick, bucket, before, fetchSize)));
+                    });
+        }
+        BoundStatement bs = new BoundStatement(SELECT_POSTS_BEFORE);
+        bs.bind(authorNick, before);
+        bs.setFetchSize(fetchSize);
+
+        return Futures.transform(executeStatementAsync(bs),
+                (Function<ResultSet, Iterator<Post>>) rs -> new PostStream(rs, RowMappers::toPost, fetchSize));
+    }
+
+    private ListenableFuture<PostStream> openBucketBefore(String authorNick, long bucket, long before, int fetchSize) {
+        BoundStatement bs = new BoundStatement(SELECT_BUCKET_POSTS_BEFORE);
+        bs.bind(authorNick, (int) bucket, before);
+        bs.setFetchSize(fetchSize);
+
+        return Futures.transform(executeStatementAsync(bs),
+                (Function<ResultSet, PostStream>) rs -> new PostStream(rs, RowMappers::toPost, fetchSize));
+    }
+
+    /**
+     * Returns buckets of author's posts not newer than the bucket of {@code beforeMillis}, newest first.
+     */
+    private ListenableFuture<List<Long>> selectAuthorBucketsAsync(String authorNick, long beforeMillis) {
+        return selectAuthorBucketsAsync(authorNick, Long.MIN_VALUE, beforeMillis);
+    }
+
+    /**
+     * Returns buckets of author's posts from the bucket of {@code afterMillis} to the one of {@code beforeMillis},
+     * newest first. The range is applied by the server and further pages are fetched asynchronously.
+     */
+    private ListenableFuture<List<Long>> selectAuthorBucketsAsync(String authorNick, long afterMillis, long beforeMillis) {
+        return selectAuthorBucketsAsync(SELECT_AUTHOR_BUCKETS, authorNick, afterMillis, beforeMillis);
+    }
+
+    private ListenableFuture<List<Long>> selectAuthorBucketsAsync(PreparedStatement statement, String authorNick,
+                                                                  long afterMillis, long beforeMillis) {
+        BoundStatement bs = new BoundStatement(statement);
+        bs.bind(authorNick, bucketBound(afterMillis), bucketBound(beforeMillis));
+
+        return Futures.transform(executeStatementAsync(bs),
+                (AsyncFunction<ResultSet, List<Long>>) rs -> collectBuckets(rs, new ArrayList<>()));
+    }
+
+    private int bucketBound(long millis) {
+        long bucket = postBucketSize.bucketOf(millis);
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, bucket));
+    }
+
+    private ListenableFuture<List<Long>> collectBuckets(ResultSet rs, List<Long> buckets) {
+        for (int available = rs.getAvailableWithoutFetching(); available > 0; available--) {
+            buckets.add((long) rs.one().getInt(0));
+        }
+        if (rs.isFullyFetched()) {
+            return Futures.immediateFuture(buckets);
+        }
+        return Futures.transform(rs.fetchMoreResults(),
+                (AsyncFunction<ResultSet, List<Long>>) more -> collectBuckets(more, buckets));
+    }
+
+    /**
+     * Opens a stream of all posts with partition tokens in {@code (fromToken, toToken]}, used to scan the posts table.
+     */
+    public ListenableFuture<PostStream> selectPostsInTokenRangeAsync(long fromToken, long toToken, int fetchSize) {
+        BoundStatement bs = new BoundStatement(SELECT_POSTS_RANGE);
+        bs.bind(fromToken, toToken);
+        bs.setFetchSize(fetchSize);
+
+        return Futures.transform(executeStatementAsync(bs),
+                (Function<ResultSet, PostStream>) rs -> new PostStream(rs, RowMappers::toPost, fetchSize));
+    }
+
+    /**
+     * Opens a stream of all follow relations, as {@code [nick, followingNick]} pairs, of users with partition tokens
+     * in {@code (fromToken, toToken]}, used to scan the following table.
+     */
+    public ListenableFuture<RowStream<String[]>> selectFollowsInTokenRangeAsync(long fromToken, long toToken, int fetchSize) {
+        BoundStatement bs = new BoundStatement(SELECT_FOLLOWS_RANGE);
+        bs.bind(fromToken, toToken);
+        bs.setFetchSize(fetchSize);
+
+        return Futures.transform(executeStatementAsync(bs), (Function<ResultSet, RowStream<String[]>>) rs ->
+                new RowStream<>(rs, row -> new String[]{row.getString(0), row.getString(1)}, fetchSize));
+    }
+
+    /**
+     * Returns the lower end of token range {@code split} when the Murmur3 token range {@code [-2^63, 2^63-1]}
+     * is split into {@code splits} equal parts; {@code split == splits} gives the upper end of the last range.
+     */
+    public static long tokenRangeBoundary(int split, int splits) {
+        if (split == splits) return Long.MAX_VALUE;
+        BigInteger range = BigInteger.valueOf(Long.MAX_VALUE).subtract(BigInteger.valueOf(Long.MIN_VALUE));
+        return BigInteger.valueOf(Long.MIN_VALUE)
+                .add(range.multiply(BigInteger.valueOf(split)).divide(BigInteger.valueOf(splits)))
+                .longValue();
+    }
+
+    /**
+     * Asynchronously opens a newest-first stream of timeline entries of {@code nick} created not later than {@code before}.
+     */
+    public ListenableFuture<PostStream> selectTimelineBeforeAsync(String nick, long before, int fetchSize) {
+        BoundStatement bs = new BoundStatement(SELECT_TIMELINE_BEFORE);
+        bs.bind(nick, before);
+        bs.setFetchSize(fetchSize);
+
+        return Futures.transform(executeStatementAsync(bs),
+                (Function<ResultSet, PostStream>) rs -> new PostStream(rs, RowMappers::toPost, fetchSize));
+    }
+
+    private ArrayList<Post> mapPosts(ResultSet rs) {
         ArrayList<Post> posts = new ArrayList<>();
 
         for (Row row : rs) {
-            String nick = row.getString("authorNick");
-            Date date = row.getTimestamp("creationDate");
-            String text = row.getString("text");
-
-            posts.add(new Post(nick, date, text));
+            posts.add(RowMappers.toPost(row));
         }
 
         return posts;
     }
 
+    /**
+     * Asynchronously fetches at most {@code limit} newest posts from the timeline materialized for {@code nick}.
+     */
+    public ListenableFuture<ArrayList<Post>> selectTimelineAsync(String nick, int limit) {
+        BoundStatement bs = new BoundStatement(SELECT_TIMELINE);
+        bs.bind(nick, limit);
+
+        return Futures.transform(executeStatementAsync(bs), (Function<ResultSet, ArrayList<Post>>) this::mapPosts);
+    }
+
+    public HashSet<String> selectPullAuthors() throws BackendException {
+        BoundStatement bs = new BoundStatement(SELECT_PULL_AUTHORS);
+
+        ResultSet rs = executeStatement(bs, "Could not fetch feed content.");
+
+        HashSet<String> authors = new HashSet<>();
+        for (Row row : rs) {
+            authors.add(row.getString(0));
+        }
+        return authors;
+    }
+
     public User selectFollower(String followerNick, String followedNick) throws BackendException {
         BoundStatement bs = new BoundStatement(SELECT_FOLLOWER);
         bs.bind(followedNick, followerNick);
@@ -165,8 +672,7 @@ public class BackendSession {
 
         Row record = rs.one();
         if (record == null) return null;
-        return new User(followerNick, "", record.getString("followerFirstName"),
-                record.getString("followerLastName"), record.getString("followerBirthDate"), record.getString("followerBio"));
+        return RowMappers.toProfileCopy(record);
     }
 
     public User selectFollowing(String followingNick, String followerNick) throws BackendException {
@@ -177,101 +683,621 @@ public class BackendSession {
 
         Row record = rs.one();
         if (record == null) return null;
-        return new User(followingNick, "", record.getString("followingFirstName"),
-                record.getString("followingLastName"), record.getString("followingBirthDate"), record.getString("followingBio"));
+        return RowMappers.toProfileCopy(record);
+    }
+
+    public ListenableFuture<User> selectFollowerAsync(String followerNick, String followedNick) {
+        BoundStatement bs = new BoundStatement(SELECT_FOLLOWER);
+        bs.bind(followedNick, followerNick);
+
+        return Futures.transform(executeStatementAsync(bs), (Function<ResultSet, User>) rs -> {
+            Row record = rs.one();
+            return record == null ? null : RowMappers.toProfileCopy(record);
+        });
     }
 
+    public ListenableFuture<User> selectFollowingAsync(String followingNick, String followerNick) {
+        BoundStatement bs = new BoundStatement(SELECT_FOLLOWING);
+        bs.bind(followerNick, followingNick);
+
+        return Futures.transform(executeStatementAsync(bs), (Function<ResultSet, User>) rs -> {
+            Row record = rs.one();
+            return record == null ? null : RowMappers.toProfileCopy(record);
+        });
+    }
+
+    /**
+     * Registers a new user together with its entries in the search index. The users row is written with
+     * a lightweight transaction, so of concurrent registrations of one nick only one succeeds.
+     *
+     * @return {@code false} when the nick is already taken, in which case nothing is written
+     */
+    public boolean registerUser(String nick, String password, String firstName,
+                                String lastName, String birthDate, String bio) throws BackendException {
+        BoundStatement bs = new BoundStatement(REGISTER_USER);
+        bs.bind(nick, password, firstName, lastName, birthDate, bio);
+
+        boolean registered;
+        try {
+            registered = executeStatement(bs, "Could not register to the portal.").wasApplied();
+        } finally {
+            userCache.invalidate(nick);
+        }
+        if (!registered) return false;
+        awaitResult(updateSearchTermsAsync(null, new User(nick, password, firstName, lastName, birthDate, bio)),
+                "Could not update search index.");
+        return true;
+    }
+
+    /**
+     * Inserts or updates a user together with its entries in the search index, used to save edited profiles.
+     * New users are added with {@link #registerUser}.
+     */
     public void addUser(String nick, String password, String firstName,
                         String lastName, String birthDate, String bio) throws BackendException {
+        User previous = selectUser(nick);
         BoundStatement bs = new BoundStatement(ADD_USER);
         bs.bind(nick, password, firstName, lastName, birthDate, bio);
 
-        executeStatement(bs, "Could not register to the portal.");
+        try {
+            executeStatement(bs, "Could not register to the portal.");
+        } finally {
+            userCache.invalidate(nick);
+        }
+        awaitResult(updateSearchTermsAsync(previous, new User(nick, password, firstName, lastName, birthDate, bio)),
+                "Could not update search index.");
     }
 
-    public void addPost(String nick, String content) throws BackendException {
-        BoundStatement bs = new BoundStatement(ADD_POST);
-        bs.bind(nick, new Date(System.currentTimeMillis()), content);
+    /**
+     * Writes search index entries of {@code user} and removes the ones of {@code previous}
+     * (the profile before an update, {@code null} for a new user) which no longer apply.
+     * Entries carry the names, so all of them are rewritten.
+     */
+    public ListenableFuture<?> updateSearchTermsAsync(User previous, User user) {
+        Set<String> terms = SearchTerms.indexedTerms(user.getNickname(), user.getFirstName(), user.getLastName());
+        List<ListenableFuture<ResultSet>> writes = new ArrayList<>();
+        for (String term : terms) {
+            BoundStatement bs = new BoundStatement(ADD_SEARCH_TERM);
+            bs.bind(SearchTerms.partitionOf(term), term, user.getNickname(), user.getFirstName(), user.getLastName());
+            writes.add(executeStatementAsync(bs));
+        }
+        if (previous != null) {
+            Set<String> stale = SearchTerms.indexedTerms(previous.getNickname(), previous.getFirstName(), previous.getLastName());
+            stale.removeAll(terms);
+            for (String term : stale) {
+                BoundStatement bs = new BoundStatement(REMOVE_SEARCH_TERM);
+                bs.bind(SearchTerms.partitionOf(term), term, previous.getNickname());
+                writes.add(executeStatementAsync(bs));
+            }
+        }
+        return Futures.allAsList(writes);
+    }
 
-        executeStatement(bs, "Could not add post.");
+    /**
+     * Reads at most {@code limit} search index entries of the {@code prefix} partition with terms in {@code [from, to)},
+     * ordered by term.
+     */
+    public ArrayList<UserMatch> selectSearchTerms(String prefix, String from, String to, int limit) throws BackendException {
+        BoundStatement bs = new BoundStatement(SELECT_SEARCH_TERMS);
+        bs.bind(prefix, from, to, limit);
+
+        ResultSet rs = executeStatement(bs, "Could not search users.");
+
+        ArrayList<UserMatch> matches = new ArrayList<>();
+        for (Row row : rs) {
+            matches.add(new UserMatch(row.getString(0), row.getString(1), row.getString(2), row.getString(3), 0));
+        }
+        return matches;
     }
 
-    public void addFollower(String nick, User followerToAdd) throws BackendException {
-        BoundStatement bs = new BoundStatement(ADD_FOLLOWER);
-        bs.bind(nick, followerToAdd.getNickname(), followerToAdd.getFirstName(), followerToAdd.getLastName(),
-                followerToAdd.getBirthDate(), followerToAdd.getBio());
+    /**
+     * Inserts a complete user profile without waiting for the result, used by bulk loading.
+     */
+    public ListenableFuture<ResultSet> addUserAsync(User user) {
+        BoundStatement bs = new BoundStatement(ADD_USER);
+        bs.bind(user.getNickname(), user.getPassword(), user.getFirstName(), user.getLastName(), user.getBirthDate(), user.getBio());
 
-        executeStatement(bs, "Could not follow user.");
+        userCache.invalidate(user.getNickname());
+        return executeStatementAsync(bs);
     }
 
-    public void addFollowing(String nick, User followedUserToAdd) throws BackendException {
-        BoundStatement bs = new BoundStatement(ADD_FOLLOWING);
-        bs.bind(nick, followedUserToAdd.getNickname(), followedUserToAdd.getFirstName(),
-                followedUserToAdd.getLastName(), followedUserToAdd.getBirthDate(), followedUserToAdd.getBio());
+    /**
+     * Inserts a post with its own creation date, used by bulk loading and layout migration.
+     * With the bucketed layout the bucket is also recorded in the authorbuckets index, unless it is known to be there.
+     */
+    public ListenableFuture<?> addPostAsync(Post post) {
+        return addPostsAsync(Collections.singletonList(post));
+    }
+
+    /**
+     * Inserts posts with an unlogged batch per partition, so that posts landing in the same partition (of one author
+     * and, in the bucketed layout, one bucket) cost one round trip and one mutation on the replicas. Batches spanning
+     * partitions are not used, as they would make the coordinator wait for all of them.
+     *
+     * @throws IllegalArgumentException when {@code posts} is empty
+     * @see #addPostAsync(Post)
+     */
+    public ListenableFuture<?> addPostsAsync(List<Post> posts) {
+        if (posts.isEmpty()) {
+            throw new IllegalArgumentException("No posts to add");
+        }
+        // author -> bucket (0 in the single partition layout) -> inserts
+        Map<String, Map<Integer, List<BoundStatement>>> partitions = new LinkedHashMap<>();
+        for (Post post : posts) {
+            BoundStatement bs;
+            int bucket = 0;
+            if (postBucketSize == null) {
+                bs = new BoundStatement(ADD_POST);
+                bs.bind(post.getAuthorNick(), post.getCreationDate(), post.getText());
+            } else {
+                bucket = (int) postBucketSize.bucketOf(post.getCreationDate());
+                bs = new BoundStatement(ADD_BUCKET_POST);
+                bs.bind(post.getAuthorNick(), bucket, post.getCreationDate(), post.getText());
+            }
+            partitions.computeIfAbsent(post.getAuthorNick(), author -> new LinkedHashMap<>())
+                    .computeIfAbsent(bucket, key -> new ArrayList<>()).add(bs);
+        }
+
+        List<ListenableFuture<?>> writes = new ArrayList<>();
+        for (Map.Entry<String, Map<Integer, List<BoundStatement>>> author : partitions.entrySet()) {
+            for (Map.Entry<Integer, List<BoundStatement>> partition : author.getValue().entrySet()) {
+                ListenableFuture<?> write = executeUnloggedAsync(partition.getValue());
+                writes.add(postBucketSize == null ? write : withBucketIndex(author.getKey(), partition.getKey(), write));
+            }
+        }
+        return writes.size() == 1 ? writes.get(0) : Futures.allAsList(writes);
+    }
+
+    private ListenableFuture<?> executeUnloggedAsync(List<BoundStatement> statements) {
+        if (statements.size() == 1) {
+            return executeStatementAsync(statements.get(0));
+        }
+        BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+        batch.addAll(statements);
+        batch.setConsistencyLevel(statements.get(0).getConsistencyLevel());
+        return instrument("UNLOGGED_BATCH", executor.executeAsync(batch, statements.stream().allMatch(this::isIdempotent)));
+    }
+
+    private ListenableFuture<?> withBucketIndex(String author, int bucket, ListenableFuture<?> write) {
+        String bucketKey = author + ":" + bucket;
+        if (knownBuckets.getIfPresent(bucketKey) != null) {
+            return write;
+        }
+        BoundStatement index = new BoundStatement(ADD_AUTHOR_BUCKET);
+        index.bind(author, bucket);
+        ListenableFuture<?> both = Futures.allAsList(Arrays.<ListenableFuture<?>>asList(write, executeStatementAsync(index)));
+        Futures.addCallback(both, new FutureCallback<Object>() {
+            @Override
+            public void onSuccess(Object result) {
+                knownBuckets.put(bucketKey, Boolean.TRUE);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                // index write is repeated with the next post of this bucket
+            }
+        });
+        return both;
+    }
+
+    public Post addPost(String nick, String content) throws BackendException {
+        Post post = new Post(nick, System.currentTimeMillis(), content);
+
+        awaitResult(addPostAsync(post), "Could not add post.");
+        return post;
+    }
+
+    public ListenableFuture<ResultSet> addTimelinePostAsync(String nick, Post post) {
+        BoundStatement bs = new BoundStatement(ADD_TIMELINE_POST);
+        bs.bind(nick, post.getCreationDate(), post.getAuthorNick(), post.getText());
+
+        return executeStatementAsync(bs);
+    }
+
+    public void addPullAuthor(String nick) throws BackendException {
+        BoundStatement bs = new BoundStatement(ADD_PULL_AUTHOR);
+        bs.bind(nick);
 
-        executeStatement(bs, "Could not follow user.");
+        executeStatement(bs, "Could not add post.");
     }
 
-    public void removeFollower(String nick, String followerToRemoveNick) throws BackendException {
-        BoundStatement bs = new BoundStatement(ADD_FOLLOWER);
-        bs.bind(nick, followerToRemoveNick);
+    /**
+     * Writes both sides of a follow relation concurrently: {@code follower} row in followed user's followers
+     * partition and {@code followed} row in follower's following partition. Used by bulk loads, which set the
+     * counters afterwards; interactive follows go through {@link #addFollowerIfAbsentAsync(User, User)}.
+     */
+    public ListenableFuture<?> addFollowAsync(User follower, User followed) {
+        BoundStatement addFollower = new BoundStatement(ADD_FOLLOWER);
+        addFollower.bind(followed.getNickname(), follower.getNickname(), follower.getFirstName(), follower.getLastName(),
+                follower.getBirthDate(), follower.getBio());
+
+        return Futures.allAsList(Arrays.<ListenableFuture<?>>asList(executeStatementAsync(addFollower),
+                addFollowingAsync(follower, followed)));
+    }
 
-        executeStatement(bs, "Could not unfollow user.");
+    /**
+     * Writes the {@code follower} row in followed user's followers partition unless it is there, with a lightweight
+     * transaction, so that of concurrent follows of the same user only one is applied.
+     *
+     * @return whether the row was written, that is whether the relation is new
+     */
+    public ListenableFuture<Boolean> addFollowerIfAbsentAsync(User follower, User followed) {
+        BoundStatement bs = new BoundStatement(ADD_FOLLOWER_IF_ABSENT);
+        bs.bind(followed.getNickname(), follower.getNickname(), follower.getFirstName(), follower.getLastName(),
+                follower.getBirthDate(), follower.getBio());
+
+        return Futures.transform(executeStatementAsync(bs), (Function<ResultSet, Boolean>) ResultSet::wasApplied);
     }
 
-    public void removeFollowing(String nick, String followedUserToRemoveNick) throws BackendException {
+    /**
+     * Deletes the follower row written by {@link #addFollowerIfAbsentAsync(User, User)} if it is there.
+     *
+     * @return whether the row was deleted, that is whether the relation existed
+     */
+    public ListenableFuture<Boolean> removeFollowerIfPresentAsync(String followerNick, String followedNick) {
+        BoundStatement bs = new BoundStatement(REMOVE_FOLLOWER_IF_PRESENT);
+        bs.bind(followedNick, followerNick);
+
+        return Futures.transform(executeStatementAsync(bs), (Function<ResultSet, Boolean>) ResultSet::wasApplied);
+    }
+
+    /**
+     * Writes the {@code followed} row in follower's following partition, the other side of
+     * {@link #addFollowerIfAbsentAsync(User, User)}.
+     */
+    public ListenableFuture<ResultSet> addFollowingAsync(User follower, User followed) {
         BoundStatement bs = new BoundStatement(ADD_FOLLOWING);
-        bs.bind(nick, followedUserToRemoveNick);
+        bs.bind(follower.getNickname(), followed.getNickname(), followed.getFirstName(),
+                followed.getLastName(), followed.getBirthDate(), followed.getBio());
+
+        return executeStatementAsync(bs);
+    }
+
+    public ListenableFuture<ResultSet> removeFollowingAsync(String followerNick, String followedNick) {
+        BoundStatement bs = new BoundStatement(REMOVE_FOLLOWING);
+        bs.bind(followerNick, followedNick);
 
-        executeStatement(bs, "Could not unfollow user.");
+        return executeStatementAsync(bs);
     }
 
     public void updatePost(Post updatedPost) throws BackendException {
-        BoundStatement bs = new BoundStatement(UPDATE_POST);
-        bs.bind(updatedPost.getText(), updatedPost.getAuthorNick(), updatedPost.getCreationDate());
+        BoundStatement bs;
+        if (postBucketSize == null) {
+            bs = new BoundStatement(UPDATE_POST);
+            bs.bind(updatedPost.getText(), updatedPost.getAuthorNick(), updatedPost.getCreationDate());
+        } else {
+            bs = new BoundStatement(UPDATE_BUCKET_POST);
+            bs.bind(updatedPost.getText(), updatedPost.getAuthorNick(),
+                    (int) postBucketSize.bucketOf(updatedPost.getCreationDate()), updatedPost.getCreationDate());
+        }
 
         executeStatement(bs, "Could not edit post.");
     }
 
-    public void updateFollowers(User updatedUser) throws BackendException {
+    /**
+     * Rewrites the copy of {@code updatedUser} profile stored in followers partition of {@code followedNick}.
+     * The cells get write time {@code timestampMicros}, so an unfollow made after it wins over the rewrite.
+     */
+    public ListenableFuture<ResultSet> updateFollowerAsync(String followedNick, User updatedUser, long timestampMicros) {
         BoundStatement bs = new BoundStatement(UPDATE_FOLLOWERS);
-        bs.bind(updatedUser.getFirstName(), updatedUser.getLastName(), updatedUser.getBirthDate(),
-                updatedUser.getBio(), updatedUser.getNickname());
+        bs.bind(timestampMicros, updatedUser.getFirstName(), updatedUser.getLastName(), updatedUser.getBirthDate(),
+                updatedUser.getBio(), followedNick, updatedUser.getNickname());
 
-        executeStatement(bs, "Could not edit profile due to database problems. Details: ");
+        return executeStatementAsync(bs);
     }
 
-    public void updateFollowing(User updatedUser) throws BackendException {
+    /**
+     * Rewrites the copy of {@code updatedUser} profile stored in following partition of {@code followerNick}.
+     * The cells get write time {@code timestampMicros}, so an unfollow made after it wins over the rewrite.
+     */
+    public ListenableFuture<ResultSet> updateFollowingAsync(String followerNick, User updatedUser, long timestampMicros) {
         BoundStatement bs = new BoundStatement(UPDATE_FOLLOWING);
-        bs.bind(updatedUser.getFirstName(), updatedUser.getLastName(), updatedUser.getBirthDate(),
-                updatedUser.getBio(), updatedUser.getNickname());
+        bs.bind(timestampMicros, updatedUser.getFirstName(), updatedUser.getLastName(), updatedUser.getBirthDate(),
+                updatedUser.getBio(), followerNick, updatedUser.getNickname());
+
+        return executeStatementAsync(bs);
+    }
+
+    /**
+     * Returns at most {@code limit} nicknames of followers of {@code nick}, in clustering order, greater than {@code after}.
+     */
+    public ArrayList<String> selectFollowerNicknamesAfter(String nick, String after, int limit) throws BackendException {
+        BoundStatement bs = new BoundStatement(SELECT_FOLLOWER_NICKS_AFTER);
+        bs.bind(nick, after == null ? "" : after, limit);
+
+        return mapNicknames(executeStatement(bs, "Could not fetch follower list."));
+    }
+
+    /**
+     * Returns at most {@code limit} nicknames of users followed by {@code nick}, in clustering order, greater than {@code after}.
+     */
+    public ArrayList<String> selectFollowingNicknamesAfter(String nick, String after, int limit) throws BackendException {
+        BoundStatement bs = new BoundStatement(SELECT_FOLLOWING_NICKS_AFTER);
+        bs.bind(nick, after == null ? "" : after, limit);
+
+        return mapNicknames(executeStatement(bs, "Could not fetch following list."));
+    }
+
+    private ArrayList<String> mapNicknames(ResultSet rs) {
+        ArrayList<String> nicks = new ArrayList<>();
+        for (Row row : rs) {
+            nicks.add(row.getString(0));
+        }
+        return nicks;
+    }
+
+    public ArrayList<PropagationCheckpoint> selectPropagationCheckpoints() throws BackendException {
+        BoundStatement bs = new BoundStatement(SELECT_PROPAGATIONS);
+
+        ResultSet rs = executeStatement(bs, "Could not fetch profile propagation state.");
+
+        ArrayList<PropagationCheckpoint> checkpoints = new ArrayList<>();
+        for (Row row : rs) {
+            checkpoints.add(new PropagationCheckpoint(row.getString("nick"), row.getString("phase"),
+                    row.getString("position"), row.getLong("rowsDone")));
+        }
+        return checkpoints;
+    }
+
+    public void savePropagationCheckpoint(PropagationCheckpoint checkpoint) throws BackendException {
+        BoundStatement bs = new BoundStatement(SAVE_PROPAGATION);
+        bs.bind(checkpoint.getNick(), checkpoint.getPhase(), checkpoint.getPosition(), checkpoint.getRowsDone());
+
+        executeStatement(bs, "Could not save profile propagation state.");
+    }
+
+    public void removePropagationCheckpoint(String nick) throws BackendException {
+        BoundStatement bs = new BoundStatement(REMOVE_PROPAGATION);
+        bs.bind(nick);
 
-        executeStatement(bs, "Could not edit profile due to database problems. Details: ");
+        executeStatement(bs, "Could not save profile propagation state.");
+    }
+
+    /**
+     * Returns maintained counters of {@code nick}, zeros when none were recorded yet.
+     */
+    public UserCounters selectCounters(String nick) throws BackendException {
+        return selectCounters(SELECT_COUNTERS, nick);
+    }
+
+    /**
+     * Returns maintained counters of {@code nick} read with the {@link ExecutionProfile#RECONCILE} profile,
+     * to be compared with {@link #countFromBaseTables(String)}.
+     */
+    public UserCounters selectCountersForReconciliation(String nick) throws BackendException {
+        return selectCounters(RECONCILE_SELECT_COUNTERS, nick);
+    }
+
+    private UserCounters selectCounters(PreparedStatement statement, String nick) throws BackendException {
+        BoundStatement bs = new BoundStatement(statement);
+        bs.bind(nick);
+
+        ResultSet rs = executeStatement(bs, "Could not fetch information about user.");
+
+        Row record = rs.one();
+        if (record == null) return new UserCounters(nick, 0, 0, 0);
+        return new UserCounters(nick, record.getLong("followers_count"), record.getLong("following_count"),
+                record.getLong("posts_count"));
+    }
+
+    /**
+     * Counts rows of the base tables the counters of {@code nick} are derived from, with the
+     * {@link ExecutionProfile#RECONCILE} profile. Every count reads a whole partition, so it is meant for
+     * reconciliation only.
+     */
+    public UserCounters countFromBaseTables(String nick) throws BackendException {
+        ListenableFuture<Long> followers = countAsync(COUNT_FOLLOWERS, nick);
+        ListenableFuture<Long> following = countAsync(COUNT_FOLLOWING, nick);
+        ListenableFuture<Long> posts = postBucketSize == null ? countAsync(COUNT_POSTS, nick) : countBucketedPostsAsync(nick);
+        String failMessage = "Could not count rows of user " + nick + ".";
+        return new UserCounters(nick, awaitResult(followers, failMessage), awaitResult(following, failMessage),
+                awaitResult(posts, failMessage));
+    }
+
+    private ListenableFuture<Long> countBucketedPostsAsync(String nick) {
+        ListenableFuture<List<Long>> authorBuckets =
+                selectAuthorBucketsAsync(RECONCILE_SELECT_AUTHOR_BUCKETS, nick, Long.MIN_VALUE, Long.MAX_VALUE);
+        return Futures.transform(authorBuckets, (AsyncFunction<List<Long>, Long>) buckets -> {
+            List<ListenableFuture<Long>> counts = new ArrayList<>();
+            for (long bucket : buckets) {
+                BoundStatement bs = new BoundStatement(COUNT_BUCKET_POSTS);
+                bs.bind(nick, (int) bucket);
+                counts.add(Futures.transform(executeStatementAsync(bs), (Function<ResultSet, Long>) rs -> rs.one().getLong(0)));
+            }
+            return Futures.transform(Futures.allAsList(counts), (Function<List<Long>, Long>) values -> {
+                long sum = 0;
+                for (long value : values) sum += value;
+                return sum;
+            });
+        });
+    }
+
+    private ListenableFuture<Long> countAsync(PreparedStatement statement, String nick) {
+        BoundStatement bs = new BoundStatement(statement);
+        bs.bind(nick);
+
+        return Futures.transform(executeStatementAsync(bs), (Function<ResultSet, Long>) rs -> rs.one().getLong(0));
+    }
+
+    /**
+     * Changes follow counters of both users, {@code delta} is 1 for a follow and -1 for an unfollow.
+     * Counter updates are not idempotent, so they are not retried; drift is fixed by reconciliation.
+     */
+    public ListenableFuture<?> updateFollowCountersAsync(String followerNick, String followedNick, long delta) {
+        BoundStatement followers = new BoundStatement(UPDATE_FOLLOWERS_COUNT);
+        followers.bind(delta, followedNick);
+
+        BoundStatement following = new BoundStatement(UPDATE_FOLLOWING_COUNT);
+        following.bind(delta, followerNick);
+
+        return Futures.allAsList(Arrays.<ListenableFuture<?>>asList(executeStatementAsync(followers),
+                executeStatementAsync(following)));
+    }
+
+    /**
+     * Adds {@code deltas} to the counters of {@code deltas.nick}, skipping zero ones.
+     */
+    public void updateCounters(UserCounters deltas) throws BackendException {
+        ArrayList<ListenableFuture<ResultSet>> futures = new ArrayList<>();
+        PreparedStatement[] statements = {UPDATE_FOLLOWERS_COUNT, UPDATE_FOLLOWING_COUNT, UPDATE_POSTS_COUNT};
+        long[] values = {deltas.getFollowers(), deltas.getFollowing(), deltas.getPosts()};
+        for (int i = 0; i < statements.length; i++) {
+            if (values[i] == 0) continue;
+            BoundStatement bs = new BoundStatement(statements[i]);
+            bs.bind(values[i], deltas.getNick());
+            futures.add(executeStatementAsync(bs));
+        }
+        awaitResult(Futures.allAsList(futures), "Could not update counters of user " + deltas.getNick() + ".");
+    }
+
+    public void incrementPostsCount(String nick) throws BackendException {
+        BoundStatement bs = new BoundStatement(UPDATE_POSTS_COUNT);
+        bs.bind(1L, nick);
+
+        executeStatement(bs, "Could not update posts counter.");
+    }
+
+    /**
+     * Returns at most {@code limit} nicknames of registered users in token order, following {@code after}
+     * ({@code null} for the first page).
+     */
+    public ArrayList<String> selectUserNicknamesAfter(String after, int limit) throws BackendException {
+        BoundStatement bs;
+        if (after == null) {
+            bs = new BoundStatement(SELECT_USER_NICKS);
+            bs.bind(limit);
+        } else {
+            bs = new BoundStatement(SELECT_USER_NICKS_AFTER);
+            bs.bind(after, limit);
+        }
+
+        return mapNicknames(executeStatement(bs, "Could not fetch user list."));
+    }
+
+    public ExpiringLruCache<String, User> getUserCache() {
+        return userCache;
+    }
+
+    public String getKeyspace() {
+        return session.getLoggedKeyspace();
+    }
+
+    /**
+     * Returns driver metadata of all tables of the session's keyspace.
+     */
+    public Collection<TableMetadata> getTablesMetadata() {
+        KeyspaceMetadata keyspace = cluster.getMetadata().getKeyspace(session.getLoggedKeyspace());
+        return keyspace == null ? Collections.<TableMetadata>emptyList() : keyspace.getTables();
+    }
+
+    /**
+     * Turns on or off the CDC log of {@code table}; turning it on requires {@code cdc_enabled} in cassandra.yaml.
+     */
+    public void setCdcEnabled(String table, boolean enabled) throws BackendException {
+        try {
+            session.execute("ALTER TABLE " + table + " WITH cdc = " + enabled);
+        } catch (RuntimeException e) {
+            throw new BackendException("Could not change CDC of table " + table + ". Reason: " + e.getMessage(), e);
+        }
+    }
+
+    public AppMetrics getMetrics() {
+        return metrics;
+    }
+
+    private void registerGauges(Cluster cluster) {
+        metrics.registerGauge("cache.users.size", (Gauge<Integer>) userCache::size);
+        metrics.registerGauge("cache.users.hitRatio", (Gauge<Double>) userCache::getHitRatio);
+        metrics.registerGauge("cache.users.hits", (Gauge<Long>) userCache::getHitCount);
+        metrics.registerGauge("cache.users.misses", (Gauge<Long>) userCache::getMissCount);
+        metrics.registerGauge("cache.users.evictions", (Gauge<Long>) userCache::getEvictionCount);
+        metrics.registerGauge("executor.retries", (Gauge<Long>) executor.retries::sum);
+        metrics.registerGauge("executor.retriesExhausted", (Gauge<Long>) executor.retriesExhausted::sum);
+        metrics.registerGauge("executor.breaker.state", (Gauge<String>) () -> executor.getCircuitBreaker().getState().name());
+        metrics.registerGauge("executor.breaker.opened", (Gauge<Long>) executor.getCircuitBreaker().opened::sum);
+        metrics.registerGauge("executor.breaker.rejected", (Gauge<Long>) executor.getCircuitBreaker().rejected::sum);
+        // driver pool, connection and request statistics, published next to the application ones
+        Metrics driverMetrics = cluster.getMetrics();
+        if (driverMetrics != null) {
+            metrics.registerAll("driver", driverMetrics.getRegistry());
+        }
     }
 
     private ResultSet executeStatement(BoundStatement stmt, String failMessage) throws BackendException {
-        ResultSet rs = null;
-        failMessage += "Reason: ";
+        return awaitResult(executeStatementAsync(stmt), failMessage);
+    }
+
+    private ListenableFuture<ResultSet> executeStatementAsync(BoundStatement stmt) {
+        ExecutionProfile profile = statementProfiles.get(stmt.preparedStatement());
+        if (profile != null) profile.applyTo(stmt);
+        String name = statementNames.getOrDefault(stmt.preparedStatement(), "UNKNOWN");
+        return instrument(name, executor.executeAsync(stmt, isIdempotent(stmt)));
+    }
+
+    /**
+     * Records latency, error count by exception type and number of rows in the first page
+     * of {@code statements.<name>}. Latency includes retries and backoff done by the executor.
+     */
+    private ListenableFuture<ResultSet> instrument(String name, ListenableFuture<ResultSet> future) {
+        String prefix = MetricRegistry.name("statements", name);
+        Timer.Context context = metrics.timer(MetricRegistry.name(prefix, "latency")).time();
+        Futures.addCallback(future, new FutureCallback<ResultSet>() {
+            @Override
+            public void onSuccess(ResultSet rs) {
+                context.stop();
+                metrics.histogram(MetricRegistry.name(prefix, "rows")).update(rs.getAvailableWithoutFetching());
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                context.stop();
+                metrics.markError(prefix, t);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Waits for the result of an asynchronous backend operation and translates its failure
+     * the same way as synchronous statement execution does.
+     */
+    public static <T> T awaitResult(Future<T> future, String failMessage) throws BackendException {
         try {
-            rs = session.execute(stmt);
-        } catch (NoHostAvailableException e) {
+            return Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw wrapException(cause instanceof Exception ? (Exception) cause : e, failMessage);
+        }
+    }
+
+    private static BackendException wrapException(Exception e, String failMessage) {
+        if (e instanceof BackendException) return (BackendException) e;
+        failMessage += "Reason: ";
+        if (e instanceof NoHostAvailableException) {
             failMessage += "database connection lost. Please try restarting the app.";
-            throw new BackendException(failMessage, e);
-        } catch (RequestTimeoutException e) {
+        } else if (e instanceof CircuitBreakerOpenException) {
+            failMessage += "database is overloaded, request was not sent. Please try again later.";
+        } else if (e instanceof RequestTimeoutException || ResilientExecutor.isTimeout(e)) {
             failMessage += "database operation timed out. Probably server is overcrowded. Please try again later.";
-            throw new BackendException(failMessage, e);
-        }
-        catch (Exception e) {
+        } else {
             failMessage += "unknown error occured. Please contact the application administrator.";
-            throw new BackendException(failMessage, e);
         }
-        return rs;
+        return new BackendException(failMessage, e);
     }
 
-    protected void finalize() {
+    /**
+     * Stops metric reporting and retries and closes the cluster connection. Safe to call more than once.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) return;
         try {
-            if (session != null) {
-                session.getCluster().close();
+            metrics.close();
+            if (executor != null) {
+                executor.close();
+            }
+            if (cluster != null) {
+                cluster.close();
             }
         } catch (Exception e) {
             logger.error("Could not close existing cluster", e);
@@ -0,0 +1,65 @@
+package backend;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import model.Post;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.LongFunction;
+
+/**
+ * Newest-first stream of posts of one author spread over time buckets. Buckets are queried one after another,
+ * the next one is requested in the background once the current one is almost consumed, so buckets older than
+ * what the caller takes are never read.
+ */
+class BucketedPostStream implements Iterator<Post> {
+    private final Iterator<Long> buckets;
+    private final LongFunction<ListenableFuture<PostStream>> openBucket;
+    private PostStream current;
+    private ListenableFuture<PostStream> next;
+
+    /**
+     * @param first   stream of the newest bucket
+     * @param buckets remaining bucket numbers, newest first
+     */
+    BucketedPostStream(PostStream first, Iterator<Long> buckets, LongFunction<ListenableFuture<PostStream>> openBucket) {
+        this.current = first;
+        this.buckets = buckets;
+        this.openBucket = openBucket;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (true) {
+            if (current.hasNext()) {
+                if (next == null && buckets.hasNext() && current.isNearlyExhausted()) {
+                    next = openBucket.apply(buckets.next());
+                }
+                return true;
+            }
+            if (next == null) {
+                if (!buckets.hasNext()) return false;
+                next = openBucket.apply(buckets.next());
+            }
+            current = await(next);
+            next = null;
+        }
+    }
+
+    @Override
+    public Post next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return current.next();
+    }
+
+    private static PostStream await(ListenableFuture<PostStream> future) {
+        try {
+            return Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException e) {
+            // the same unchecked driver exceptions PostStream throws when a page cannot be fetched
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package backend;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stops sending requests while the cluster is saturated. The breaker opens when the share of overload
+ * failures (timeouts, unavailable or overloaded replicas) among the last {@code windowSize} calls
+ * reaches {@code failureRateThreshold} percent. After {@code openMillis} a few probe requests are let through;
+ * if all of them succeed the breaker closes, otherwise it opens again. Outcomes are accounted for by the state the
+ * request was let through in: requests sent while closed fill the failure window, probes only decide about the
+ * half-open period they were sent in.
+ */
+class CircuitBreaker {
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    enum State {CLOSED, OPEN, HALF_OPEN}
+
+    /**
+     * Leave to send one request, telling whether it is a probe and of which half-open period.
+     */
+    static final class Permit {
+        private static final Permit REGULAR = new Permit(false, 0);
+
+        final boolean probe;
+        final long halfOpenPeriod;
+
+        private Permit(boolean probe, long halfOpenPeriod) {
+            this.probe = probe;
+            this.halfOpenPeriod = halfOpenPeriod;
+        }
+    }
+
+    private final int failureRateThreshold;
+    private final int minimumCalls;
+    private final long openMillis;
+    private final int halfOpenProbes;
+
+    private final boolean[] window;
+    private int windowIndex;
+    private int windowCalls;
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+    private long openUntil;
+    private long halfOpenPeriod;
+    private int probesInFlight;
+    private int probeSuccesses;
+
+    final LongAdder opened = new LongAdder();
+    final LongAdder rejected = new LongAdder();
+
+    CircuitBreaker(int failureRateThreshold, int windowSize, int minimumCalls, long openMillis, int halfOpenProbes) {
+        this.failureRateThreshold = failureRateThreshold;
+        this.window = new boolean[Math.max(1, windowSize)];
+        this.minimumCalls = Math.min(minimumCalls, window.length);
+        this.openMillis = openMillis;
+        this.halfOpenProbes = Math.max(1, halfOpenProbes);
+    }
+
+    /**
+     * Returns the permit to send a request, {@code null} when it must not be sent. Every permit must be followed
+     * by exactly one call of {@link #onSuccess}, {@link #onFailure} or {@link #onIgnored}.
+     */
+    synchronized Permit tryAcquire() {
+        if (state == State.OPEN && System.currentTimeMillis() >= openUntil) {
+            state = State.HALF_OPEN;
+            halfOpenPeriod++;
+            probesInFlight = 0;
+            probeSuccesses = 0;
+        }
+        if (state == State.OPEN || (state == State.HALF_OPEN && probesInFlight >= halfOpenProbes)) {
+            rejected.increment();
+            return null;
+        }
+        if (state == State.CLOSED) return Permit.REGULAR;
+        probesInFlight++;
+        return new Permit(true, halfOpenPeriod);
+    }
+
+    synchronized void onSuccess(Permit permit) {
+        if (isCurrentProbe(permit)) {
+            probesInFlight--;
+            if (++probeSuccesses >= halfOpenProbes) close();
+        } else if (!permit.probe && state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    synchronized void onFailure(Permit permit) {
+        if (isCurrentProbe(permit)) {
+            open();
+        } else if (!permit.probe && state == State.CLOSED) {
+            record(true);
+            if (windowCalls >= minimumCalls && windowFailures * 100L >= (long) failureRateThreshold * windowCalls) {
+                open();
+            }
+        }
+    }
+
+    /**
+     * Request failed for a reason that says nothing about cluster load (e.g. invalid query).
+     */
+    synchronized void onIgnored(Permit permit) {
+        if (isCurrentProbe(permit)) probesInFlight--;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    private boolean isCurrentProbe(Permit permit) {
+        return permit.probe && state == State.HALF_OPEN && permit.halfOpenPeriod == halfOpenPeriod;
+    }
+
+    private void record(boolean failure) {
+        if (windowCalls == window.length) {
+            if (window[windowIndex]) windowFailures--;
+        } else {
+            windowCalls++;
+        }
+        window[windowIndex] = failure;
+        if (failure) windowFailures++;
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    private void open() {
+        if (state != State.OPEN) {
+            logger.warn("Circuit breaker opened for {} ms, cluster seems saturated", openMillis);
+        }
+        state = State.OPEN;
+        openUntil = System.currentTimeMillis() + openMillis;
+        opened.increment();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        windowIndex = 0;
+        windowCalls = 0;
+        windowFailures = 0;
+    }
+}
@@ -0,0 +1,12 @@
+package backend;
+
+/**
+ * Thrown instead of sending a request while the circuit breaker considers the cluster saturated.
+ */
+public class CircuitBreakerOpenException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public CircuitBreakerOpenException() {
+        super("Circuit breaker is open, request was not sent");
+    }
+}
@@ -0,0 +1,87 @@
+package backend;
+
+import com.datastax.driver.core.*;
+import com.datastax.driver.core.policies.*;
+import config.Config;
+
+/**
+ * Builds the driver {@link Cluster} from config.properties. Every setting has a default suitable
+ * for a production cluster, so only contact points are required:
+ * <ul>
+ *     <li>token-aware routing over DC-aware round robin, so requests go straight to a replica,</li>
+ *     <li>connection pooling and socket timeouts,</li>
+ *     <li>percentile-based speculative execution, used only for statements marked idempotent,</li>
+ *     <li>LZ4 protocol compression,</li>
+ *     <li>timestamps mapped to epoch millis with {@link TimestampMillisCodec}.</li>
+ * </ul>
+ */
+final class ClusterFactory {
+
+    private ClusterFactory() {
+    }
+
+    /**
+     * @param contactPoints comma separated host names or addresses
+     */
+    static Cluster build(String contactPoints, Config config) {
+        Cluster.Builder builder = Cluster.builder()
+                .addContactPoints(contactPoints.split("\\s*,\\s*"))
+                .withPort(config.getInt("port", ProtocolOptions.DEFAULT_PORT))
+                .withRetryPolicy(DefaultRetryPolicy.INSTANCE)
+                .withLoadBalancingPolicy(loadBalancingPolicy(config))
+                .withPoolingOptions(poolingOptions(config))
+                .withSocketOptions(socketOptions(config))
+                .withQueryOptions(new QueryOptions().setFetchSize(config.getInt("fetch_size", QueryOptions.DEFAULT_FETCH_SIZE)))
+                .withCompression(ProtocolOptions.Compression.valueOf(config.getString("compression", "lz4").toUpperCase()))
+                // timestamps are read and bound as epoch millis, see RowMappers
+                .withCodecRegistry(new CodecRegistry().register(TimestampMillisCodec.INSTANCE))
+                // driver metrics are published through JMX by AppMetrics, next to the application ones
+                .withoutJMXReporting();
+
+        if (config.getBoolean("speculative_execution", true)) {
+            PercentileTracker tracker = PerHostPercentileTracker
+                    .builder(config.getLong("speculative_highest_trackable_latency_millis", 15000))
+                    .build();
+            builder.withSpeculativeExecutionPolicy(new PercentileSpeculativeExecutionPolicy(tracker,
+                    Double.parseDouble(config.getString("speculative_percentile", "99.0")),
+                    config.getInt("speculative_max_executions", 2)));
+        }
+        return builder.build();
+    }
+
+    private static LoadBalancingPolicy loadBalancingPolicy(Config config) {
+        DCAwareRoundRobinPolicy.Builder dcAware = DCAwareRoundRobinPolicy.builder();
+        String localDc = config.getString("local_dc");
+        if (localDc != null && !localDc.isBlank()) {
+            dcAware.withLocalDc(localDc.trim());
+        }
+        LoadBalancingPolicy policy = dcAware.build();
+        if (config.getBoolean("token_aware", true)) {
+            policy = new TokenAwarePolicy(policy, config.getBoolean("token_aware_shuffle_replicas", true));
+        }
+        return policy;
+    }
+
+    private static PoolingOptions poolingOptions(Config config) {
+        return new PoolingOptions()
+                .setConnectionsPerHost(HostDistance.LOCAL,
+                        config.getInt("pool_core_connections_local", 2),
+                        config.getInt("pool_max_connections_local", 8))
+                .setConnectionsPerHost(HostDistance.REMOTE,
+                        config.getInt("pool_core_connections_remote", 1),
+                        config.getInt("pool_max_connections_remote", 2))
+                .setMaxRequestsPerConnection(HostDistance.LOCAL, config.getInt("pool_max_requests_per_connection_local", 1024))
+                .setMaxRequestsPerConnection(HostDistance.REMOTE, config.getInt("pool_max_requests_per_connection_remote", 256))
+                .setPoolTimeoutMillis(config.getInt("pool_timeout_millis", 5000))
+                .setHeartbeatIntervalSeconds(config.getInt("pool_heartbeat_interval_seconds", 30));
+    }
+
+    private static SocketOptions socketOptions(Config config) {
+        return new SocketOptions()
+                .setConnectTimeoutMillis(config.getInt("socket_connect_timeout_millis", 5000))
+                // must stay above the server-side read_request_timeout, so that replica timeouts are reported as such
+                .setReadTimeoutMillis(config.getInt("socket_read_timeout_millis", 12000))
+                .setTcpNoDelay(true)
+                .setKeepAlive(true);
+    }
+}
@@ -0,0 +1,184 @@
+package backend;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.PreparedStatement;
+import config.Config;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Named set of execution settings attached to prepared statements: consistency level, serial consistency level,
+ * client read timeout, fetch size and idempotence. Settings left unset keep the driver defaults.
+ * <p>
+ * Profiles are listed in {@code execution_profiles} and configured with {@code profile_<name>_<setting>} keys;
+ * built-in profiles ({@code auth}, {@code feed}, {@code social_write}, {@code bulk}, {@code reconcile}) have defaults for their settings
+ * and a default set of statements. A statement is moved to another profile with {@code statement_<name>_profile},
+ * e.g. {@code statement_select_posts_profile=auth}, or left with driver defaults with value {@code none}.
+ */
+public final class ExecutionProfile {
+
+    /** Login and registration: a user is found right after registering, even when a replica missed the write. */
+    public static final String AUTH = "auth";
+    /** Feed and timeline reads: any replica is good enough and a slow one is given up on quickly. */
+    public static final String FEED = "feed";
+    /** Posts, follows and counters. */
+    public static final String SOCIAL_WRITE = "social_write";
+    /** Scans of maintenance tools. */
+    public static final String BULK = "bulk";
+    /**
+     * Reads of counter reconciliation: counts and counters are read at the consistency counters are written at,
+     * since a stale replica would turn into a wrong delta added to a counter for good.
+     */
+    public static final String RECONCILE = "reconcile";
+
+    private static final Map<String, Map<String, String>> BUILT_IN_SETTINGS = new HashMap<>();
+    private static final Map<String, String> BUILT_IN_STATEMENTS = new HashMap<>();
+
+    static {
+        BUILT_IN_SETTINGS.put(AUTH, settings("consistency", "LOCAL_QUORUM", "serial_consistency", "LOCAL_SERIAL"));
+        BUILT_IN_SETTINGS.put(FEED, settings("consistency", "LOCAL_ONE", "read_timeout_millis", "2000"));
+        BUILT_IN_SETTINGS.put(SOCIAL_WRITE, settings("consistency", "LOCAL_QUORUM", "serial_consistency", "LOCAL_SERIAL"));
+        BUILT_IN_SETTINGS.put(BULK, settings("consistency", "LOCAL_ONE", "read_timeout_millis", "60000",
+                "fetch_size", "1000"));
+        BUILT_IN_SETTINGS.put(RECONCILE, settings("consistency", "LOCAL_QUORUM", "read_timeout_millis", "60000"));
+
+        assign(AUTH, "SELECT_USER", "ADD_USER", "REGISTER_USER");
+        assign(FEED, "SELECT_POSTS", "SELECT_RECENT_POSTS", "SELECT_POSTS_BEFORE", "SELECT_POSTS_AFTER",
+                "SELECT_TIMELINE", "SELECT_TIMELINE_BEFORE", "SELECT_FOLLOWING_NICKS", "SELECT_PULL_AUTHORS",
+                "SELECT_AUTHOR_BUCKETS", "SELECT_BUCKET_POSTS", "SELECT_BUCKET_POSTS_BEFORE", "SELECT_BUCKET_POSTS_AFTER");
+        assign(SOCIAL_WRITE, "ADD_POST", "ADD_BUCKET_POST", "ADD_AUTHOR_BUCKET", "UPDATE_POST", "UPDATE_BUCKET_POST",
+                "ADD_FOLLOWER", "ADD_FOLLOWER_IF_ABSENT", "ADD_FOLLOWING", "REMOVE_FOLLOWER_IF_PRESENT", "REMOVE_FOLLOWING",
+                "UPDATE_FOLLOWERS_COUNT", "UPDATE_FOLLOWING_COUNT", "UPDATE_POSTS_COUNT");
+        assign(BULK, "SELECT_POSTS_RANGE", "SELECT_FOLLOWS_RANGE", "SELECT_USER_NICKS", "SELECT_USER_NICKS_AFTER");
+        assign(RECONCILE, "COUNT_FOLLOWERS", "COUNT_FOLLOWING", "COUNT_POSTS", "COUNT_BUCKET_POSTS",
+                "RECONCILE_SELECT_COUNTERS", "RECONCILE_SELECT_AUTHOR_BUCKETS");
+    }
+
+    private final String name;
+    private final ConsistencyLevel consistency;
+    private final ConsistencyLevel serialConsistency;
+    private final int readTimeoutMillis;
+    private final int fetchSize;
+    private final Boolean idempotent;
+
+    /**
+     * @param readTimeoutMillis 0 for the driver default
+     * @param fetchSize         0 for the driver default
+     * @param idempotent        {@code false} to make statements non-idempotent, {@code null} or {@code true} to keep
+     *                          their own idempotence
+     */
+    public ExecutionProfile(String name, ConsistencyLevel consistency, ConsistencyLevel serialConsistency,
+                            int readTimeoutMillis, int fetchSize, Boolean idempotent) {
+        if (serialConsistency != null && !serialConsistency.isSerial()) {
+            throw new IllegalArgumentException("Serial consistency of profile " + name + " must be SERIAL or LOCAL_SERIAL");
+        }
+        this.name = name;
+        this.consistency = consistency;
+        this.serialConsistency = serialConsistency;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.fetchSize = fetchSize;
+        this.idempotent = idempotent;
+    }
+
+    /**
+     * Reads profiles listed in {@code execution_profiles}, by default the built-in ones.
+     */
+    public static Map<String, ExecutionProfile> fromConfig(Config config) {
+        Map<String, ExecutionProfile> profiles = new LinkedHashMap<>();
+        String names = config.getString("execution_profiles", String.join(",", AUTH, FEED, SOCIAL_WRITE, BULK, RECONCILE));
+        for (String name : names.split("\\s*,\\s*")) {
+            if (name.isEmpty()) continue;
+            Map<String, String> defaults = BUILT_IN_SETTINGS.getOrDefault(name, new HashMap<>());
+            String prefix = "profile_" + name + "_";
+            String idempotent = setting(config, prefix, "idempotent", defaults);
+            profiles.put(name, new ExecutionProfile(name,
+                    consistency(setting(config, prefix, "consistency", defaults)),
+                    consistency(setting(config, prefix, "serial_consistency", defaults)),
+                    config.getInt(prefix + "read_timeout_millis", Integer.parseInt(defaults.getOrDefault("read_timeout_millis", "0"))),
+                    config.getInt(prefix + "fetch_size", Integer.parseInt(defaults.getOrDefault("fetch_size", "0"))),
+                    idempotent == null ? null : Boolean.parseBoolean(idempotent)));
+        }
+        return profiles;
+    }
+
+    /**
+     * Returns the profile of statement {@code statementName}, {@code null} when it runs with driver defaults.
+     *
+     * @throws IllegalArgumentException when the statement is assigned a profile which is not defined
+     */
+    public static ExecutionProfile forStatement(String statementName, Map<String, ExecutionProfile> profiles, Config config) {
+        String name = config.getString("statement_" + statementName.toLowerCase() + "_profile");
+        if (name == null || name.isBlank()) {
+            name = BUILT_IN_STATEMENTS.get(statementName);
+            if (name == null || !profiles.containsKey(name)) return null;
+        }
+        name = name.trim();
+        if (name.equals("none")) return null;
+        ExecutionProfile profile = profiles.get(name);
+        if (profile == null) {
+            throw new IllegalArgumentException("Statement " + statementName + " uses undefined execution profile " + name);
+        }
+        return profile;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * A profile can only turn idempotence off: statements which must not be applied twice, like counter increments
+     * and lightweight transactions, stay non-idempotent whatever the profile says.
+     *
+     * @return {@code false} when the profile sets idempotence off, {@code defaultValue} otherwise
+     */
+    public boolean isIdempotent(boolean defaultValue) {
+        return defaultValue && (idempotent == null || idempotent);
+    }
+
+    /**
+     * Applies settings inherited by all statements bound from {@code statement}.
+     */
+    void applyTo(PreparedStatement statement) {
+        if (consistency != null) statement.setConsistencyLevel(consistency);
+        if (serialConsistency != null) statement.setSerialConsistencyLevel(serialConsistency);
+    }
+
+    /**
+     * Applies settings the driver does not take over from the prepared statement. A fetch size set by the caller wins.
+     */
+    void applyTo(BoundStatement statement) {
+        if (readTimeoutMillis > 0) statement.setReadTimeoutMillis(readTimeoutMillis);
+        if (fetchSize > 0 && statement.getFetchSize() <= 0) statement.setFetchSize(fetchSize);
+    }
+
+    boolean hasExecutionSettings() {
+        return readTimeoutMillis > 0 || fetchSize > 0;
+    }
+
+    private static String setting(Config config, String prefix, String setting, Map<String, String> defaults) {
+        String value = config.getString(prefix + setting);
+        if (value == null || value.isBlank()) return defaults.get(setting);
+        return value.trim();
+    }
+
+    private static ConsistencyLevel consistency(String value) {
+        return value == null ? null : ConsistencyLevel.valueOf(value.toUpperCase());
+    }
+
+    private static Map<String, String> settings(String... keysAndValues) {
+        Map<String, String> settings = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            settings.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return settings;
+    }
+
+    private static void assign(String profile, String... statements) {
+        for (String statement : statements) {
+            BUILT_IN_STATEMENTS.put(statement, profile);
+        }
+    }
+}
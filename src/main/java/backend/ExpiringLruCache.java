@@ -0,0 +1,202 @@
+package backend;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Size-bounded, read-through cache evicting least recently used entries first.
+ * Entries expire after the TTL; absent values (loader returning {@code null}) are cached
+ * separately with their own, usually shorter, TTL. Loading happens outside the lock,
+ * so a slow database call does not block readers of other keys.
+ */
+public class ExpiringLruCache<K, V> {
+
+    @FunctionalInterface
+    public interface Loader<K, V> {
+        V load(K key) throws BackendException;
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final LinkedHashMap<K, Entry<V>> entries;
+    // told about entries leaving the cache (eviction, expiry, invalidation), called under the cache lock
+    private final BiConsumer<K, V> removalListener;
+    // key -> token of its latest load in progress; invalidating a key drops its token, so that a load started
+    // before the invalidation does not store a stale value, while loads of other keys are unaffected
+    private final HashMap<K, Object> loads = new HashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ExpiringLruCache(int maxSize, long ttlMillis, long negativeTtlMillis) {
+        this(maxSize, ttlMillis, negativeTtlMillis, (key, value) -> { });
+    }
+
+    /**
+     * @param removalListener called with every entry removed from the cache while holding its lock, so it has to be cheap
+     */
+    public ExpiringLruCache(int maxSize, long ttlMillis, long negativeTtlMillis, BiConsumer<K, V> removalListener) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.removalListener = removalListener;
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > ExpiringLruCache.this.maxSize) {
+                    evictions.increment();
+                    removalListener.accept(eldest.getKey(), eldest.getValue().value);
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public V get(K key, Loader<K, V> loader) throws BackendException {
+        if (maxSize <= 0) return loader.load(key);
+
+        long now = System.currentTimeMillis();
+        Object load = new Object();
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expiresAt > now) {
+                    hits.increment();
+                    return entry.value;
+                }
+                entries.remove(key);
+                removalListener.accept(key, entry.value);
+            }
+            loads.put(key, load);
+        }
+        misses.increment();
+
+        V value;
+        try {
+            value = loader.load(key);
+        } catch (Throwable e) {
+            synchronized (this) {
+                loads.remove(key, load);
+            }
+            throw e;
+        }
+        synchronized (this) {
+            // a newer load of the key, if any, stores its own value
+            if (loads.remove(key, load)) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns cached value without loading it, {@code null} when the key is absent, expired or cached as missing.
+     */
+    public synchronized V getIfPresent(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null || entry.expiresAt <= System.currentTimeMillis()) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    public void put(K key, V value) {
+        if (maxSize <= 0) return;
+        long ttl = value == null ? negativeTtlMillis : ttlMillis;
+        if (ttl <= 0) return;
+        synchronized (this) {
+            entries.put(key, new Entry<>(value, System.currentTimeMillis() + ttl));
+        }
+    }
+
+    /**
+     * Stores {@code value} only when {@code key} still maps to {@code expected} (compared by identity), so that
+     * a value derived from a cached one is not stored after the key was invalidated in the meantime.
+     *
+     * @return whether the value was stored
+     */
+    public synchronized boolean replace(K key, V expected, V value) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null || entry.value != expected || entry.expiresAt <= System.currentTimeMillis()) {
+            return false;
+        }
+        put(key, value);
+        return true;
+    }
+
+    public synchronized void invalidate(K key) {
+        loads.remove(key);
+        Entry<V> entry = entries.remove(key);
+        if (entry != null) {
+            removalListener.accept(key, entry.value);
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        loads.clear();
+        entries.forEach((key, entry) -> removalListener.accept(key, entry.value));
+        entries.clear();
+    }
+
+    /**
+     * Drops expired entries. Expired entries are also dropped lazily on access, this only reclaims memory sooner.
+     */
+    public synchronized void cleanUp() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<K, Entry<V>> entry = iterator.next();
+            if (entry.getValue().expiresAt <= now) {
+                iterator.remove();
+                removalListener.accept(entry.getKey(), entry.getValue().value);
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public String toString() {
+        return "size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + String.format(", hitRatio=%.3f", getHitRatio());
+    }
+}
@@ -0,0 +1,44 @@
+package backend;
+
+import config.Config;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Width of time buckets of the bucketed posts layout. Bucket numbers grow with time, in UTC,
+ * so a newer post never lands in a bucket with a lower number than an older one.
+ */
+public enum PostBucketSize {
+    DAY, WEEK, MONTH;
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * Bucket size of {@code posts_layout=bucketed}, set by {@code posts_bucket_size}, or {@code null} for
+     * {@code posts_layout=single}, where posts are kept in one partition per author.
+     */
+    public static PostBucketSize fromConfig(Config config) {
+        String postsLayout = config.getString("posts_layout", "single");
+        if (postsLayout.equals("bucketed")) {
+            return valueOf(config.getString("posts_bucket_size", "month").toUpperCase());
+        } else if (postsLayout.equals("single")) {
+            return null;
+        }
+        throw new IllegalArgumentException("Unknown posts_layout " + postsLayout + ", expected single or bucketed");
+    }
+
+    public long bucketOf(long millis) {
+        long epochDay = Math.floorDiv(millis, DAY_MILLIS);
+        switch (this) {
+            case DAY:
+                return epochDay;
+            case WEEK:
+                // 1970-01-01 was a Thursday, weeks start on Monday
+                return Math.floorDiv(epochDay + 3, 7);
+            default:
+                LocalDate date = LocalDate.ofEpochDay(epochDay);
+                return date.getYear() * 12L + date.getMonthValue() - 1;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package backend;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import model.Post;
+
+import java.util.function.Function;
+
+/**
+ * Lazily iterates over posts returned by a paged query, see {@link RowStream}.
+ */
+public class PostStream extends RowStream<Post> {
+
+    PostStream(ResultSet resultSet, Function<Row, Post> mapper, int fetchSize) {
+        super(resultSet, mapper, fetchSize);
+    }
+}
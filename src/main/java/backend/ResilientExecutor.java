@@ -0,0 +1,165 @@
+package backend;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.*;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import config.Config;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executes statements with retries and a circuit breaker. Idempotent statements failing because of
+ * overload (timeouts, unavailable or overloaded replicas, busy connection pools) are retried with
+ * exponential backoff and full jitter, as long as the next attempt still fits in the operation deadline.
+ * Non-idempotent statements are never retried, as their first attempt might have been applied.
+ * Retries still waiting for their turn when the executor is closed fail with a {@link BackendException}.
+ */
+class ResilientExecutor implements AutoCloseable {
+
+    private final Session session;
+    private final CircuitBreaker circuitBreaker;
+    private final ScheduledExecutorService scheduler;
+    // results of statements waiting for a retry; whoever removes a result, the retry or close, completes it
+    private final Set<SettableFuture<ResultSet>> pendingRetries = ConcurrentHashMap.newKeySet();
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final long deadlineNanos;
+
+    final LongAdder retries = new LongAdder();
+    final LongAdder retriesExhausted = new LongAdder();
+
+    ResilientExecutor(Session session, Config config) {
+        this.session = session;
+        this.maxAttempts = Math.max(1, config.getInt("retry_max_attempts", 3));
+        this.baseDelayMillis = config.getLong("retry_base_delay_millis", 20);
+        this.maxDelayMillis = config.getLong("retry_max_delay_millis", 1000);
+        this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(config.getLong("operation_deadline_millis", 10000));
+        this.circuitBreaker = new CircuitBreaker(
+                config.getInt("breaker_failure_rate_threshold", 50),
+                config.getInt("breaker_window_size", 100),
+                config.getInt("breaker_minimum_calls", 20),
+                config.getLong("breaker_open_millis", 5000),
+                config.getInt("breaker_half_open_probes", 5));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "statement-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    ListenableFuture<ResultSet> executeAsync(Statement statement, boolean idempotent) {
+        SettableFuture<ResultSet> result = SettableFuture.create();
+        attempt(statement, idempotent, 1, System.nanoTime() + deadlineNanos, result);
+        return result;
+    }
+
+    private void attempt(Statement statement, boolean idempotent, int attempt, long deadline, SettableFuture<ResultSet> result) {
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (permit == null) {
+            result.setException(new CircuitBreakerOpenException());
+            return;
+        }
+        ListenableFuture<ResultSet> future;
+        try {
+            future = session.executeAsync(statement);
+        } catch (RuntimeException e) {
+            circuitBreaker.onIgnored(permit);
+            result.setException(e);
+            return;
+        }
+        Futures.addCallback(future, new FutureCallback<ResultSet>() {
+            @Override
+            public void onSuccess(ResultSet rs) {
+                circuitBreaker.onSuccess(permit);
+                result.set(rs);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                if (!isOverload(t)) {
+                    circuitBreaker.onIgnored(permit);
+                    result.setException(t);
+                    return;
+                }
+                circuitBreaker.onFailure(permit);
+                long delayMillis = backoffMillis(attempt);
+                if (!idempotent || attempt >= maxAttempts
+                        || System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis) >= deadline) {
+                    if (idempotent) retriesExhausted.increment();
+                    result.setException(t);
+                    return;
+                }
+                retries.increment();
+                pendingRetries.add(result);
+                try {
+                    scheduler.schedule(() -> {
+                        if (pendingRetries.remove(result)) attempt(statement, idempotent, attempt + 1, deadline, result);
+                    }, delayMillis, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    if (pendingRetries.remove(result)) result.setException(closedException());
+                }
+            }
+        });
+    }
+
+    private static BackendException closedException() {
+        return new BackendException("Session closed before the statement could be retried.");
+    }
+
+    /**
+     * Full jitter: random delay between 0 and the exponentially growing cap.
+     */
+    private long backoffMillis(int attempt) {
+        long cap = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    static boolean isOverload(Throwable t) {
+        return t instanceof OperationTimedOutException || t instanceof ReadTimeoutException
+                || t instanceof WriteTimeoutException || t instanceof UnavailableException
+                || t instanceof OverloadedException || t instanceof BusyPoolException
+                || t instanceof NoHostAvailableException;
+    }
+
+    static boolean isTimeout(Throwable t) {
+        return t instanceof OperationTimedOutException || t instanceof ReadTimeoutException
+                || t instanceof WriteTimeoutException;
+    }
+
+    CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    long getRetryCount() {
+        return retries.sum();
+    }
+
+    long getRetriesExhaustedCount() {
+        return retriesExhausted.sum();
+    }
+
+    /**
+     * Stops retrying and fails the statements waiting for a retry, so that nobody waits for them forever.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        for (SettableFuture<ResultSet> result : pendingRetries) {
+            if (pendingRetries.remove(result)) result.setException(closedException());
+        }
+    }
+}
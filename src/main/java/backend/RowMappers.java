@@ -0,0 +1,57 @@
+package backend;
+
+import com.datastax.driver.core.Row;
+import model.Post;
+import model.User;
+import model.UserSummary;
+
+/**
+ * Conversions of query result rows into model objects.
+ * <p>
+ * Every mapper reads columns by index, which spares the driver a name lookup per value. Statements mapped with them
+ * must therefore select exactly the columns of the matching {@code *_COLUMNS} list, in the same order.
+ */
+public final class RowMappers {
+
+    public static final String USER_COLUMNS = "nick, password, firstName, lastName, birthDate, bio";
+    public static final String FOLLOWER_COLUMNS = "followerNick, followerFirstName, followerLastName, followerBirthDate, followerBio";
+    public static final String FOLLOWING_COLUMNS = "followingNick, followingFirstName, followingLastName, followingBirthDate, followingBio";
+    public static final String FOLLOWER_SUMMARY_COLUMNS = "followerNick, followerFirstName, followerLastName";
+    public static final String FOLLOWING_SUMMARY_COLUMNS = "followingNick, followingFirstName, followingLastName";
+    /** Columns of {@code posts}, {@code timeline} and {@code postsbybucket} tables. */
+    public static final String POST_COLUMNS = "authorNick, creationDate, text";
+
+    private RowMappers() {
+    }
+
+    /**
+     * Maps a row selected with {@link #USER_COLUMNS}.
+     */
+    public static User toUser(Row row) {
+        return new User(row.getString(0), row.getString(1), row.getString(2), row.getString(3), row.getString(4),
+                row.getString(5));
+    }
+
+    /**
+     * Maps a row selected with {@link #FOLLOWER_COLUMNS} or {@link #FOLLOWING_COLUMNS} to the copy of user profile
+     * stored with a follow. Password is not stored there.
+     */
+    public static User toProfileCopy(Row row) {
+        return new User(row.getString(0), "", row.getString(1), row.getString(2), row.getString(3), row.getString(4));
+    }
+
+    /**
+     * Maps a row selected with {@link #FOLLOWER_SUMMARY_COLUMNS} or {@link #FOLLOWING_SUMMARY_COLUMNS}.
+     */
+    public static UserSummary toUserSummary(Row row) {
+        return new UserSummary(row.getString(0), row.getString(1), row.getString(2));
+    }
+
+    /**
+     * Maps a row selected with {@link #POST_COLUMNS}. Creation date is read as epoch millis,
+     * see {@link TimestampMillisCodec}.
+     */
+    public static Post toPost(Row row) {
+        return new Post(row.getString(0), row.getLong(1), row.getString(2));
+    }
+}
@@ -0,0 +1,59 @@
+package backend;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily iterates over rows returned by a paged query, mapping them to model objects. The next page is requested
+ * in the background once the current one is almost consumed, so only the rows actually taken by the caller
+ * (plus at most one page) are held in memory and the first row is available as soon as the first page arrives.
+ */
+public class RowStream<T> implements Iterator<T> {
+    private final ResultSet resultSet;
+    private final Iterator<Row> rows;
+    private final Function<Row, T> mapper;
+    private final int prefetchThreshold;
+
+    RowStream(ResultSet resultSet, Function<Row, T> mapper, int fetchSize) {
+        this.resultSet = resultSet;
+        this.rows = resultSet.iterator();
+        this.mapper = mapper;
+        this.prefetchThreshold = Math.max(1, fetchSize / 4);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!resultSet.isFullyFetched() && resultSet.getAvailableWithoutFetching() <= prefetchThreshold) {
+            resultSet.fetchMoreResults();
+        }
+        return rows.hasNext();
+    }
+
+    /**
+     * Whether the last page was fetched and only a few rows of it are left.
+     */
+    boolean isNearlyExhausted() {
+        return resultSet.isFullyFetched() && resultSet.getAvailableWithoutFetching() <= prefetchThreshold;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return mapper.apply(rows.next());
+    }
+
+    /**
+     * Sequential stream over the remaining rows; consuming it consumes this iterator.
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+}
@@ -0,0 +1,75 @@
+package backend;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Normalization of searchable text and layout of the usersearch table. Every term (nick and words of first
+ * and last name) is stored once, in the partition of its first {@link #PREFIX_LENGTH} characters, so a query is
+ * answered from the partition of its first {@code PREFIX_LENGTH} characters. Shorter prefixes are not indexed:
+ * a partition of one or two letters would hold a large share of all users and be read by most queries.
+ * Terms shorter than {@code PREFIX_LENGTH} form partitions of their own, and single characters are not indexed.
+ */
+public final class SearchTerms {
+    public static final int PREFIX_LENGTH = 3;
+    public static final int MIN_TERM_LENGTH = 2;
+    /** sorts after every normalized term, an exclusive upper bound of clustering ranges */
+    public static final String MAX_CHAR = "\uffff";
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[\\s\\-_.]+");
+
+    private SearchTerms() {
+    }
+
+    /**
+     * Lower case without diacritics, so that names can be searched without typing Polish characters.
+     */
+    public static String normalize(String text) {
+        if (text == null) return "";
+        String lower = text.trim().toLowerCase(Locale.ROOT).replace('\u0142', 'l');
+        return MARKS.matcher(Normalizer.normalize(lower, Normalizer.Form.NFD)).replaceAll("");
+    }
+
+    public static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        for (String word : SEPARATORS.split(normalize(text))) {
+            if (!word.isEmpty()) words.add(word);
+        }
+        return words;
+    }
+
+    /**
+     * Terms under which a user can be found: the whole nick and every word of the nick and the names.
+     */
+    public static Set<String> terms(String nick, String firstName, String lastName) {
+        Set<String> terms = new LinkedHashSet<>();
+        String normalizedNick = normalize(nick);
+        if (!normalizedNick.isEmpty()) terms.add(normalizedNick);
+        terms.addAll(words(nick));
+        terms.addAll(words(firstName));
+        terms.addAll(words(lastName));
+        return terms;
+    }
+
+    /**
+     * Terms of {@link #terms} which are stored in the index, the ones of at least {@link #MIN_TERM_LENGTH} characters.
+     */
+    public static Set<String> indexedTerms(String nick, String firstName, String lastName) {
+        Set<String> terms = terms(nick, firstName, lastName);
+        terms.removeIf(term -> term.length() < MIN_TERM_LENGTH);
+        return terms;
+    }
+
+    /**
+     * Partition holding the terms starting like {@code word}.
+     */
+    public static String partitionOf(String word) {
+        return word.substring(0, Math.min(PREFIX_LENGTH, word.length()));
+    }
+}
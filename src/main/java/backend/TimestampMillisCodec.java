@@ -0,0 +1,49 @@
+package backend;
+
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.TypeCodec;
+import com.datastax.driver.core.exceptions.InvalidTypeException;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+/**
+ * Maps CQL {@code timestamp} to epoch milliseconds. Registered with the cluster, it lets rows be read with
+ * {@code row.getLong(i)} and timestamps be bound as {@code long}, without a {@link Date} per value.
+ */
+public final class TimestampMillisCodec extends TypeCodec.PrimitiveLongCodec {
+
+    public static final TimestampMillisCodec INSTANCE = new TimestampMillisCodec();
+
+    private TimestampMillisCodec() {
+        super(DataType.timestamp());
+    }
+
+    @Override
+    public ByteBuffer serializeNoBoxing(long value, ProtocolVersion protocolVersion) {
+        ByteBuffer bytes = ByteBuffer.allocate(8);
+        bytes.putLong(0, value);
+        return bytes;
+    }
+
+    @Override
+    public long deserializeNoBoxing(ByteBuffer bytes, ProtocolVersion protocolVersion) {
+        if (bytes == null || bytes.remaining() == 0) return 0;
+        if (bytes.remaining() != 8) {
+            throw new InvalidTypeException("Invalid 64-bits timestamp value, expecting 8 bytes but got " + bytes.remaining());
+        }
+        return bytes.getLong(bytes.position());
+    }
+
+    @Override
+    public Long parse(String value) {
+        Date date = TypeCodec.timestamp().parse(value);
+        return date == null ? null : date.getTime();
+    }
+
+    @Override
+    public String format(Long value) {
+        return TypeCodec.timestamp().format(value == null ? null : new Date(value));
+    }
+}
@@ -0,0 +1,303 @@
+package bulk;
+
+import backend.BackendException;
+import backend.BackendSession;
+import backend.PostBucketSize;
+import config.Config;
+import model.Post;
+import model.User;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bulk loader of users, follower graph and posts. Settings are read from config.properties and bulk.properties
+ * and can be overridden with {@code key=value} arguments, e.g. {@code users=1000000 threads=8 output=/tmp/sstables}.
+ * <p>
+ * Rows are generated ({@code source=generate}, see {@link GraphGenerator}) or read from CSV/JSONL files
+ * ({@code source=files}) and written either as SSTables ({@code mode=sstable}), one directory per thread,
+ * to be streamed into the cluster with sstableloader, or through the driver ({@code mode=online}).
+ * SSTables are written in Java 8 child processes, see {@link SSTableWriterClient}.
+ */
+public class BulkLoader {
+    private static final String[] PROPERTIES_FILENAMES = {"config.properties", "bulk.properties"};
+    private static final int QUEUE_BATCH_SIZE = 1000;
+    private static final List<BulkRow> END_OF_INPUT = Collections.emptyList();
+
+    /**
+     * Row read from an input file, waiting for a loader thread.
+     */
+    @FunctionalInterface
+    private interface BulkRow {
+        void writeTo(RowSink sink) throws BackendException;
+    }
+
+    private final Config config;
+    private final int threads;
+    private final boolean online;
+    private final String sstableJavaHome;
+    private final LongAdder rows = new LongAdder();
+    private BackendSession session;
+    private DriverSink driverSink;
+
+    BulkLoader(Config config) throws BackendException {
+        this.config = config;
+        this.threads = config.getInt("threads", Runtime.getRuntime().availableProcessors());
+        String mode = config.getString("mode", "sstable");
+        if (!mode.equals("sstable") && !mode.equals("online")) {
+            throw new IllegalArgumentException("Unknown mode " + mode + ", expected sstable or online");
+        }
+        this.online = mode.equals("online");
+        if (online) {
+            sstableJavaHome = null;
+            session = new BackendSession(config.getString("contact_point"), config.getString("keyspace"), config);
+            driverSink = new DriverSink(session, config.getInt("max_in_flight", 1024));
+        } else {
+            sstableJavaHome = SSTableWriterClient.javaHome(config);
+        }
+    }
+
+    public static void main(String[] args) {
+        Config config = Config.load(PROPERTIES_FILENAMES, args);
+        try {
+            new BulkLoader(config).run();
+        } catch (Exception e) {
+            System.out.println("Bulk load failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    void run() throws Exception {
+        long start = System.nanoTime();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        long interval = config.getLong("report_interval_seconds", 5);
+        long[] last = {start, 0};
+        reporter.scheduleAtFixedRate(() -> {
+            long now = System.nanoTime();
+            long total = rows.sum();
+            System.out.printf("%d rows, %.0f rows/s%n", total, (total - last[1]) / ((now - last[0]) / 1e9));
+            last[0] = now;
+            last[1] = total;
+        }, interval, interval, TimeUnit.SECONDS);
+
+        try {
+            if ("files".equals(config.getString("source", "generate"))) {
+                loadFiles();
+            } else {
+                generate();
+            }
+            if (driverSink != null) driverSink.close();
+        } finally {
+            reporter.shutdownNow();
+            if (session != null) session.close();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Loaded %d rows in %.1fs (%.0f rows/s)%n", rows.sum(), seconds, rows.sum() / seconds);
+        if (!online) {
+            System.out.println("Stream the SSTables into the cluster with: sstableloader -d <host> "
+                    + config.getString("output", "sstables") + "/<thread>/" + config.getString("keyspace", "app") + "/<table>");
+        }
+    }
+
+    private void generate() throws Exception {
+        GraphGenerator generator = new GraphGenerator(config.getInt("users", 1000000),
+                config.getString("nick_prefix", "user"),
+                Double.parseDouble(config.getString("graph_zipf_exponent", "1.0")),
+                Double.parseDouble(config.getString("follows_per_user", "20")),
+                Double.parseDouble(config.getString("posts_per_user", "10")),
+                config.getInt("posts_days", 365), config.getLong("seed", 42));
+
+        int users = generator.getUsers();
+        runInParallel(thread -> {
+            try (RowSink sink = sinkFor(thread)) {
+                generator.generate((int) ((long) users * thread / threads), (int) ((long) users * (thread + 1) / threads),
+                        sink, rows);
+            }
+        });
+    }
+
+    /**
+     * Users file is read first, because both sides of a follow need the profile of the other user.
+     * Rows are handed to loader threads in batches through a bounded queue.
+     */
+    private void loadFiles() throws Exception {
+        BlockingQueue<List<BulkRow>> queue = new ArrayBlockingQueue<>(threads * 4);
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        Future<?> reading = reader.submit(() -> {
+            readFiles(queue);
+            for (int i = 0; i < threads; i++) queue.put(END_OF_INPUT);
+            return null;
+        });
+
+        try {
+            runInParallel(thread -> {
+                try (RowSink sink = sinkFor(thread)) {
+                    for (List<BulkRow> batch = take(queue, reading); batch != END_OF_INPUT; batch = take(queue, reading)) {
+                        for (BulkRow row : batch) {
+                            row.writeTo(sink);
+                        }
+                    }
+                }
+            });
+            reading.get();
+        } finally {
+            // stops the reader blocked on a full queue when loader threads failed
+            reader.shutdownNow();
+        }
+    }
+
+    private void readFiles(BlockingQueue<List<BulkRow>> queue) throws IOException, InterruptedException {
+        Map<String, User> users = new HashMap<>();
+        List<BulkRow> batch = new ArrayList<>(QUEUE_BATCH_SIZE);
+
+        try (RecordReader records = new RecordReader(new File(config.getString("users_file")))) {
+            for (Map<String, String> record = records.next(); record != null; record = records.next()) {
+                User user = new User(record.get("nick"), record.get("password"), record.get("firstName"),
+                        record.get("lastName"), record.get("birthDate"), record.get("bio"));
+                users.put(user.getNickname(), user);
+                batch = offer(queue, batch, sink -> {
+                    sink.addUser(user);
+                    rows.increment();
+                });
+            }
+        }
+
+        String followsFile = config.getString("follows_file");
+        long skipped = 0;
+        if (followsFile != null) {
+            try (RecordReader records = new RecordReader(new File(followsFile))) {
+                for (Map<String, String> record = records.next(); record != null; record = records.next()) {
+                    User follower = users.get(record.get("follower"));
+                    User followed = users.get(record.get("followed"));
+                    if (follower == null || followed == null) {
+                        skipped++;
+                        continue;
+                    }
+                    batch = offer(queue, batch, sink -> {
+                        sink.addFollow(follower, followed);
+                        rows.add(2);
+                    });
+                }
+            }
+        }
+        if (skipped > 0) {
+            System.out.println("Skipped " + skipped + " follows of unknown users");
+        }
+
+        String postsFile = config.getString("posts_file");
+        if (postsFile != null) {
+            try (RecordReader records = new RecordReader(new File(postsFile))) {
+                for (Map<String, String> record = records.next(); record != null; record = records.next()) {
+                    Post post = new Post(record.get("authorNick"), parseDate(record.get("creationDate")), record.get("text"));
+                    batch = offer(queue, batch, sink -> {
+                        sink.addPost(post);
+                        rows.increment();
+                    });
+                }
+            }
+        }
+        if (!batch.isEmpty()) queue.put(batch);
+    }
+
+    private static List<BulkRow> offer(BlockingQueue<List<BulkRow>> queue, List<BulkRow> batch, BulkRow row)
+            throws InterruptedException {
+        batch.add(row);
+        if (batch.size() < QUEUE_BATCH_SIZE) return batch;
+        queue.put(batch);
+        return new ArrayList<>(QUEUE_BATCH_SIZE);
+    }
+
+    /**
+     * Returns next batch, or the end marker also when the reader failed.
+     */
+    private static List<BulkRow> take(BlockingQueue<List<BulkRow>> queue, Future<?> reading) throws InterruptedException {
+        while (true) {
+            List<BulkRow> batch = queue.poll(1, TimeUnit.SECONDS);
+            if (batch != null) return batch;
+            if (reading.isDone()) return END_OF_INPUT;
+        }
+    }
+
+    /**
+     * Accepts epoch milliseconds or ISO-8601 instants, e.g. {@code 2020-11-05T10:15:30Z}.
+     */
+    private static long parseDate(String value) {
+        if (value.chars().allMatch(Character::isDigit)) {
+            return Long.parseLong(value);
+        }
+        return Instant.parse(value).toEpochMilli();
+    }
+
+    /**
+     * Each thread writes its own SSTables, in online mode all threads share one driver sink.
+     */
+    private RowSink sinkFor(int thread) throws BackendException {
+        if (online) {
+            return new RowSink() {
+                @Override
+                public void addUser(User user) throws BackendException {
+                    driverSink.addUser(user);
+                }
+
+                @Override
+                public void addFollow(User follower, User followed) throws BackendException {
+                    driverSink.addFollow(follower, followed);
+                }
+
+                @Override
+                public void addPost(Post post) throws BackendException {
+                    driverSink.addPost(post);
+                }
+
+                @Override
+                public void close() {
+                    // shared sink is closed after all threads finish
+                }
+            };
+        }
+        return new SSTableSink(new File(config.getString("output", "sstables"), String.valueOf(thread)),
+                config.getString("keyspace", "app"), config.getInt("sstable_buffer_mb", 128), PostBucketSize.fromConfig(config),
+                sstableJavaHome);
+    }
+
+    @FunctionalInterface
+    private interface ThreadTask {
+        void run(int thread) throws Exception;
+    }
+
+    private void runInParallel(ThreadTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                task.run(thread);
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package bulk;
+
+import backend.BackendException;
+import backend.BackendSession;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import model.Post;
+import model.User;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes rows through the driver with asynchronous requests. At most {@code maxInFlight} requests are pending,
+ * loader threads block when the cluster does not keep up. Shared by all loader threads.
+ */
+class DriverSink implements RowSink {
+
+    private final BackendSession session;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    DriverSink(BackendSession session, int maxInFlight) {
+        this.session = session;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.inFlight = new Semaphore(this.maxInFlight);
+    }
+
+    @Override
+    public void addUser(User user) throws BackendException {
+        acquire();
+        track(session.addUserAsync(user));
+    }
+
+    @Override
+    public void addFollow(User follower, User followed) throws BackendException {
+        acquire();
+        track(session.addFollowAsync(follower, followed));
+    }
+
+    @Override
+    public void addPost(Post post) throws BackendException {
+        acquire();
+        track(session.addPostAsync(post));
+    }
+
+    private void acquire() throws BackendException {
+        inFlight.acquireUninterruptibly();
+        if (failure.get() != null) {
+            inFlight.release();
+            throw failed();
+        }
+    }
+
+    private void track(ListenableFuture<?> future) {
+        Futures.addCallback(future, new FutureCallback<Object>() {
+            @Override
+            public void onSuccess(Object result) {
+                inFlight.release();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                failure.compareAndSet(null, t);
+                inFlight.release();
+            }
+        });
+    }
+
+    private BackendException failed() {
+        Throwable t = failure.get();
+        return new BackendException("Could not load rows. Reason: " + t.getMessage(),
+                t instanceof Exception ? (Exception) t : new RuntimeException(t));
+    }
+
+    @Override
+    public void close() throws BackendException {
+        // all permits are back once every pending request has completed
+        inFlight.acquireUninterruptibly(maxInFlight);
+        inFlight.release(maxInFlight);
+        if (failure.get() != null) throw failed();
+    }
+}
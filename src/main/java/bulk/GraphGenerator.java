@@ -0,0 +1,108 @@
+package bulk;
+
+import backend.BackendException;
+import loadgen.ZipfSampler;
+import model.Post;
+import model.User;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Synthetic social network. User {@code i} has a deterministic profile, so rows of any user can be produced
+ * by any thread without keeping the population in memory. Numbers of follows and posts per user are
+ * exponentially distributed around the configured means, followees are drawn with power-law popularity
+ * (low indexes are the most followed) and posts are spread uniformly over the last {@code postsDays} days.
+ */
+class GraphGenerator {
+    private static final String[] FIRST_NAMES = {"Anna", "Jan", "Maria", "Piotr", "Katarzyna", "Tomasz", "Julia",
+            "Mateusz", "Zofia", "Jakub", "Alicja", "Damian", "Eryk", "Helena", "Vincent", "Pelle"};
+    private static final String[] LAST_NAMES = {"Nowak", "Kowalski", "Wisniewski", "Wojcik", "Kaminski", "Lewandowski",
+            "Zielinski", "Szymanski", "Wozniak", "Dabrowski", "Kozlowski", "Jankowski", "Mazur", "Krawczyk"};
+    private static final String[] WORDS = {"cassandra", "today", "coffee", "weekend", "project", "deadline", "music",
+            "football", "linux", "calculus", "pizza", "holiday", "rain", "sunny", "meeting", "code", "review", "great"};
+
+    private final int users;
+    private final String nickPrefix;
+    private final ZipfSampler popularity;
+    private final double followsPerUser;
+    private final double postsPerUser;
+    private final long postsPeriodMillis;
+    private final long now = System.currentTimeMillis();
+    private final long seed;
+
+    GraphGenerator(int users, String nickPrefix, double zipfExponent, double followsPerUser, double postsPerUser,
+                   int postsDays, long seed) {
+        this.users = users;
+        this.nickPrefix = nickPrefix;
+        this.popularity = new ZipfSampler(users, zipfExponent);
+        this.followsPerUser = followsPerUser;
+        this.postsPerUser = postsPerUser;
+        this.postsPeriodMillis = TimeUnit.DAYS.toMillis(postsDays);
+        this.seed = seed;
+    }
+
+    int getUsers() {
+        return users;
+    }
+
+    User user(int index) {
+        int day = 1 + index % 28;
+        int month = 1 + (index / 28) % 12;
+        int year = 1950 + (index / 336) % 55;
+        return new User(nickPrefix + index, "password", FIRST_NAMES[index % FIRST_NAMES.length],
+                LAST_NAMES[(index / FIRST_NAMES.length) % LAST_NAMES.length],
+                String.format("%02d-%02d-%04d", day, month, year), "Generated user number " + index);
+    }
+
+    /**
+     * Writes users {@code from..to-1} together with their follows and posts.
+     */
+    void generate(int from, int to, RowSink sink, LongAdder rows) throws BackendException {
+        Random random = new Random(seed * 31 + from);
+        Set<Integer> followees = new HashSet<>();
+        Set<Long> timestamps = new HashSet<>();
+        for (int index = from; index < to; index++) {
+            User user = user(index);
+            sink.addUser(user);
+            rows.increment();
+
+            followees.clear();
+            int follows = Math.min(users - 1, exponential(random, followsPerUser));
+            for (int attempt = 0; followees.size() < follows && attempt < 3 * follows; attempt++) {
+                int followee = popularity.next(random);
+                if (followee != index && followees.add(followee)) {
+                    sink.addFollow(user, user(followee));
+                    rows.add(2);
+                }
+            }
+
+            timestamps.clear();
+            int posts = exponential(random, postsPerUser);
+            while (timestamps.size() < posts) {
+                long timestamp = now - (long) (random.nextDouble() * postsPeriodMillis);
+                if (timestamps.add(timestamp)) {
+                    sink.addPost(new Post(user.getNickname(), timestamp, text(random)));
+                    rows.increment();
+                }
+            }
+        }
+    }
+
+    private static int exponential(Random random, double mean) {
+        return mean <= 0 ? 0 : (int) Math.round(-mean * Math.log(1 - random.nextDouble()));
+    }
+
+    private static String text(Random random) {
+        StringBuilder builder = new StringBuilder();
+        int words = 3 + random.nextInt(25);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) builder.append(' ');
+            builder.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,130 @@
+package bulk;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads records of an input file as maps from field name to value.
+ * Files ending with {@code .jsonl} contain one JSON object per line, other files are CSV
+ * with a header line naming the columns; quoted CSV fields may contain commas, quotes ({@code ""}) and new lines.
+ */
+class RecordReader implements Closeable {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final BufferedReader reader;
+    private final boolean json;
+    private final String[] header;
+    private long line;
+
+    RecordReader(File file) throws IOException {
+        reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+        json = file.getName().endsWith(".jsonl");
+        if (json) {
+            header = null;
+        } else {
+            List<String> columns = readCsvRecord();
+            if (columns == null) throw new IOException("File " + file + " has no header line");
+            header = columns.toArray(new String[0]);
+        }
+    }
+
+    /**
+     * @return next record or {@code null} at the end of file
+     */
+    Map<String, String> next() throws IOException {
+        return json ? nextJson() : nextCsv();
+    }
+
+    private Map<String, String> nextJson() throws IOException {
+        String text;
+        do {
+            text = reader.readLine();
+            line++;
+            if (text == null) return null;
+        } while (text.trim().isEmpty());
+
+        Map<String, String> record = new HashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = mapper.readTree(text).fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            record.put(field.getKey(), field.getValue().isNull() ? null : field.getValue().asText());
+        }
+        return record;
+    }
+
+    private Map<String, String> nextCsv() throws IOException {
+        List<String> values = readCsvRecord();
+        if (values == null) return null;
+        if (values.size() != header.length) {
+            throw new IOException("Line " + line + " has " + values.size() + " fields, expected " + header.length);
+        }
+        Map<String, String> record = new HashMap<>();
+        for (int i = 0; i < header.length; i++) {
+            record.put(header[i], values.get(i));
+        }
+        return record;
+    }
+
+    private List<String> readCsvRecord() throws IOException {
+        String text;
+        do {
+            text = reader.readLine();
+            line++;
+            if (text == null) return null;
+        } while (text.isEmpty());
+
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        int i = 0;
+        while (true) {
+            if (i == text.length()) {
+                if (!quoted) break;
+                // quoted field continues in the next line
+                text = reader.readLine();
+                line++;
+                if (text == null) throw new IOException("Unterminated quoted field at line " + line);
+                value.append('\n');
+                i = 0;
+                continue;
+            }
+            char c = text.charAt(i++);
+            if (quoted) {
+                if (c != '"') {
+                    value.append(c);
+                } else if (i < text.length() && text.charAt(i) == '"') {
+                    value.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,23 @@
+package bulk;
+
+import backend.BackendException;
+import model.Post;
+import model.User;
+
+/**
+ * Destination of bulk loaded rows. A follow relation is written to both denormalized tables.
+ */
+interface RowSink extends AutoCloseable {
+
+    void addUser(User user) throws BackendException;
+
+    void addFollow(User follower, User followed) throws BackendException;
+
+    void addPost(Post post) throws BackendException;
+
+    /**
+     * Waits until all rows are written.
+     */
+    @Override
+    void close() throws BackendException;
+}
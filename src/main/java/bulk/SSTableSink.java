@@ -0,0 +1,141 @@
+package bulk;
+
+import backend.BackendException;
+import backend.PostBucketSize;
+import model.Post;
+import model.User;
+
+import java.io.File;
+import java.util.Date;
+
+/**
+ * Writes rows directly into SSTables of users, followers, following and posts tables; with the bucketed posts
+ * layout posts go to the postsbybucket table and their buckets to the authorbuckets index instead.
+ * Every loader thread has its own sink writing to its own directory, laid out as
+ * {@code <output>/<thread>/<keyspace>/<table>} so that each directory can be passed to sstableloader.
+ * The SSTables are written by a Java 8 child process of every sink, see {@link SSTableWriterClient}.
+ */
+class SSTableSink implements RowSink {
+
+    private static final String USERS_SCHEMA = "CREATE TABLE %s.users (nick varchar, password varchar, "
+            + "firstName varchar, lastName varchar, birthDate varchar, bio varchar, PRIMARY KEY (nick))";
+    private static final String FOLLOWERS_SCHEMA = "CREATE TABLE %s.followers (nick varchar, followerNick varchar, "
+            + "followerFirstName varchar, followerLastName varchar, followerBirthDate varchar, followerBio varchar, "
+            + "PRIMARY KEY ((nick), followerNick))";
+    private static final String FOLLOWING_SCHEMA = "CREATE TABLE %s.following (nick varchar, followingNick varchar, "
+            + "followingFirstName varchar, followingLastName varchar, followingBirthDate varchar, followingBio varchar, "
+            + "PRIMARY KEY ((nick), followingNick))";
+    private static final String POSTS_SCHEMA = "CREATE TABLE %s.posts (authorNick varchar, creationDate timestamp, "
+            + "text varchar, PRIMARY KEY ((authorNick), creationDate))";
+
+    private static final String BUCKET_POSTS_SCHEMA = "CREATE TABLE %s.postsbybucket (authorNick varchar, bucket int, "
+            + "creationDate timestamp, text varchar, PRIMARY KEY ((authorNick, bucket), creationDate)) "
+            + "WITH CLUSTERING ORDER BY (creationDate DESC)";
+    private static final String AUTHOR_BUCKETS_SCHEMA = "CREATE TABLE %s.authorbuckets (authorNick varchar, bucket int, "
+            + "PRIMARY KEY ((authorNick), bucket)) WITH CLUSTERING ORDER BY (bucket DESC)";
+
+    private static final String ADD_USER = "INSERT INTO %s.users (nick, password, firstName, lastName, birthDate, bio) "
+            + "VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String ADD_FOLLOWER = "INSERT INTO %s.followers (nick, followerNick, followerFirstName, "
+            + "followerLastName, followerBirthDate, followerBio) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String ADD_FOLLOWING = "INSERT INTO %s.following (nick, followingNick, followingFirstName, "
+            + "followingLastName, followingBirthDate, followingBio) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String ADD_POST = "INSERT INTO %s.posts (authorNick, creationDate, text) VALUES (?, ?, ?)";
+    private static final String ADD_BUCKET_POST = "INSERT INTO %s.postsbybucket (authorNick, bucket, creationDate, text) "
+            + "VALUES (?, ?, ?, ?)";
+    private static final String ADD_AUTHOR_BUCKET = "INSERT INTO %s.authorbuckets (authorNick, bucket) VALUES (?, ?)";
+
+    private final SSTableWriterClient writer;
+    // ids of the writers of every table
+    private final int users;
+    private final int followers;
+    private final int following;
+    private final int posts;
+    private final int authorBuckets;
+    private final PostBucketSize postBucketSize;
+    // last authorbuckets row written; posts of an author mostly come together, and a repeated row is merged
+    // in the writer's buffer anyway
+    private String lastBucketAuthor;
+    private int lastBucket;
+
+    /**
+     * @param postBucketSize bucket size of the bucketed posts layout, {@code null} for the single partition one
+     * @param javaHome       Java 8 installation running the writer process
+     */
+    SSTableSink(File directory, String keyspace, int bufferSizeMb, PostBucketSize postBucketSize, String javaHome)
+            throws BackendException {
+        this.postBucketSize = postBucketSize;
+        writer = new SSTableWriterClient(javaHome);
+        try {
+            users = open(directory, keyspace, "users", USERS_SCHEMA, ADD_USER, bufferSizeMb);
+            followers = open(directory, keyspace, "followers", FOLLOWERS_SCHEMA, ADD_FOLLOWER, bufferSizeMb);
+            following = open(directory, keyspace, "following", FOLLOWING_SCHEMA, ADD_FOLLOWING, bufferSizeMb);
+            if (postBucketSize == null) {
+                posts = open(directory, keyspace, "posts", POSTS_SCHEMA, ADD_POST, bufferSizeMb);
+                authorBuckets = -1;
+            } else {
+                posts = open(directory, keyspace, "postsbybucket", BUCKET_POSTS_SCHEMA, ADD_BUCKET_POST, bufferSizeMb);
+                authorBuckets = open(directory, keyspace, "authorbuckets", AUTHOR_BUCKETS_SCHEMA, ADD_AUTHOR_BUCKET,
+                        bufferSizeMb);
+            }
+        } catch (BackendException e) {
+            try {
+                writer.close();
+            } catch (BackendException closing) {
+                e.addSuppressed(closing);
+            }
+            throw e;
+        }
+    }
+
+    private int open(File directory, String keyspace, String table, String schema, String insert, int bufferSizeMb)
+            throws BackendException {
+        File tableDirectory = new File(new File(directory, keyspace), table);
+        if (!tableDirectory.isDirectory() && !tableDirectory.mkdirs()) {
+            throw new BackendException("Could not create SSTable directory " + tableDirectory + ".");
+        }
+        // rows are buffered and sorted in memory, every full buffer is flushed as a separate SSTable
+        return writer.open(tableDirectory, String.format(schema, keyspace), String.format(insert, keyspace), bufferSizeMb);
+    }
+
+    @Override
+    public void addUser(User user) throws BackendException {
+        write(users, user.getNickname(), user.getPassword(), user.getFirstName(), user.getLastName(),
+                user.getBirthDate(), user.getBio());
+    }
+
+    @Override
+    public void addFollow(User follower, User followed) throws BackendException {
+        write(followers, followed.getNickname(), follower.getNickname(), follower.getFirstName(),
+                follower.getLastName(), follower.getBirthDate(), follower.getBio());
+        write(following, follower.getNickname(), followed.getNickname(), followed.getFirstName(),
+                followed.getLastName(), followed.getBirthDate(), followed.getBio());
+    }
+
+    @Override
+    public void addPost(Post post) throws BackendException {
+        if (postBucketSize == null) {
+            write(posts, post.getAuthorNick(), new Date(post.getCreationDate()), post.getText());
+            return;
+        }
+        int bucket = (int) postBucketSize.bucketOf(post.getCreationDate());
+        write(posts, post.getAuthorNick(), bucket, new Date(post.getCreationDate()), post.getText());
+        if (bucket != lastBucket || !post.getAuthorNick().equals(lastBucketAuthor)) {
+            write(authorBuckets, post.getAuthorNick(), bucket);
+            lastBucketAuthor = post.getAuthorNick();
+            lastBucket = bucket;
+        }
+    }
+
+    private void write(int table, Object... values) throws BackendException {
+        writer.addRow(table, values);
+    }
+
+    /**
+     * Flushes the SSTables of all tables.
+     */
+    @Override
+    public void close() throws BackendException {
+        writer.close();
+    }
+}
@@ -0,0 +1,167 @@
+package bulk;
+
+import backend.BackendException;
+import config.Config;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Starts an {@code SSTableWriterProcess} in a child Java 8 JVM, with the {@code java} of {@code sstable_java_home}
+ * or of the {@code JAVA8_HOME} environment variable and the classpath of the application, and sends it the rows
+ * to write. The child shares the console of the loader, so its failures are printed there.
+ */
+final class SSTableWriterClient implements AutoCloseable {
+
+    private static final String PROCESS_CLASS = "bulk.SSTableWriterProcess";
+
+    // commands and value types of SSTableWriterProcess
+    private static final int OPEN = 1;
+    private static final int ROW = 2;
+    private static final int CLOSE = 3;
+
+    private static final int STRING = 1;
+    private static final int INT = 2;
+    private static final int TIMESTAMP = 3;
+
+    private final Process process;
+    private final DataOutputStream out;
+    private int writers;
+
+    SSTableWriterClient(String javaHome) throws BackendException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(javaHome, "bin", "java").toString());
+        command.add("-cp");
+        command.add(classPath());
+        command.add(PROCESS_CLASS);
+        try {
+            process = new ProcessBuilder(command)
+                    .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+        } catch (IOException e) {
+            throw new BackendException("Could not start the SSTable writer process with " + command.get(0) + ".", e);
+        }
+        out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream(), 1 << 16));
+    }
+
+    /**
+     * Returns the Java 8 installation SSTables are written with.
+     *
+     * @throws BackendException when neither {@code sstable_java_home} nor {@code JAVA8_HOME} is set
+     */
+    static String javaHome(Config config) throws BackendException {
+        String javaHome = config.getString("sstable_java_home");
+        if (javaHome == null || javaHome.isBlank()) javaHome = System.getenv("JAVA8_HOME");
+        if (javaHome == null || javaHome.isBlank()) {
+            throw new BackendException("SSTable mode needs Java 8, on which the SSTable writer of Cassandra 3.11 runs: "
+                    + "set sstable_java_home or the JAVA8_HOME environment variable, or load through the driver "
+                    + "with mode=online.");
+        }
+        return javaHome.trim();
+    }
+
+    /**
+     * Classpath of the loader: that of its class loader when started by {@code mvn exec:java}, whose
+     * {@code java.class.path} is Maven's own, otherwise {@code java.class.path}.
+     */
+    private static String classPath() throws BackendException {
+        ClassLoader loader = SSTableWriterClient.class.getClassLoader();
+        if (!(loader instanceof URLClassLoader)) return System.getProperty("java.class.path");
+        List<String> entries = new ArrayList<>();
+        for (URL url : ((URLClassLoader) loader).getURLs()) {
+            try {
+                entries.add(Paths.get(url.toURI()).toString());
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                throw new BackendException("Could not pass classpath entry " + url + " to the SSTable writer process.", e);
+            }
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    /**
+     * Opens a writer of SSTables of the table created by {@code schema} in {@code directory}.
+     *
+     * @return id of the writer passed to {@link #addRow}
+     */
+    int open(File directory, String schema, String insert, int bufferSizeMb) throws BackendException {
+        try {
+            out.write(OPEN);
+            writeString(directory.getAbsolutePath());
+            writeString(schema);
+            writeString(insert);
+            out.writeInt(bufferSizeMb);
+        } catch (IOException e) {
+            throw new BackendException("Could not open SSTable writer. Reason: " + e.getMessage(), e);
+        }
+        return writers++;
+    }
+
+    /**
+     * Writes a row with values of the {@code insert} statement of {@code writer}: strings, ints or dates.
+     */
+    void addRow(int writer, Object... values) throws BackendException {
+        try {
+            out.write(ROW);
+            out.writeInt(writer);
+            out.writeInt(values.length);
+            for (Object value : values) {
+                if (value instanceof Integer) {
+                    out.write(INT);
+                    out.writeInt((Integer) value);
+                } else if (value instanceof Date) {
+                    out.write(TIMESTAMP);
+                    out.writeLong(((Date) value).getTime());
+                } else {
+                    out.write(STRING);
+                    writeString((String) value);
+                }
+            }
+        } catch (IOException e) {
+            throw new BackendException("Could not write SSTable row. Reason: " + e.getMessage(), e);
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Closes all writers, which flushes their buffers, and waits until the process exits.
+     */
+    @Override
+    public void close() throws BackendException {
+        try {
+            out.write(CLOSE);
+            out.close();
+            int status = process.waitFor();
+            if (status != 0) {
+                throw new BackendException("Could not flush SSTables, the SSTable writer process exited with status "
+                        + status + ".");
+            }
+        } catch (IOException e) {
+            throw new BackendException("Could not flush SSTables. Reason: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BackendException("Interrupted while flushing SSTables.", e);
+        } finally {
+            process.destroy();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package bulk;
+
+import org.apache.cassandra.io.sstable.CQLSSTableWriter;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Writes SSTables for {@link SSTableSink} in a Java 8 JVM, as the SSTable writer of Cassandra 3.11 does not run
+ * on newer ones. It is compiled for Java 8 separately from the rest of the application (see pom.xml), so it may
+ * only use the JDK and Cassandra.
+ * <p>
+ * Commands come on standard input: {@link #OPEN} a writer (directory, schema, insert statement, buffer size),
+ * write a {@link #ROW} with one of the opened writers, and {@link #CLOSE} all writers, flushing their buffers.
+ * Exits with status 0 once all writers are closed and with a non-zero status on any failure, which is printed
+ * to standard error.
+ */
+public final class SSTableWriterProcess {
+
+    // kept in sync with SSTableWriterClient, which must not refer to this class: the application is compiled
+    // for a newer Java and would compile it along
+    private static final int OPEN = 1;
+    private static final int ROW = 2;
+    private static final int CLOSE = 3;
+
+    private static final int STRING = 1;
+    private static final int INT = 2;
+    private static final int TIMESTAMP = 3;
+
+    private SSTableWriterProcess() {
+    }
+
+    public static void main(String[] args) {
+        String version = System.getProperty("java.specification.version");
+        if (!version.equals("1.8")) {
+            System.err.println("SSTables can only be written on Java 8, the writer process runs on Java " + version);
+            System.exit(2);
+        }
+        try {
+            run(new DataInputStream(new BufferedInputStream(System.in, 1 << 16)));
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        // the writers leave non-daemon threads of Cassandra behind
+        System.exit(0);
+    }
+
+    private static void run(DataInputStream in) throws IOException {
+        List<CQLSSTableWriter> writers = new ArrayList<>();
+        while (true) {
+            int command = in.read();
+            switch (command) {
+                case OPEN:
+                    writers.add(CQLSSTableWriter.builder()
+                            .inDirectory(new File(readString(in)))
+                            .forTable(readString(in))
+                            .using(readString(in))
+                            .withBufferSizeInMB(in.readInt())
+                            .build());
+                    break;
+                case ROW:
+                    CQLSSTableWriter writer = writers.get(in.readInt());
+                    Object[] values = new Object[in.readInt()];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = readValue(in);
+                    }
+                    writer.addRow(values);
+                    break;
+                case CLOSE:
+                    for (CQLSSTableWriter opened : writers) {
+                        opened.close();
+                    }
+                    return;
+                default:
+                    throw new IOException(command < 0 ? "Input ended before the writers were closed"
+                            : "Unknown command " + command);
+            }
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        int type = in.read();
+        switch (type) {
+            case STRING:
+                return readString(in);
+            case INT:
+                return in.readInt();
+            case TIMESTAMP:
+                return new Date(in.readLong());
+            default:
+                throw new IOException("Unknown value type " + type);
+        }
+    }
+
+    /**
+     * Strings are sent as their UTF-8 length and bytes, as {@link DataInputStream#readUTF()} is limited to 64 KB;
+     * a negative length stands for {@code null}.
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
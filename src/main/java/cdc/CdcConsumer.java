@@ -0,0 +1,314 @@
+package cdc;
+
+import backend.BackendException;
+import backend.BackendSession;
+import com.codahale.metrics.Meter;
+import com.datastax.driver.core.ClusteringOrder;
+import com.datastax.driver.core.ColumnMetadata;
+import com.datastax.driver.core.TableMetadata;
+import config.Config;
+import model.ChangeEvent;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.commitlog.CommitLogDescriptor;
+import org.apache.cassandra.db.commitlog.CommitLogPosition;
+import org.apache.cassandra.db.commitlog.CommitLogReadHandler;
+import org.apache.cassandra.db.commitlog.CommitLogReader;
+import org.apache.cassandra.schema.KeyspaceMetadata;
+import org.apache.cassandra.schema.KeyspaceParams;
+import org.apache.cassandra.schema.Tables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.ProfilePropagator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tails the CDC log of a Cassandra node and publishes changes of the users, posts, followers and following tables
+ * to {@link ChangeHandler}s, so that derived data (caches, the follow graph, denormalized profile copies) is kept up
+ * to date off the request path.
+ * <p>
+ * Cassandra 3.11 moves a commit log segment to {@code cdc_raw_directory} once all of its data is flushed, when
+ * the segment contained writes to a table with {@code cdc = true}. Segments are read in order of their ids and
+ * the position of the last handled mutation is saved to {@code cdc_checkpoint_file}, so a restarted consumer
+ * continues where it stopped. Fully handled segments are deleted: the node rejects writes to CDC tables once
+ * the directory grows over {@code cdc_total_space_in_mb}, so the consumer must keep running while CDC is on.
+ * <p>
+ * The consumer reads files of the local node, so it runs on the node host: in the application process, or
+ * standalone from the command line, where it only propagates profiles. Arguments {@code enable} and {@code disable}
+ * turn CDC of the consumed tables on and off; enabling requires {@code cdc_enabled: true} in cassandra.yaml.
+ */
+public class CdcConsumer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(CdcConsumer.class);
+
+    public static final int DEFAULT_POLL_INTERVAL_MILLIS = 1000;
+    // checkpoint position of a segment whose mutations were all handled
+    private static final int SEGMENT_DONE = Integer.MAX_VALUE;
+
+    private final File directory;
+    private final Path checkpointFile;
+    private final MutationDecoder decoder;
+    private final List<ChangeHandler> handlers;
+    private final Meter eventsMeter;
+    private long checkpointSegment;
+    private int checkpointPosition;
+    private ScheduledExecutorService poller;
+
+    /**
+     * @param directory      cdc_raw directory of the node
+     * @param checkpointFile file keeping the position of the consumer, created when missing
+     */
+    public CdcConsumer(BackendSession session, File directory, Path checkpointFile, List<ChangeHandler> handlers)
+            throws BackendException {
+        prepareSchema(session);
+        this.directory = directory;
+        this.checkpointFile = checkpointFile;
+        this.decoder = new MutationDecoder(session.getKeyspace());
+        this.handlers = new ArrayList<>(handlers);
+        this.eventsMeter = session.getMetrics().getRegistry().meter("cdc.events");
+        readCheckpoint();
+    }
+
+    /**
+     * Creates the consumer when {@code cdc_consumer} is enabled, {@code null} otherwise. Outside the node's own JVM
+     * {@code cdc_cassandra_config} must point to the node's cassandra.yaml, which also gives the default
+     * {@code cdc_raw_directory}.
+     */
+    public static CdcConsumer fromConfig(BackendSession session, Config config, List<ChangeHandler> handlers)
+            throws BackendException {
+        if (!config.getBoolean("cdc_consumer", false)) return null;
+        initializeCassandraConfig(config.getString("cdc_cassandra_config"));
+        String directory = config.getString("cdc_raw_directory");
+        if (directory == null || directory.isBlank()) {
+            directory = DatabaseDescriptor.getCDCLogLocation();
+        }
+        return new CdcConsumer(session, new File(directory.trim()),
+                Paths.get(config.getString("cdc_checkpoint_file", "cdc-checkpoint")), handlers);
+    }
+
+    public static void main(String[] args) {
+        Config config = Config.load("cdc_consumer=true");
+        try (BackendSession session = new BackendSession(config.getString("contact_point"), config.getString("keyspace"), config)) {
+            if (args.length > 0 && (args[0].equals("enable") || args[0].equals("disable"))) {
+                setCdcEnabled(session, args[0].equals("enable"));
+                System.out.println("CDC " + args[0] + "d for " + String.join(", ", MutationDecoder.TABLES));
+            } else {
+                ProfilePropagator propagator = ProfilePropagator.fromConfig(session, config);
+                CdcConsumer consumer = fromConfig(session, config, Arrays.asList(ChangeHandlers.profilePropagation(propagator)));
+                consumer.start(config.getInt("cdc_poll_interval_millis", DEFAULT_POLL_INTERVAL_MILLIS));
+                Runtime.getRuntime().addShutdownHook(new Thread(consumer::close, "cdc-consumer-shutdown"));
+                consumer.poller.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            }
+        } catch (Exception e) {
+            System.out.println("CDC consumer failed: " + e.getMessage());
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Turns on or off the CDC log of the consumed tables.
+     */
+    public static void setCdcEnabled(BackendSession session, boolean enabled) throws BackendException {
+        for (String table : MutationDecoder.TABLES) {
+            session.setCdcEnabled(table, enabled);
+        }
+    }
+
+    /**
+     * Polls the directory every {@code pollIntervalMillis} on a background thread.
+     */
+    public void start(long pollIntervalMillis) {
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cdc-consumer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(() -> {
+            try {
+                pollOnce();
+            } catch (IOException | RuntimeException e) {
+                logger.error("Could not consume CDC log, retrying in {} ms", pollIntervalMillis, e);
+            }
+        }, 0, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Handles all segments currently in the directory, oldest first.
+     *
+     * @return number of published events
+     * @throws IOException when a segment cannot be read or a handler fails; handled mutations are checkpointed
+     */
+    public synchronized int pollOnce() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> CommitLogDescriptor.isValid(name));
+        if (files == null) throw new IOException("Could not list CDC directory " + directory);
+        Arrays.sort(files, Comparator.comparingLong(file -> CommitLogDescriptor.fromFileName(file.getName()).id));
+
+        int events = 0;
+        for (File file : files) {
+            long id = CommitLogDescriptor.fromFileName(file.getName()).id;
+            if (id < checkpointSegment || (id == checkpointSegment && checkpointPosition == SEGMENT_DONE)) {
+                // handled before a restart which came before its deletion
+                Files.deleteIfExists(file.toPath());
+                continue;
+            }
+            SegmentHandler handler = new SegmentHandler(id == checkpointSegment ? checkpointPosition : 0);
+            new CommitLogReader().readCommitLogSegment(handler, file, new CommitLogPosition(id, handler.position),
+                    CommitLogReader.ALL_MUTATIONS, false);
+            events += handler.events;
+            if (handler.failure != null) {
+                saveCheckpoint(id, handler.position);
+                throw new IOException("Change handler failed in segment " + file.getName() + ": "
+                        + handler.failure.getMessage(), handler.failure);
+            }
+            saveCheckpoint(id, SEGMENT_DONE);
+            Files.deleteIfExists(file.toPath());
+        }
+        return events;
+    }
+
+    /**
+     * Stops polling; a poll in progress finishes its current segment.
+     */
+    @Override
+    public void close() {
+        if (poller != null) {
+            poller.shutdown();
+        }
+    }
+
+    private final class SegmentHandler implements CommitLogReadHandler {
+        // end of the last mutation handled by all handlers
+        int position;
+        int events;
+        Exception failure;
+
+        SegmentHandler(int position) {
+            this.position = position;
+        }
+
+        @Override
+        public void handleMutation(Mutation mutation, int size, int entryLocation, CommitLogDescriptor descriptor) {
+            // the reader cannot be stopped, the rest of the segment is skipped and read again on the next poll
+            if (failure != null) return;
+            try {
+                for (ChangeEvent event : decoder.decode(mutation)) {
+                    for (ChangeHandler handler : handlers) {
+                        handler.onChange(event);
+                    }
+                    events++;
+                    eventsMeter.mark();
+                }
+                position = entryLocation;
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+
+        @Override
+        public boolean shouldSkipSegmentOnError(CommitLogReadException exception) throws IOException {
+            if (!exception.permissible) throw exception;
+            logger.warn("Skipping unreadable part of CDC segment: {}", exception.getMessage());
+            return false;
+        }
+
+        @Override
+        public void handleUnrecoverableError(CommitLogReadException exception) throws IOException {
+            throw exception;
+        }
+    }
+
+    private void readCheckpoint() throws BackendException {
+        if (!Files.exists(checkpointFile)) return;
+        try {
+            String[] parts = new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8).trim().split("\\s+");
+            checkpointSegment = Long.parseLong(parts[0]);
+            checkpointPosition = Integer.parseInt(parts[1]);
+        } catch (IOException | RuntimeException e) {
+            throw new BackendException("Could not read CDC checkpoint " + checkpointFile + ".", e);
+        }
+    }
+
+    /**
+     * Replaces the checkpoint file atomically, so a crash leaves either the old or the new position.
+     */
+    private void saveCheckpoint(long segment, int position) throws IOException {
+        Path temporary = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        Files.write(temporary, (segment + " " + position + "\n").getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        checkpointSegment = segment;
+        checkpointPosition = position;
+    }
+
+    /**
+     * Loads the node's cassandra.yaml, unless a node or another consumer already initialized this JVM.
+     */
+    private static synchronized void initializeCassandraConfig(String cassandraConfig) {
+        if (DatabaseDescriptor.isDaemonInitialized() || DatabaseDescriptor.isToolInitialized()) return;
+        if (cassandraConfig != null && !cassandraConfig.isBlank()) {
+            System.setProperty("cassandra.config", Paths.get(cassandraConfig.trim()).toUri().toString());
+        }
+        DatabaseDescriptor.toolInitialization(false);
+    }
+
+    /**
+     * Mutations are decoded with the table definitions known to {@link Schema}. Outside the node's JVM they are
+     * registered from driver metadata, with the table ids used in the commit log. All tables of the keyspace are
+     * registered, not only the consumed ones: writes to one partition key of several tables (e.g. a batch) form
+     * a single mutation, which the reader skips whole when one of its tables is unknown.
+     */
+    private static synchronized void prepareSchema(BackendSession session) throws BackendException {
+        String keyspace = session.getKeyspace();
+        if (Schema.instance.getKSMetaData(keyspace) != null) return;
+        List<CFMetaData> tables = new ArrayList<>();
+        for (TableMetadata table : session.getTablesMetadata()) {
+            tables.add(CFMetaData.compile(createTableCql(table), keyspace).copy(table.getId()));
+        }
+        for (String name : MutationDecoder.TABLES) {
+            if (tables.stream().noneMatch(table -> table.cfName.equals(name))) {
+                throw new BackendException("Could not find table " + name + " for the CDC consumer.");
+            }
+        }
+        Schema.instance.load(KeyspaceMetadata.create(keyspace, KeyspaceParams.simple(1), Tables.of(tables)));
+    }
+
+    private static String createTableCql(TableMetadata table) {
+        StringBuilder cql = new StringBuilder("CREATE TABLE ").append(table.getName()).append(" (");
+        for (ColumnMetadata column : table.getColumns()) {
+            cql.append(column.getName()).append(' ').append(column.getType()).append(", ");
+        }
+        cql.append("PRIMARY KEY ((");
+        for (int i = 0; i < table.getPartitionKey().size(); i++) {
+            cql.append(i == 0 ? "" : ", ").append(table.getPartitionKey().get(i).getName());
+        }
+        cql.append(')');
+        for (ColumnMetadata column : table.getClusteringColumns()) {
+            cql.append(", ").append(column.getName());
+        }
+        cql.append("))");
+        if (!table.getClusteringColumns().isEmpty()) {
+            cql.append(" WITH CLUSTERING ORDER BY (");
+            for (int i = 0; i < table.getClusteringColumns().size(); i++) {
+                ClusteringOrder order = table.getClusteringOrder().get(i);
+                cql.append(i == 0 ? "" : ", ").append(table.getClusteringColumns().get(i).getName()).append(' ').append(order.name());
+            }
+            cql.append(')');
+        }
+        return cql.toString();
+    }
+}
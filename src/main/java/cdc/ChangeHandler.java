@@ -0,0 +1,13 @@
+package cdc;
+
+import model.ChangeEvent;
+
+/**
+ * Receives change events from {@link CdcConsumer}. Events are delivered at least once: a failed handler stops
+ * the consumer, which delivers the event again on the next poll, and with replication every replica logs
+ * the same write. Handlers must therefore be idempotent.
+ */
+@FunctionalInterface
+public interface ChangeHandler {
+    void onChange(ChangeEvent event) throws Exception;
+}
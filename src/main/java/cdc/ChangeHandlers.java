@@ -0,0 +1,87 @@
+package cdc;
+
+import backend.BackendSession;
+import backend.ExpiringLruCache;
+import graph.SocialGraph;
+import model.ChangeEvent;
+import utils.FeedCache;
+import utils.ProfilePropagator;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handlers keeping derived data in line with the base tables.
+ */
+public final class ChangeHandlers {
+
+    private static final List<String> PROFILE_COLUMNS = Arrays.asList("firstname", "lastname", "birthdate", "bio");
+    static final int EDGE_TIMESTAMPS = 100000;
+    static final int EDGE_TIMESTAMP_TTL_HOURS = 24;
+
+    private ChangeHandlers() {
+    }
+
+    /**
+     * Drops cached profiles of changed users, cached feeds of users who followed or unfollowed someone and cached
+     * feeds containing posts of an author whose post was written, edited or deleted, in either posts layout,
+     * also when the change was made by another process. Timelines of the fan-out mode are not cached.
+     *
+     * @param feedCache may be {@code null}
+     */
+    public static ChangeHandler cacheInvalidation(BackendSession session, FeedCache feedCache) {
+        return event -> {
+            if (event.getTable() == ChangeEvent.Table.USERS) {
+                session.getUserCache().invalidate(event.getNick());
+            } else if (event.getTable() == ChangeEvent.Table.FOLLOWING && feedCache != null) {
+                feedCache.invalidate(event.getNick());
+            } else if (event.getTable() == ChangeEvent.Table.POSTS && feedCache != null) {
+                feedCache.invalidateAuthor(event.getNick());
+            }
+        };
+    }
+
+    /**
+     * Applies follows (inserts of following rows) and unfollows to the in-memory follow graph. Updates of
+     * following rows only rewrite profile copies and are ignored. A change is applied only when it is newer than
+     * the last one applied to the same pair, so a follow replayed late by a hint or a repair does not undo
+     * a newer unfollow. The write times of the {@value #EDGE_TIMESTAMPS} most recently changed pairs are kept,
+     * for {@value #EDGE_TIMESTAMP_TTL_HOURS} hours, longer than the default hint window.
+     */
+    public static ChangeHandler graphMaintenance(SocialGraph graph) {
+        ExpiringLruCache<String, Long> lastChanges = new ExpiringLruCache<>(EDGE_TIMESTAMPS,
+                TimeUnit.HOURS.toMillis(EDGE_TIMESTAMP_TTL_HOURS), 0);
+        return event -> {
+            if (event.getTable() != ChangeEvent.Table.FOLLOWING || event.getOtherNick() == null) return;
+            if (!event.isDeletion() && !event.isInserted()) return;
+            String edge = event.getNick() + '\0' + event.getOtherNick();
+            // handlers are called from the consumer thread only
+            Long last = lastChanges.getIfPresent(edge);
+            if (last != null && last >= event.getTimestamp()) return;
+            lastChanges.put(edge, event.getTimestamp());
+            if (event.isDeletion()) {
+                graph.unfollow(event.getNick(), event.getOtherNick());
+            } else {
+                graph.follow(event.getNick(), event.getOtherNick());
+            }
+        };
+    }
+
+    /**
+     * Copies changed profiles into the followers and following rows denormalizing them, in place of doing it
+     * when the profile is saved. CDC carries no previous values, so a registration is propagated as well;
+     * a new user has no connections and the propagation only records its checkpoint.
+     */
+    public static ChangeHandler profilePropagation(ProfilePropagator propagator) {
+        return event -> {
+            if (event.getTable() != ChangeEvent.Table.USERS || event.isDeletion()) return;
+            for (String column : PROFILE_COLUMNS) {
+                if (event.getColumns().contains(column)) {
+                    propagator.propagate(event.getNick());
+                    return;
+                }
+            }
+        };
+    }
+}
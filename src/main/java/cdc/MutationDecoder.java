@@ -0,0 +1,99 @@
+package cdc;
+
+import model.ChangeEvent;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.CompositeType;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.db.partitions.PartitionUpdate;
+import org.apache.cassandra.db.rows.Cell;
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Turns mutations read from commit log segments into change events of the tables consumed by {@link CdcConsumer}.
+ * Mutations of other keyspaces and tables are ignored.
+ */
+final class MutationDecoder {
+
+    /** Names of the tables of decoded events, as stored by Cassandra. */
+    static final String[] TABLES = {"users", "posts", "postsbybucket", "followers", "following"};
+
+    private final String keyspace;
+
+    MutationDecoder(String keyspace) {
+        this.keyspace = keyspace.toLowerCase();
+    }
+
+    List<ChangeEvent> decode(Mutation mutation) {
+        List<ChangeEvent> events = new ArrayList<>();
+        if (!mutation.getKeyspaceName().equals(keyspace)) return events;
+        for (PartitionUpdate update : mutation.getPartitionUpdates()) {
+            ChangeEvent.Table table = tableOf(update.metadata());
+            if (table == null) continue;
+            String nick = nickOf(update);
+            if (!update.partitionLevelDeletion().isLive() || update.deletionInfo().hasRanges()) {
+                // nothing in these tables deletes partitions or ranges, but a manual cleanup might
+                events.add(new ChangeEvent(table, nick, null, 0, true, false, new HashSet<>(), update.maxTimestamp()));
+            }
+            for (Row row : update) {
+                events.add(decodeRow(table, nick, row, update.maxTimestamp()));
+            }
+        }
+        return events;
+    }
+
+    private static ChangeEvent decodeRow(ChangeEvent.Table table, String nick, Row row, long partitionTimestamp) {
+        String otherNick = null;
+        long creationDate = 0;
+        if (table == ChangeEvent.Table.POSTS) {
+            creationDate = ByteBufferUtil.toLong(row.clustering().get(0));
+        } else if (table != ChangeEvent.Table.USERS) {
+            otherNick = UTF8Type.instance.compose(row.clustering().get(0));
+        }
+        boolean deletion = !row.deletion().isLive();
+        boolean inserted = !row.primaryKeyLivenessInfo().isEmpty();
+        long timestamp = deletion ? row.deletion().time().markedForDeleteAt()
+                : inserted ? row.primaryKeyLivenessInfo().timestamp() : partitionTimestamp;
+        Set<String> columns = new HashSet<>();
+        for (Cell cell : row.cells()) {
+            columns.add(cell.column().name.toString().toLowerCase());
+        }
+        return new ChangeEvent(table, nick, otherNick, creationDate, deletion, inserted, columns, timestamp);
+    }
+
+    /**
+     * First partition key column, the nick; postsbybucket adds the bucket to it.
+     */
+    private static String nickOf(PartitionUpdate update) {
+        ByteBuffer key = update.partitionKey().getKey();
+        AbstractType<?> keyType = update.metadata().getKeyValidator();
+        if (keyType instanceof CompositeType) {
+            key = ((CompositeType) keyType).split(key)[0];
+        }
+        return UTF8Type.instance.compose(key);
+    }
+
+    private static ChangeEvent.Table tableOf(CFMetaData metadata) {
+        switch (metadata.cfName) {
+            case "users":
+                return ChangeEvent.Table.USERS;
+            case "posts":
+            case "postsbybucket":
+                return ChangeEvent.Table.POSTS;
+            case "followers":
+                return ChangeEvent.Table.FOLLOWERS;
+            case "following":
+                return ChangeEvent.Table.FOLLOWING;
+            default:
+                return null;
+        }
+    }
+}
@@ -1,10 +1,14 @@
 package cli;
 
+import model.FollowSuggestion;
 import model.Post;
 import model.User;
+import model.UserCounters;
+import model.UserMatch;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.Scanner;
@@ -24,6 +28,7 @@ public class Menu {
     public static final String NO="N";
     public static final String FOLLOW="F";
     public static final String UNFOLLOW="U";
+    public static final int DEFAULT_LIST_PAGE_SIZE = 50;
     public static final String[] valid_actions = {S_FOLLOWERS, S_FOLLOWING, SEARCH, POSTS, WRITE, EDIT, EXIT};
 
 
@@ -68,8 +73,23 @@ public class Menu {
         return readAnswer();
     }
 
+    public String getSuggestions(List<FollowSuggestion> suggestions) {
+        StringBuilder builder = new StringBuilder(props.getProperty("suggestions")).append(":");
+        for (FollowSuggestion suggestion : suggestions) {
+            builder.append("\n").append(suggestion.getNick()).append(" (").append(props.getProperty("followed_by"))
+                    .append(" ").append(suggestion.getScore()).append(" ").append(props.getProperty("followees")).append(")");
+        }
+        return builder.toString();
+    }
+
     public String getUserInfoHeader(String nickname) { return props.getProperty("user_info") + " " + nickname; }
 
+    public String getUserCounters(UserCounters counters) {
+        return props.getProperty("followers_count") + ": " + counters.getFollowers() + "  "
+                + props.getProperty("following_count") + ": " + counters.getFollowing() + "  "
+                + props.getProperty("posts_count") + ": " + counters.getPosts();
+    }
+
     public String getPreLoginMenu() {
 
         StringBuilder builder = new StringBuilder();
@@ -178,6 +198,45 @@ public class Menu {
         return number-1;
     }
 
+    /**
+     * Lets the user pick one of search results, a single result is picked without asking.
+     */
+    public int getSearchResultNumber(List<UserMatch> matches) {
+        if (matches.size() == 1) return 0;
+        System.out.println(props.getProperty("search_results"));
+        for (int i = 0; i < matches.size(); i++) {
+            UserMatch match = matches.get(i);
+            System.out.println(i + 1 + ": " + match.getNick() + " (" + match.getFirstName() + " " + match.getLastName() + ")");
+        }
+        while (true) {
+            System.out.println(props.getProperty("select_user"));
+            try {
+                int number = Integer.parseInt(readAnswer());
+                if (number >= 1 && number <= matches.size()) return number - 1;
+            } catch (NumberFormatException e) {
+                // asked again below
+            }
+            System.out.println(props.getProperty("invalid_number"));
+        }
+    }
+
+    public boolean askForNextPage() {
+        return askYesNo("next_page");
+    }
+
+    public boolean askForMoreUsers() {
+        return askYesNo("next_users_page");
+    }
+
+    private boolean askYesNo(String question) {
+        String answer = "F";
+        while (!(answer.equals(YES) || answer.equals(NO))) {
+            System.out.println(props.getProperty(question));
+            answer = readAnswer().toUpperCase();
+        }
+        return answer.equals(YES);
+    }
+
     public String processPostEdit(Post post) {
         System.out.println(props.getProperty("edit_header"));
         System.out.println(post.getText());
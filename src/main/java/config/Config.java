@@ -0,0 +1,84 @@
+package config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+public class Config {
+    public static final String PROPERTIES_FILENAME = "config.properties";
+
+    private final Properties properties;
+
+    public Config(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Reads {@value #PROPERTIES_FILENAME} for a command line tool, see {@link #load(String[], String...)}.
+     */
+    public static Config load(String... overrides) {
+        return load(new String[]{PROPERTIES_FILENAME}, overrides);
+    }
+
+    /**
+     * Reads property files from the classpath, later files overriding earlier ones and missing ones skipped,
+     * then applies {@code key=value} overrides, usually command line arguments. Meant for {@code main} methods:
+     * prints the problem and exits with status 1 when a file cannot be read or an override is malformed.
+     */
+    public static Config load(String[] filenames, String... overrides) {
+        Properties properties = new Properties();
+        try {
+            for (String filename : filenames) {
+                try (InputStream stream = Config.class.getClassLoader().getResourceAsStream(filename)) {
+                    if (stream != null) properties.load(stream);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Could not read configuration: " + e.getMessage());
+            System.exit(1);
+        }
+        for (String override : overrides) {
+            int separator = override.indexOf('=');
+            if (separator <= 0) {
+                System.out.println("Arguments must have form key=value, got: " + override);
+                System.exit(1);
+            }
+            properties.setProperty(override.substring(0, separator), override.substring(separator + 1));
+        }
+        return new Config(properties);
+    }
+
+    public String getString(String key) {
+        return properties.getProperty(key);
+    }
+
+    public String getString(String key, String defaultValue) {
+        return properties.getProperty(key, defaultValue);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.isBlank()) return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid numeric value of property " + key + ": " + value, e);
+        }
+    }
+
+    public long getLong(String key, long defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.isBlank()) return defaultValue;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid numeric value of property " + key + ": " + value, e);
+        }
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.isBlank()) return defaultValue;
+        return Boolean.parseBoolean(value.trim());
+    }
+}
@@ -0,0 +1,152 @@
+package graph;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Sorted neighbour lists of one direction of the graph. Lists built in bulk are stored in compressed sparse row
+ * form: neighbours of vertex {@code v} are {@code targets[offsets[v]]} up to {@code targets[offsets[v + 1]]}, which
+ * costs 4 bytes per edge and per vertex. A vertex changed afterwards gets its own growable array, so a follow
+ * does not shift the shared one; only vertices actually changed since the last load pay the array overhead.
+ * Not thread-safe.
+ */
+final class Adjacency {
+    private static final int[] EMPTY = new int[0];
+
+    private final int[] offsets;
+    private final int[] targets;
+    private final int baseVertices;
+    // neighbours of vertices changed after the build, null for unchanged ones; grown up to the highest changed id
+    private int[][] changed;
+    private int[] changedSizes;
+    private long edges;
+
+    private Adjacency(int[] offsets, int[] targets) {
+        this.offsets = offsets;
+        this.targets = targets;
+        this.baseVertices = offsets.length - 1;
+        this.changed = new int[16][];
+        this.changedSizes = new int[changed.length];
+        this.edges = targets.length;
+    }
+
+    /**
+     * Builds lists of edges {@code from[i] -> to[i]} for the first {@code count} entries. Edges must be unique.
+     */
+    static Adjacency build(int vertices, int[] from, int[] to, int count) {
+        int[] offsets = new int[vertices + 1];
+        for (int i = 0; i < count; i++) {
+            offsets[from[i] + 1]++;
+        }
+        for (int v = 0; v < vertices; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] targets = new int[count];
+        int[] next = Arrays.copyOf(offsets, vertices);
+        for (int i = 0; i < count; i++) {
+            targets[next[from[i]]++] = to[i];
+        }
+        for (int v = 0; v < vertices; v++) {
+            Arrays.sort(targets, offsets[v], offsets[v + 1]);
+        }
+        return new Adjacency(offsets, targets);
+    }
+
+    boolean contains(int v, int w) {
+        if (v < changed.length && changed[v] != null) {
+            return Arrays.binarySearch(changed[v], 0, changedSizes[v], w) >= 0;
+        }
+        return v < baseVertices && Arrays.binarySearch(targets, offsets[v], offsets[v + 1], w) >= 0;
+    }
+
+    int degree(int v) {
+        if (v < changed.length && changed[v] != null) return changedSizes[v];
+        return v < baseVertices ? offsets[v + 1] - offsets[v] : 0;
+    }
+
+    /**
+     * Passes at most {@code limit} neighbours of {@code v} to {@code consumer}, in id order.
+     */
+    void forEach(int v, int limit, IntConsumer consumer) {
+        int[] array;
+        int from;
+        int to;
+        if (v < changed.length && changed[v] != null) {
+            array = changed[v];
+            from = 0;
+            to = changedSizes[v];
+        } else if (v < baseVertices) {
+            array = targets;
+            from = offsets[v];
+            to = offsets[v + 1];
+        } else {
+            return;
+        }
+        if (to - from > limit) to = from + limit;
+        for (int i = from; i < to; i++) {
+            consumer.accept(array[i]);
+        }
+    }
+
+    /**
+     * @return whether the edge was added, false when it was present
+     */
+    boolean add(int v, int w) {
+        int[] list = changedList(v);
+        int size = changedSizes[v];
+        int position = Arrays.binarySearch(list, 0, size, w);
+        if (position >= 0) return false;
+        position = -position - 1;
+        if (size == list.length) {
+            list = changed[v] = Arrays.copyOf(list, Math.max(4, size + (size >> 1)));
+        }
+        System.arraycopy(list, position, list, position + 1, size - position);
+        list[position] = w;
+        changedSizes[v]++;
+        edges++;
+        return true;
+    }
+
+    /**
+     * @return whether the edge was removed, false when it was absent
+     */
+    boolean remove(int v, int w) {
+        if (degree(v) == 0) return false;
+        int[] list = changedList(v);
+        int size = changedSizes[v];
+        int position = Arrays.binarySearch(list, 0, size, w);
+        if (position < 0) return false;
+        System.arraycopy(list, position + 1, list, position, size - position - 1);
+        changedSizes[v]--;
+        edges--;
+        return true;
+    }
+
+    long edges() {
+        return edges;
+    }
+
+    long sizeInBytes() {
+        long size = 4L * offsets.length + 4L * targets.length + 8L * changed.length;
+        for (int[] list : changed) {
+            if (list != null) size += 16 + 4L * list.length;
+        }
+        return size;
+    }
+
+    /**
+     * Returns the own array of {@code v}, copying its slice of the shared one on the first change.
+     */
+    private int[] changedList(int v) {
+        if (v >= changed.length) {
+            int capacity = Math.max(v + 1, changed.length + (changed.length >> 1));
+            changed = Arrays.copyOf(changed, capacity);
+            changedSizes = Arrays.copyOf(changedSizes, capacity);
+        }
+        if (changed[v] == null) {
+            changed[v] = v < baseVertices ? Arrays.copyOfRange(targets, offsets[v], offsets[v + 1]) : EMPTY;
+            changedSizes[v] = changed[v].length;
+        }
+        return changed[v];
+    }
+}
@@ -0,0 +1,72 @@
+package graph;
+
+import model.FollowSuggestion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Counts occurrences of nicknames. Nicknames get dense ids from a {@link NickDictionary} and counts are kept
+ * in an int array indexed by them, so counting allocates nothing per occurrence and no boxed counters.
+ * Not thread-safe; every fork-join task of {@link FollowRecommender} fills its own counter and merges it into
+ * its sibling's.
+ */
+final class CandidateCounter {
+    private final NickDictionary nicks;
+    private int[] counts;
+
+    CandidateCounter(int expectedSize) {
+        nicks = new NickDictionary(expectedSize);
+        counts = new int[Math.max(16, expectedSize)];
+    }
+
+    void add(String nick, int count) {
+        int id = nicks.intern(nick);
+        if (id == counts.length) {
+            counts = Arrays.copyOf(counts, counts.length * 2);
+        }
+        counts[id] += count;
+    }
+
+    void addAll(CandidateCounter other) {
+        for (int id = 0; id < other.size(); id++) {
+            add(other.nicks.nickOf(id), other.counts[id]);
+        }
+    }
+
+    int size() {
+        return nicks.size();
+    }
+
+    /**
+     * Returns at most {@code limit} nicknames with the highest counts, ties broken by nickname,
+     * skipping the {@code excluded} ones.
+     */
+    List<FollowSuggestion> top(int limit, Set<String> excluded) {
+        // ids of the best candidates seen so far, best first; limit is small, so insertion beats a heap
+        int[] best = new int[Math.min(limit, size())];
+        int found = 0;
+        for (int id = 0; id < size() && best.length > 0; id++) {
+            if (found == best.length && !ranksBefore(id, best[found - 1])) continue;
+            if (excluded.contains(nicks.nickOf(id))) continue;
+            int position = found < best.length ? found++ : found - 1;
+            while (position > 0 && ranksBefore(id, best[position - 1])) {
+                best[position] = best[position - 1];
+                position--;
+            }
+            best[position] = id;
+        }
+        List<FollowSuggestion> suggestions = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            suggestions.add(new FollowSuggestion(nicks.nickOf(best[i]), counts[best[i]]));
+        }
+        return suggestions;
+    }
+
+    private boolean ranksBefore(int id, int other) {
+        if (counts[id] != counts[other]) return counts[id] > counts[other];
+        return nicks.nickOf(id).compareTo(nicks.nickOf(other)) < 0;
+    }
+}
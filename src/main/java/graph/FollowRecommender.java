@@ -0,0 +1,268 @@
+package graph;
+
+import backend.BackendException;
+import backend.BackendSession;
+import backend.ExpiringLruCache;
+import com.codahale.metrics.Gauge;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import config.Config;
+import model.FollowSuggestion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * "Who to follow" suggestions: users followed by the most followees of a user, whom the user does not follow yet.
+ * <p>
+ * Followees of every followee (the second degree) are read with concurrent asynchronous queries of their following
+ * partitions, at most {@code maxInFlight} at a time, or taken from the in-memory {@link SocialGraph} when it is loaded.
+ * Users following more than {@code maxFollowees} users are scored on a random sample of their followees.
+ * Candidates are counted by {@link CandidateCounter} tasks of a fork-join pool, each counting a slice of the
+ * second degree, and merged pairwise.
+ * <p>
+ * Suggestions are cached per user. Entries of users who asked for them within the last refresh interval are
+ * recomputed in the background every interval, so active users are not kept waiting; the others expire after two
+ * intervals. Following or unfollowing someone drops the follower's entry.
+ */
+public class FollowRecommender implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(FollowRecommender.class);
+
+    public static final int DEFAULT_RESULTS = 10;
+    public static final int DEFAULT_MAX_FOLLOWEES = 1000;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 32;
+    public static final int DEFAULT_CACHE_SIZE = 10000;
+    public static final int DEFAULT_REFRESH_MINUTES = 10;
+    // least followee lists counted by one task; above it, lists are split into a few tasks per thread, since
+    // merging counters costs about as much as counting
+    private static final int MIN_LISTS_PER_TASK = 32;
+    private static final int TASKS_PER_THREAD = 4;
+
+    /**
+     * Counts candidates in the followee lists {@code from} up to {@code to}, splitting the range in halves
+     * down to {@code listsPerTask} lists.
+     */
+    private static final class CountTask extends RecursiveTask<CandidateCounter> {
+        private static final long serialVersionUID = 1L;
+
+        private final IntFunction<List<String>> lists;
+        private final int from;
+        private final int to;
+        private final int listsPerTask;
+
+        CountTask(IntFunction<List<String>> lists, int from, int to, int listsPerTask) {
+            this.lists = lists;
+            this.from = from;
+            this.to = to;
+            this.listsPerTask = listsPerTask;
+        }
+
+        @Override
+        protected CandidateCounter compute() {
+            if (to - from <= listsPerTask) {
+                CandidateCounter counter = new CandidateCounter(0);
+                for (int i = from; i < to; i++) {
+                    for (String candidate : lists.apply(i)) {
+                        counter.add(candidate, 1);
+                    }
+                }
+                return counter;
+            }
+            int middle = (from + to) >>> 1;
+            CountTask left = new CountTask(lists, from, middle, listsPerTask);
+            left.fork();
+            CandidateCounter right = new CountTask(lists, middle, to, listsPerTask).compute();
+            CandidateCounter merged = left.join();
+            // merging the smaller counter into the bigger one interns fewer nicknames
+            if (merged.size() < right.size()) {
+                right.addAll(merged);
+                return right;
+            }
+            merged.addAll(right);
+            return merged;
+        }
+    }
+
+    BackendSession session;
+    SocialGraph graph;
+    int results;
+    int maxFollowees;
+    int maxInFlight;
+    private final ForkJoinPool pool;
+    private final ExpiringLruCache<String, List<FollowSuggestion>> cache;
+    // users with cached suggestions -> when they last asked for them, only kept when refreshing in the background
+    private final Map<String, Long> lastRequests = new ConcurrentHashMap<>();
+    private final long refreshMillis;
+    private ScheduledExecutorService refresher;
+
+    /**
+     * @param session       reads followee lists when {@code graph} is {@code null}
+     * @param graph         when given, followee lists are taken from the in-memory follow graph
+     * @param parallelism   threads counting candidates
+     * @param cacheSize     users whose suggestions are cached, 0 disables caching
+     * @param refreshMillis interval of background refreshes, 0 disables them and cached suggestions expire after
+     *                      {@link #DEFAULT_REFRESH_MINUTES}
+     */
+    public FollowRecommender(BackendSession session, SocialGraph graph, int results, int maxFollowees, int maxInFlight,
+                             int parallelism, int cacheSize, long refreshMillis) {
+        this.session = session;
+        this.graph = graph;
+        this.results = Math.max(1, results);
+        this.maxFollowees = Math.max(1, maxFollowees);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.refreshMillis = refreshMillis;
+        this.pool = new ForkJoinPool(Math.max(1, parallelism), forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("recommend-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        long ttlMillis = refreshMillis > 0 ? 2 * refreshMillis : TimeUnit.MINUTES.toMillis(DEFAULT_REFRESH_MINUTES);
+        this.cache = new ExpiringLruCache<>(cacheSize, ttlMillis, 0, (nick, suggestions) -> lastRequests.remove(nick));
+        if (refreshMillis > 0 && cacheSize > 0) {
+            refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "recommend-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            refresher.scheduleWithFixedDelay(this::refresh, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Creates the recommender configured with the {@code recommend_*} properties, {@code null} when it is disabled
+     * with {@code recommend_results} 0.
+     */
+    public static FollowRecommender fromConfig(BackendSession session, Config config, SocialGraph graph) {
+        int results = config.getInt("recommend_results", DEFAULT_RESULTS);
+        if (results <= 0) return null;
+        int parallelism = config.getInt("recommend_parallelism", 0);
+        FollowRecommender recommender = new FollowRecommender(session, graph, results,
+                config.getInt("recommend_max_followees", DEFAULT_MAX_FOLLOWEES),
+                config.getInt("recommend_max_in_flight", DEFAULT_MAX_IN_FLIGHT),
+                parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(),
+                config.getInt("recommend_cache_max_size", DEFAULT_CACHE_SIZE),
+                TimeUnit.MINUTES.toMillis(config.getInt("recommend_refresh_minutes", DEFAULT_REFRESH_MINUTES)));
+        session.getMetrics().registerGauge("cache.recommendations.size", (Gauge<Integer>) recommender.cache::size);
+        session.getMetrics().registerGauge("cache.recommendations.hitRatio",
+                (Gauge<Double>) recommender.cache::getHitRatio);
+        return recommender;
+    }
+
+    /**
+     * Returns users suggested to {@code nick}, best first, from the cache when present.
+     */
+    public List<FollowSuggestion> recommend(String nick) throws BackendException {
+        List<FollowSuggestion> suggestions = session.getMetrics().time("recommend.recommend",
+                () -> cache.get(nick, this::compute));
+        if (refresher != null) {
+            lastRequests.put(nick, System.currentTimeMillis());
+        }
+        return suggestions;
+    }
+
+    /**
+     * Computes suggestions for {@code nick} without looking at the cache.
+     */
+    public List<FollowSuggestion> compute(String nick) throws BackendException {
+        List<String> following = following(nick);
+        List<String> sample = following;
+        if (following.size() > maxFollowees) {
+            sample = new ArrayList<>(following);
+            Collections.shuffle(sample, ThreadLocalRandom.current());
+            sample = sample.subList(0, maxFollowees);
+        }
+
+        IntFunction<List<String>> secondDegree;
+        if (graph != null) {
+            List<String> followees = sample;
+            secondDegree = i -> graph.following(followees.get(i));
+        } else {
+            secondDegree = fetchFollowing(sample)::get;
+        }
+        int listsPerTask = Math.max(MIN_LISTS_PER_TASK, sample.size() / (TASKS_PER_THREAD * pool.getParallelism()) + 1);
+        CandidateCounter counter = pool.invoke(new CountTask(secondDegree, 0, sample.size(), listsPerTask));
+
+        Set<String> excluded = new HashSet<>(following);
+        excluded.add(nick);
+        return counter.top(results, excluded);
+    }
+
+    /**
+     * Drops cached suggestions of {@code nick}, e.g. after the user followed or unfollowed someone.
+     */
+    public void invalidate(String nick) {
+        cache.invalidate(nick);
+    }
+
+    private List<String> following(String nick) throws BackendException {
+        if (graph != null) return graph.following(nick);
+        return BackendSession.awaitResult(session.selectFollowingUsersNicknamesAsync(nick),
+                "Could not fetch followed users.");
+    }
+
+    private List<ArrayList<String>> fetchFollowing(List<String> followees) throws BackendException {
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        List<ListenableFuture<ArrayList<String>>> futures = new ArrayList<>(followees.size());
+        for (String followee : followees) {
+            inFlight.acquireUninterruptibly();
+            ListenableFuture<ArrayList<String>> future = session.selectFollowingUsersNicknamesAsync(followee);
+            future.addListener(inFlight::release, MoreExecutors.directExecutor());
+            futures.add(future);
+        }
+        return BackendSession.awaitResult(Futures.allAsList(futures), "Could not fetch followed users.");
+    }
+
+    /**
+     * Recomputes cached suggestions of users who asked for them within the last interval and forgets the others,
+     * whose entries expire.
+     */
+    private void refresh() {
+        long start = System.currentTimeMillis();
+        cache.cleanUp();
+        int refreshed = 0;
+        for (Map.Entry<String, Long> entry : lastRequests.entrySet()) {
+            String nick = entry.getKey();
+            if (entry.getValue() < start - refreshMillis) {
+                lastRequests.remove(nick, entry.getValue());
+                continue;
+            }
+            List<FollowSuggestion> current = cache.getIfPresent(nick);
+            if (current == null) continue;
+            try {
+                // not stored when the entry was invalidated while computing
+                if (cache.replace(nick, current, compute(nick))) refreshed++;
+            } catch (BackendException | RuntimeException e) {
+                logger.warn("Could not refresh suggestions for {}, keeping the cached ones", nick, e);
+            }
+        }
+        logger.debug("Refreshed suggestions of {} users in {} ms", refreshed, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Stops background refreshes and the counting threads.
+     */
+    @Override
+    public void close() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+        pool.shutdownNow();
+    }
+}
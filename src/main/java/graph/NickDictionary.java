@@ -0,0 +1,93 @@
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * Assigns dense int ids, in order of first appearance, to nicknames. Lookups use an open-addressing hash table
+ * of {@code id + 1} values (0 marks an empty slot) kept at most half full, so the dictionary holds no boxed keys
+ * or entry objects, only the nicknames themselves. Not thread-safe.
+ */
+final class NickDictionary {
+    private String[] nicks;
+    private int[] slots;
+    private int size;
+
+    NickDictionary(int expectedSize) {
+        nicks = new String[Math.max(16, expectedSize)];
+        slots = new int[tableSize(nicks.length)];
+    }
+
+    /**
+     * @return id of {@code nick}, -1 when it has none
+     */
+    int idOf(String nick) {
+        int mask = slots.length - 1;
+        for (int i = mix(nick.hashCode()) & mask; ; i = (i + 1) & mask) {
+            int slot = slots[i];
+            if (slot == 0) return -1;
+            if (nicks[slot - 1].equals(nick)) return slot - 1;
+        }
+    }
+
+    /**
+     * @return id of {@code nick}, assigning the next free one when it has none
+     */
+    int intern(String nick) {
+        int mask = slots.length - 1;
+        int i = mix(nick.hashCode()) & mask;
+        for (; slots[i] != 0; i = (i + 1) & mask) {
+            if (nicks[slots[i] - 1].equals(nick)) return slots[i] - 1;
+        }
+        if (size == nicks.length) {
+            nicks = Arrays.copyOf(nicks, nicks.length * 2);
+        }
+        int id = size++;
+        nicks[id] = nick;
+        if (size * 2 > slots.length) {
+            rehash(tableSize(size));
+        } else {
+            slots[i] = id + 1;
+        }
+        return id;
+    }
+
+    String nickOf(int id) {
+        return nicks[id];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Size of the id and hash arrays; the nicknames are shared with the rest of the application.
+     */
+    long sizeInBytes() {
+        return 4L * nicks.length + 4L * slots.length;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int i = mix(nicks[id].hashCode()) & mask;
+            while (slots[i] != 0) i = (i + 1) & mask;
+            slots[i] = id + 1;
+        }
+    }
+
+    /**
+     * Power of two at least twice {@code entries}.
+     */
+    private static int tableSize(int entries) {
+        return Integer.highestOneBit(Math.max(16, entries * 2 - 1)) << 1;
+    }
+
+    /**
+     * Spreads the bits of String hash codes, which differ little between nicknames sharing a prefix.
+     */
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
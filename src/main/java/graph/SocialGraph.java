@@ -0,0 +1,341 @@
+package graph;
+
+import backend.BackendException;
+import backend.BackendSession;
+import backend.RowStream;
+import com.codahale.metrics.Gauge;
+import config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process copy of the follow graph, answering follow checks and followee/follower enumeration without
+ * a round trip to Cassandra. Nicknames are encoded to dense int ids by {@link NickDictionary} and both directions
+ * are kept as sorted int arrays ({@link Adjacency}), so a follow check is two hash lookups and a binary search,
+ * and 10M follow relations take about 80 MB for both directions plus about 20 bytes per user.
+ * <p>
+ * The graph is loaded from the following table with parallel token range scans and kept up to date by
+ * {@link utils.FollowerManager}. Follows made by other processes are picked up by reloading it every
+ * {@code graph_reload_interval_minutes}; changes made while a reload is running are replayed onto the new copy.
+ */
+public class SocialGraph implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SocialGraph.class);
+
+    public static final int DEFAULT_LOAD_SPLITS = 256;
+    public static final int DEFAULT_LOAD_THREADS = 8;
+    private static final int FETCH_SIZE = 1000;
+    // follow relations read by a split before they are added to the shared builder
+    private static final int CHUNK_SIZE = 1000;
+
+    private static final class Change {
+        final String nick;
+        final String followee;
+        final boolean follow;
+
+        Change(String nick, String followee, boolean follow) {
+            this.nick = nick;
+            this.followee = followee;
+            this.follow = follow;
+        }
+    }
+
+    /**
+     * Collects follow relations, possibly from many threads, and builds a graph of them.
+     */
+    public static final class Builder {
+        private final NickDictionary nicks;
+        private int[] from;
+        private int[] to;
+        private int edges;
+
+        public Builder(int expectedUsers, int expectedEdges) {
+            nicks = new NickDictionary(expectedUsers);
+            from = new int[Math.max(16, expectedEdges)];
+            to = new int[from.length];
+        }
+
+        /**
+         * Adds that {@code nick} follows {@code followee}; every relation must be added once.
+         */
+        public synchronized void add(String nick, String followee) {
+            append(nick, followee);
+        }
+
+        /**
+         * Adds {@code [nick, followee]} pairs; cheaper than adding them one by one from many threads.
+         */
+        public synchronized void addAll(List<String[]> follows) {
+            for (String[] follow : follows) {
+                append(follow[0], follow[1]);
+            }
+        }
+
+        public synchronized SocialGraph build() {
+            int vertices = nicks.size();
+            return new SocialGraph(nicks, Adjacency.build(vertices, from, to, edges), Adjacency.build(vertices, to, from, edges));
+        }
+
+        private void append(String nick, String followee) {
+            if (edges == from.length) {
+                from = Arrays.copyOf(from, edges * 2);
+                to = Arrays.copyOf(to, edges * 2);
+            }
+            from[edges] = nicks.intern(nick);
+            to[edges] = nicks.intern(followee);
+            edges++;
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private NickDictionary nicks;
+    private Adjacency following;
+    private Adjacency followers;
+    // changes made during a reload, null when no reload is running
+    private List<Change> changesDuringReload;
+    private ScheduledExecutorService reloader;
+
+    private SocialGraph(NickDictionary nicks, Adjacency following, Adjacency followers) {
+        this.nicks = nicks;
+        this.following = following;
+        this.followers = followers;
+    }
+
+    /**
+     * Loads the graph when {@code graph_index} is enabled, {@code null} otherwise. The load uses
+     * {@code graph_load_splits} token ranges scanned by {@code graph_load_threads} threads.
+     */
+    public static SocialGraph fromConfig(BackendSession session, Config config) throws BackendException {
+        if (!config.getBoolean("graph_index", false)) return null;
+        int splits = Math.max(1, config.getInt("graph_load_splits", DEFAULT_LOAD_SPLITS));
+        int threads = Math.max(1, config.getInt("graph_load_threads", DEFAULT_LOAD_THREADS));
+        SocialGraph graph = load(session, splits, threads);
+        session.getMetrics().registerGauge("graph.users", (Gauge<Integer>) graph::userCount);
+        session.getMetrics().registerGauge("graph.edges", (Gauge<Long>) graph::edgeCount);
+        session.getMetrics().registerGauge("graph.size.bytes", (Gauge<Long>) graph::sizeInBytes);
+
+        int reloadMinutes = config.getInt("graph_reload_interval_minutes", 0);
+        if (reloadMinutes > 0) {
+            graph.reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "graph-reload");
+                thread.setDaemon(true);
+                return thread;
+            });
+            graph.reloader.scheduleWithFixedDelay(() -> {
+                try {
+                    graph.reload(session, splits, threads);
+                } catch (BackendException | RuntimeException e) {
+                    logger.error("Could not reload social graph, keeping the current one", e);
+                }
+            }, reloadMinutes, reloadMinutes, TimeUnit.MINUTES);
+        }
+        return graph;
+    }
+
+    /**
+     * Reads the whole following table, splitting the token ring into {@code splits} ranges scanned in parallel.
+     */
+    public static SocialGraph load(BackendSession session, int splits, int threads) throws BackendException {
+        long start = System.nanoTime();
+        Builder builder = new Builder(0, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int split = 0; split < splits; split++) {
+            int current = split;
+            tasks.add(executor.submit(() -> {
+                loadSplit(session, builder, current, splits);
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (ExecutionException e) {
+            throw new BackendException("Could not load social graph. Reason: " + e.getCause().getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BackendException("Interrupted while loading social graph.", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        SocialGraph graph = builder.build();
+        logger.info("Loaded social graph of {} users and {} follows in {} ms", graph.userCount(), graph.edgeCount(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return graph;
+    }
+
+    private static void loadSplit(BackendSession session, Builder builder, int split, int splits) throws BackendException {
+        RowStream<String[]> follows = BackendSession.awaitResult(
+                session.selectFollowsInTokenRangeAsync(BackendSession.tokenRangeBoundary(split, splits),
+                        BackendSession.tokenRangeBoundary(split + 1, splits), FETCH_SIZE),
+                "Could not read follows.");
+        List<String[]> chunk = new ArrayList<>(CHUNK_SIZE);
+        while (follows.hasNext()) {
+            chunk.add(follows.next());
+            if (chunk.size() == CHUNK_SIZE) {
+                builder.addAll(chunk);
+                chunk.clear();
+            }
+        }
+        builder.addAll(chunk);
+    }
+
+    /**
+     * Loads a fresh copy of the graph and replaces the current one with it.
+     */
+    void reload(BackendSession session, int splits, int threads) throws BackendException {
+        lock.writeLock().lock();
+        try {
+            changesDuringReload = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        SocialGraph fresh = null;
+        try {
+            fresh = load(session, splits, threads);
+        } finally {
+            lock.writeLock().lock();
+            try {
+                if (fresh != null) {
+                    // the scan may or may not have seen these, replaying them is idempotent
+                    for (Change change : changesDuringReload) {
+                        fresh.apply(change.nick, change.followee, change.follow);
+                    }
+                    nicks = fresh.nicks;
+                    following = fresh.following;
+                    followers = fresh.followers;
+                }
+                changesDuringReload = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    public boolean isFollowing(String nick, String followee) {
+        lock.readLock().lock();
+        try {
+            int v = nicks.idOf(nick);
+            if (v < 0) return false;
+            int w = nicks.idOf(followee);
+            return w >= 0 && following.contains(v, w);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns nicknames of all users followed by {@code nick}.
+     */
+    public ArrayList<String> following(String nick) {
+        return neighbours(following, nick, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns nicknames of at most {@code limit} users following {@code nick}.
+     */
+    public ArrayList<String> followers(String nick, int limit) {
+        return neighbours(followers, nick, limit);
+    }
+
+    public void follow(String nick, String followee) {
+        change(nick, followee, true);
+    }
+
+    public void unfollow(String nick, String followee) {
+        change(nick, followee, false);
+    }
+
+    public int userCount() {
+        lock.readLock().lock();
+        try {
+            return nicks.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long edgeCount() {
+        lock.readLock().lock();
+        try {
+            return following.edges();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Approximate heap used by the graph, not counting the nickname strings.
+     */
+    public long sizeInBytes() {
+        lock.readLock().lock();
+        try {
+            return nicks.sizeInBytes() + following.sizeInBytes() + followers.sizeInBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private ArrayList<String> neighbours(Adjacency adjacency, String nick, int limit) {
+        lock.readLock().lock();
+        try {
+            int v = nicks.idOf(nick);
+            if (v < 0) return new ArrayList<>();
+            ArrayList<String> result = new ArrayList<>(Math.min(limit, adjacency.degree(v)));
+            NickDictionary dictionary = nicks;
+            adjacency.forEach(v, limit, w -> result.add(dictionary.nickOf(w)));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void change(String nick, String followee, boolean follow) {
+        lock.writeLock().lock();
+        try {
+            apply(nick, followee, follow);
+            if (changesDuringReload != null) {
+                changesDuringReload.add(new Change(nick, followee, follow));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(String nick, String followee, boolean follow) {
+        if (follow) {
+            int v = nicks.intern(nick);
+            int w = nicks.intern(followee);
+            following.add(v, w);
+            followers.add(w, v);
+        } else {
+            int v = nicks.idOf(nick);
+            int w = nicks.idOf(followee);
+            if (v < 0 || w < 0) return;
+            following.remove(v, w);
+            followers.remove(w, v);
+        }
+    }
+
+    /**
+     * Stops periodic reloading.
+     */
+    @Override
+    public void close() {
+        if (reloader != null) {
+            reloader.shutdownNow();
+        }
+    }
+}
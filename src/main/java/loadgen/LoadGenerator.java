@@ -0,0 +1,223 @@
+package loadgen;
+
+import backend.BackendException;
+import backend.BackendSession;
+import config.Config;
+import graph.SocialGraph;
+import org.HdrHistogram.Histogram;
+import utils.FanoutService;
+import utils.FeedCache;
+import utils.PostWriteQueue;
+import utils.FeedProvider;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless load generator replaying Main's flows with many concurrent virtual users.
+ * Settings are read from config.properties and loadgen.properties and can be overridden
+ * with {@code key=value} arguments, e.g. {@code users=5000 threads=128 duration_seconds=300 mix.read_feed=70}.
+ * <p>
+ * Before the measured phase the population of virtual users is registered and a follower graph is built,
+ * in which followees are drawn from a power-law distribution ({@code graph_zipf_exponent}).
+ * Per-operation throughput, latency percentiles, rejections, errors and timeouts are printed
+ * every {@code report_interval_seconds} and summarized at the end.
+ */
+public class LoadGenerator {
+    private static final String[] PROPERTIES_FILENAMES = {"config.properties", "loadgen.properties"};
+
+    final BackendSession session;
+    final SocialGraph graph;
+    final FanoutService fanoutService;
+    final FeedCache feedCache;
+    final PostWriteQueue postQueue;
+    final List<VirtualUser> population;
+    final ZipfSampler popularity;
+    final OperationMix mix;
+    final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+    final long thinkTimeMillis;
+    final int feedPageSize;
+    final int feedMaxInFlight;
+    final String runId;
+    final long seed;
+
+    private final int threads;
+    private final int followsPerUser;
+    private final long durationSeconds;
+    private final long reportIntervalSeconds;
+
+    LoadGenerator(Config config) throws BackendException {
+        session = new BackendSession(config.getString("contact_point"), config.getString("keyspace"), config);
+        graph = SocialGraph.fromConfig(session, config);
+        fanoutService = "fanout".equalsIgnoreCase(config.getString("feed_mode", "pull"))
+                ? new FanoutService(session,
+                        config.getInt("fanout_follower_threshold", FanoutService.DEFAULT_FOLLOWER_THRESHOLD),
+                        config.getInt("fanout_batch_size", FanoutService.DEFAULT_BATCH_SIZE), graph)
+                : null;
+
+        feedCache = FeedCache.fromConfig(session, config);
+        postQueue = PostWriteQueue.fromConfig(session, config);
+
+        runId = config.getString("run_id", "lg" + Long.toString(System.currentTimeMillis(), 36));
+        seed = config.getLong("seed", 42);
+        threads = config.getInt("threads", 64);
+        followsPerUser = config.getInt("graph_follows_per_user", 20);
+        durationSeconds = config.getLong("duration_seconds", 60);
+        reportIntervalSeconds = config.getLong("report_interval_seconds", 10);
+        thinkTimeMillis = config.getLong("think_time_ms", 0);
+        feedPageSize = config.getInt("feed_page_size", FeedProvider.DEFAULT_PAGE_SIZE);
+        feedMaxInFlight = config.getInt("feed_max_in_flight", FeedProvider.DEFAULT_MAX_IN_FLIGHT);
+        mix = new OperationMix(config);
+
+        int users = config.getInt("users", 1000);
+        population = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            population.add(new VirtualUser(runId + "_" + i));
+        }
+        popularity = new ZipfSampler(users, Double.parseDouble(config.getString("graph_zipf_exponent", "1.0")));
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new OperationStats(operation));
+        }
+    }
+
+    public static void main(String[] args) {
+        Config config = Config.load(PROPERTIES_FILENAMES, args);
+        try {
+            LoadGenerator generator = new LoadGenerator(config);
+            generator.run();
+            generator.close();
+        } catch (Exception e) {
+            System.out.println("Load generation failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    void run() throws Exception {
+        System.out.println("Run " + runId + ": " + population.size() + " users, " + threads + " threads, "
+                + durationSeconds + "s, mix: " + mix);
+        populate();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        long[] lastReport = {System.nanoTime()};
+        reporter.scheduleAtFixedRate(() -> {
+            long now = System.nanoTime();
+            printReport("interval", now - lastReport[0], false);
+            lastReport[0] = now;
+        }, reportIntervalSeconds, reportIntervalSeconds, TimeUnit.SECONDS);
+
+        long start = System.nanoTime();
+        List<Future<?>> running = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            running.add(workers.submit(new Worker(t, this, usersOf(t), deadline)));
+        }
+        for (Future<?> worker : running) {
+            worker.get();
+        }
+        reporter.shutdownNow();
+        reporter.awaitTermination(1, TimeUnit.SECONDS);
+        workers.shutdown();
+
+        printReport("interval", System.nanoTime() - lastReport[0], false);
+        printReport("summary", System.nanoTime() - start, true);
+    }
+
+    private List<VirtualUser> usersOf(int thread) {
+        List<VirtualUser> users = new ArrayList<>();
+        for (int i = thread; i < population.size(); i += threads) {
+            users.add(population.get(i));
+        }
+        return users;
+    }
+
+    /**
+     * Registers the whole population and builds the follower graph, in parallel, outside of measurements.
+     */
+    private void populate() throws Exception {
+        long start = System.nanoTime();
+        ExecutorService setup = Executors.newFixedThreadPool(threads);
+        List<Worker> setupWorkers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            setupWorkers.add(new Worker(t, this, usersOf(t), 0));
+        }
+
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Worker worker = setupWorkers.get(t);
+            List<VirtualUser> users = usersOf(t);
+            tasks.add(setup.submit(() -> {
+                for (VirtualUser user : users) {
+                    user.registered = worker.register(user);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> task : tasks) task.get();
+        tasks.clear();
+
+        // the whole population has to exist before anyone can follow it
+        for (int t = 0; t < threads; t++) {
+            Worker worker = setupWorkers.get(t);
+            List<VirtualUser> users = usersOf(t);
+            tasks.add(setup.submit(() -> {
+                for (VirtualUser user : users) {
+                    for (int f = 0; f < followsPerUser; f++) {
+                        worker.follow(user, worker.randomTarget(user));
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> task : tasks) task.get();
+        setup.shutdown();
+
+        System.out.printf("Registered %d users and created up to %d follows in %.1fs%n", population.size(),
+                (long) population.size() * followsPerUser, (System.nanoTime() - start) / 1e9);
+    }
+
+    private synchronized void printReport(String title, long elapsedNanos, boolean summary) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%n%s (%.1fs)%n", title, seconds);
+        System.out.printf("%-11s %9s %9s %9s %9s %9s %9s %9s %9s %9s%n", "operation", "count", "ops/s",
+                "p50[ms]", "p99[ms]", "p999[ms]", "max[ms]", "rejected", "errors", "timeouts");
+        for (OperationStats operationStats : stats.values()) {
+            Histogram histogram = summary ? operationStats.getTotal() : operationStats.nextInterval();
+            long count = histogram.getTotalCount();
+            System.out.printf("%-11s %9d %9.1f %9.2f %9.2f %9.2f %9.2f %9d %9d %9d%n",
+                    operationStats.operation.name().toLowerCase(), count, count / seconds,
+                    histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(99) / 1000.0,
+                    histogram.getValueAtPercentile(99.9) / 1000.0, histogram.getMaxValue() / 1000.0,
+                    operationStats.rejected.sum(), operationStats.errors.sum(), operationStats.timeouts.sum());
+        }
+        if (summary) {
+            long total = 0;
+            long errors = 0;
+            long timeouts = 0;
+            for (OperationStats operationStats : stats.values()) {
+                total += operationStats.getTotal().getTotalCount();
+                errors += operationStats.errors.sum();
+                timeouts += operationStats.timeouts.sum();
+            }
+            System.out.printf("total: %d operations, %.1f ops/s, error rate %.3f%%, timeout rate %.3f%%%n",
+                    total, total / seconds, total == 0 ? 0 : 100.0 * errors / total, total == 0 ? 0 : 100.0 * timeouts / total);
+        }
+    }
+
+    void close() {
+        if (postQueue != null) postQueue.close();
+        if (fanoutService != null) fanoutService.close();
+        if (graph != null) graph.close();
+        session.close();
+    }
+}
@@ -0,0 +1,25 @@
+package loadgen;
+
+/**
+ * User flows available in the CLI application, replayed by virtual users.
+ */
+public enum Operation {
+    REGISTER(2),
+    LOGIN(5),
+    WRITE_POST(15),
+    READ_FEED(50),
+    FOLLOW(5),
+    UNFOLLOW(2),
+    SEARCH(15),
+    EDIT_POST(6);
+
+    final int defaultWeight;
+
+    Operation(int defaultWeight) {
+        this.defaultWeight = defaultWeight;
+    }
+
+    String weightProperty() {
+        return "mix." + name().toLowerCase();
+    }
+}
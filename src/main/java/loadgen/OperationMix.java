@@ -0,0 +1,48 @@
+package loadgen;
+
+import config.Config;
+
+import java.util.Random;
+
+/**
+ * Picks operations at random with probabilities proportional to weights from {@code mix.<operation>} properties.
+ */
+class OperationMix {
+    private final Operation[] operations = Operation.values();
+    private final double[] cumulative = new double[operations.length];
+
+    OperationMix(Config config) {
+        double sum = 0;
+        for (int i = 0; i < operations.length; i++) {
+            int weight = config.getInt(operations[i].weightProperty(), operations[i].defaultWeight);
+            if (weight < 0) throw new IllegalArgumentException(operations[i].weightProperty() + " must not be negative");
+            sum += weight;
+            cumulative[i] = sum;
+        }
+        if (sum == 0) throw new IllegalArgumentException("At least one operation must have positive weight");
+        for (int i = 0; i < cumulative.length; i++) {
+            cumulative[i] /= sum;
+        }
+    }
+
+    Operation next(Random random) {
+        double point = random.nextDouble();
+        for (int i = 0; i < cumulative.length; i++) {
+            if (point < cumulative[i]) return operations[i];
+        }
+        return operations[operations.length - 1];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        double previous = 0;
+        for (int i = 0; i < operations.length; i++) {
+            if (builder.length() > 0) builder.append(", ");
+            builder.append(operations[i].name().toLowerCase()).append('=')
+                    .append(String.format("%.1f%%", (cumulative[i] - previous) * 100));
+            previous = cumulative[i];
+        }
+        return builder.toString();
+    }
+}
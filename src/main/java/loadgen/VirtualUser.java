@@ -0,0 +1,19 @@
+package loadgen;
+
+import model.User;
+
+/**
+ * Simulated application user. Each virtual user is driven by a single worker thread.
+ */
+class VirtualUser {
+    final User profile;
+    boolean registered;
+
+    VirtualUser(String nick) {
+        profile = new User(nick, "password", "Virtual", "User", "01-01-2000", "Generated by load generator");
+    }
+
+    String getNick() {
+        return profile.getNickname();
+    }
+}
@@ -0,0 +1,172 @@
+package loadgen;
+
+import backend.BackendException;
+import backend.BackendSession;
+import com.datastax.driver.core.exceptions.OperationTimedOutException;
+import com.datastax.driver.core.exceptions.ReadTimeoutException;
+import com.datastax.driver.core.exceptions.WriteTimeoutException;
+import model.Post;
+import model.User;
+import utils.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Drives its share of virtual users in a closed loop: every iteration takes the next user
+ * and runs one operation drawn from the mix, the same way Main does for a real user.
+ * Validators keep per-request state, so every worker has its own instances.
+ */
+class Worker implements Runnable {
+    private final BackendSession session;
+    private final List<VirtualUser> users;
+    private final List<VirtualUser> population;
+    private final ZipfSampler popularity;
+    private final OperationMix mix;
+    private final Map<Operation, OperationStats> stats;
+    private final long deadlineNanos;
+    private final long thinkTimeMillis;
+    private final int feedPageSize;
+    private final String registeredPrefix;
+    private final Random random;
+
+    private final LoginValidator loginValidator;
+    private final UserDataValidator userDataValidator;
+    private final PostManager postManager;
+    private final FeedProvider feedProvider;
+    private final FollowerManager followerManager;
+
+    private int registeredCount;
+
+    Worker(int id, LoadGenerator generator, List<VirtualUser> users, long deadlineNanos) {
+        this.session = generator.session;
+        this.users = new ArrayList<>(users);
+        this.population = generator.population;
+        this.popularity = generator.popularity;
+        this.mix = generator.mix;
+        this.stats = generator.stats;
+        this.deadlineNanos = deadlineNanos;
+        this.thinkTimeMillis = generator.thinkTimeMillis;
+        this.feedPageSize = generator.feedPageSize;
+        this.registeredPrefix = generator.runId + "_w" + id + "_";
+        this.random = new Random(generator.seed + id);
+
+        loginValidator = new LoginValidator(session);
+        userDataValidator = new UserDataValidator(session);
+        postManager = new PostManager(session, generator.fanoutService, generator.feedCache, generator.postQueue);
+        feedProvider = new FeedProvider(session, generator.feedMaxInFlight, generator.fanoutService, generator.feedCache,
+                generator.graph);
+        followerManager = new FollowerManager(session, generator.fanoutService, generator.feedCache, generator.graph);
+    }
+
+    @Override
+    public void run() {
+        int next = 0;
+        while (System.nanoTime() < deadlineNanos && !Thread.currentThread().isInterrupted()) {
+            VirtualUser user = users.get(next);
+            next = (next + 1) % users.size();
+
+            Operation operation = user.registered ? mix.next(random) : Operation.REGISTER;
+            if (operation == Operation.REGISTER && user.registered) {
+                user = new VirtualUser(registeredPrefix + registeredCount++);
+                users.add(user);
+            }
+            execute(user, operation);
+
+            if (thinkTimeMillis > 0) {
+                try {
+                    Thread.sleep(thinkTimeMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void execute(VirtualUser user, Operation operation) {
+        OperationStats operationStats = stats.get(operation);
+        long start = System.nanoTime();
+        try {
+            boolean succeeded = perform(user, operation);
+            operationStats.record(System.nanoTime() - start);
+            if (!succeeded) operationStats.rejected.increment();
+        } catch (Exception e) {
+            operationStats.record(System.nanoTime() - start);
+            if (isTimeout(e)) operationStats.timeouts.increment();
+            else operationStats.errors.increment();
+        }
+    }
+
+    /**
+     * Returns {@code false} when the application rejected the operation (e.g. failed validation).
+     */
+    private boolean perform(VirtualUser user, Operation operation) throws BackendException {
+        User profile = user.profile;
+        switch (operation) {
+            case REGISTER:
+                boolean created = register(user);
+                user.registered = created;
+                return created;
+            case LOGIN:
+                return loginValidator.validateLogin(profile.getNickname(), profile.getPassword())
+                        && session.selectUser(profile.getNickname()) != null;
+            case WRITE_POST:
+                return postManager.createPost(profile.getNickname(), "Post written at " + System.currentTimeMillis());
+            case READ_FEED:
+                feedProvider.getFeedPage(profile.getNickname(), null, feedPageSize);
+                return true;
+            case FOLLOW:
+                User toFollow = session.selectUser(randomTarget(user).getNick());
+                if (toFollow == null || followerManager.isFollowed(profile, toFollow)) return false;
+                followerManager.followUser(profile, toFollow);
+                return true;
+            case UNFOLLOW:
+                List<String> following = session.selectFollowingUsersNicknames(profile.getNickname());
+                if (following.isEmpty()) return false;
+                User toUnfollow = session.selectUser(following.get(random.nextInt(following.size())));
+                if (toUnfollow == null) return false;
+                followerManager.unfollowUser(profile, toUnfollow);
+                return true;
+            case SEARCH:
+                User found = session.selectUser(randomTarget(user).getNick());
+                if (found == null) return false;
+                followerManager.isFollowed(profile, found);
+                return true;
+            case EDIT_POST:
+                ArrayList<Post> posts = session.selectPosts(profile.getNickname());
+                if (posts.isEmpty()) return false;
+                Post post = posts.get(random.nextInt(posts.size()));
+                post.setText("Post edited at " + System.currentTimeMillis());
+                return postManager.updatePost(post);
+            default:
+                throw new IllegalStateException("Unknown operation " + operation);
+        }
+    }
+
+    boolean register(VirtualUser user) throws BackendException {
+        User profile = user.profile;
+        return userDataValidator.validate(profile.getNickname(), profile.getPassword(), profile.getPassword(),
+                profile.getFirstName(), profile.getLastName(), profile.getBirthDate(), profile.getBio(), true);
+    }
+
+    void follow(VirtualUser user, VirtualUser followed) throws BackendException {
+        followerManager.followUser(user.profile, followed.profile);
+    }
+
+    VirtualUser randomTarget(VirtualUser user) {
+        VirtualUser target = population.get(popularity.next(random));
+        return target == user ? population.get(random.nextInt(population.size())) : target;
+    }
+
+    private static boolean isTimeout(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OperationTimedOutException || cause instanceof ReadTimeoutException
+                    || cause instanceof WriteTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,37 @@
+package model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Set;
+
+/**
+ * Change of a row (or of a whole partition) of a base table, read from its CDC log. Changes of posts of
+ * both layouts, the posts and postsbybucket tables, are {@link Table#POSTS} changes.
+ */
+@AllArgsConstructor
+public @Data
+class ChangeEvent {
+    public enum Table {
+        USERS,
+        POSTS,
+        FOLLOWERS,
+        FOLLOWING
+    }
+
+    Table table;
+    /** nick of the user, or author of the post; the first partition key column */
+    String nick;
+    /** followerNick or followingNick of a follow row, {@code null} for other tables and partition deletions */
+    String otherNick;
+    /** creationDate of a post in epoch millis, 0 for other tables and partition deletions */
+    long creationDate;
+    /** whether the row or partition was deleted */
+    boolean deletion;
+    /** whether the row was written by an INSERT, which creates it; an UPDATE only sets its columns */
+    boolean inserted;
+    /** names of regular columns written, lowercase */
+    Set<String> columns;
+    /** write timestamp in microseconds */
+    long timestamp;
+}
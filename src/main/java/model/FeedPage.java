@@ -0,0 +1,14 @@
+package model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.ArrayList;
+
+@AllArgsConstructor
+public @Data
+class FeedPage {
+    ArrayList<Post> posts;
+    /** Opaque position of the last returned post, {@code null} when there are no older posts. */
+    String cursor;
+}
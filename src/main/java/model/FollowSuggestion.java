@@ -0,0 +1,15 @@
+package model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * User recommended to follow, see {@link graph.FollowRecommender}.
+ */
+@AllArgsConstructor
+public @Data
+class FollowSuggestion {
+    String nick;
+    /** number of followees of the recommended-to user who follow {@link #nick} */
+    int score;
+}
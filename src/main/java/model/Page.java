@@ -0,0 +1,14 @@
+package model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.ArrayList;
+
+@AllArgsConstructor
+public @Data
+class Page<T> {
+    ArrayList<T> items;
+    /** Opaque position after the last returned item, {@code null} when there are no more items. */
+    String cursor;
+}
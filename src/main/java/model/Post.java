@@ -3,12 +3,11 @@ package model;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
-import java.util.Date;
-
 @AllArgsConstructor
 public @Data
 class Post {
     String authorNick;
-    Date creationDate;
+    /** epoch milliseconds */
+    long creationDate;
     String text;
 }
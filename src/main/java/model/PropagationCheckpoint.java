@@ -0,0 +1,17 @@
+package model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Progress of copying a changed profile into denormalized followers/following rows.
+ */
+@AllArgsConstructor
+public @Data
+class PropagationCheckpoint {
+    String nick;
+    String phase;
+    /** Last nick whose row was rewritten in the current phase, {@code null} at the beginning of a phase. */
+    String position;
+    long rowsDone;
+}
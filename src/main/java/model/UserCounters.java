@@ -0,0 +1,16 @@
+package model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Maintained numbers of followers, followed users and posts of a user.
+ */
+@AllArgsConstructor
+public @Data
+class UserCounters {
+    String nick;
+    long followers;
+    long following;
+    long posts;
+}
@@ -0,0 +1,16 @@
+package model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@AllArgsConstructor
+public @Data
+class UserMatch {
+    String nick;
+    String firstName;
+    String lastName;
+    /** normalized nick or name word which matched the query */
+    String term;
+    /** number of typos between the query and the matched term, 0 for a prefix match */
+    int distance;
+}
@@ -0,0 +1,15 @@
+package model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Part of user profile shown in follower and following lists.
+ */
+@AllArgsConstructor
+public @Data
+class UserSummary {
+    String nickname;
+    String firstName;
+    String lastName;
+}
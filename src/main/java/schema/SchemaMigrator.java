@@ -0,0 +1,255 @@
+package schema;
+
+import backend.BackendException;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Scanner;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies versioned schema migrations, CQL files in the {@code schema} resource directory listed in
+ * {@link #MIGRATIONS}, to the application keyspace. Applied versions are recorded in the {@code SchemaMigrations}
+ * table, so every migration runs once per keyspace. Migrations are still written to be idempotent
+ * ({@code IF NOT EXISTS}, {@code ALTER ... WITH}), so one interrupted halfway can simply be run again.
+ * <p>
+ * Concurrent schema changes from different clients can leave the cluster with conflicting table definitions,
+ * so a lightweight transaction on the {@code SchemaLock} table lets only one process migrate at a time.
+ * The lock and version tables themselves are created by migration 000, which only a migrator created with
+ * {@code createBookkeeping}, the command line tool, applies; it then waits for schema agreement before taking
+ * the lock. Other processes fail to migrate a keyspace without them instead of creating them concurrently.
+ * <p>
+ * Run from the command line to migrate the keyspace from config.properties, or with argument {@code status}
+ * to list applied and pending migrations; {@code key=value} arguments override config.properties. With {@code schema_migrate_on_startup} the application migrates on start.
+ */
+public class SchemaMigrator {
+    private static final Logger logger = LoggerFactory.getLogger(SchemaMigrator.class);
+
+    /** File names start with the version, which must grow with every new migration. */
+    static final String[] MIGRATIONS = {
+            "000-schema-migrations.cql",
+            "001-initial-tables.cql",
+            "002-table-options.cql",
+    };
+    private static final int LOCK_TTL_SECONDS = 300;
+    private static final long LOCK_WAIT_MILLIS = TimeUnit.SECONDS.toMillis(LOCK_TTL_SECONDS + 60);
+    private static final long SCHEMA_AGREEMENT_WAIT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    private final Session session;
+    private final boolean createBookkeeping;
+    private final String owner = UUID.randomUUID().toString();
+
+    /**
+     * Migrator of a keyspace which already has the bookkeeping tables, as application processes use it.
+     *
+     * @param session session connected to the keyspace being migrated
+     */
+    public SchemaMigrator(Session session) {
+        this(session, false);
+    }
+
+    /**
+     * @param session           session connected to the keyspace being migrated
+     * @param createBookkeeping whether migration 000 is applied when the bookkeeping tables are missing; only one
+     *                          process setting up the keyspace, like the command line tool, may do it
+     */
+    public SchemaMigrator(Session session, boolean createBookkeeping) {
+        this.session = session;
+        this.createBookkeeping = createBookkeeping;
+    }
+
+    public static void main(String[] args) {
+        boolean status = false;
+        List<String> overrides = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("status")) {
+                status = true;
+            } else {
+                overrides.add(arg);
+            }
+        }
+
+        Config config = Config.load(overrides.toArray(new String[0]));
+        try (Cluster cluster = Cluster.builder().addContactPoints(config.getString("contact_point").split("\\s*,\\s*"))
+                .withPort(config.getInt("port", 9042)).build();
+             Session session = cluster.connect(config.getString("keyspace"))) {
+            SchemaMigrator migrator = new SchemaMigrator(session, true);
+            if (status) {
+                TreeSet<Integer> applied = migrator.appliedVersions();
+                for (String migration : MIGRATIONS) {
+                    System.out.println((applied.contains(versionOf(migration)) ? "applied  " : "pending  ") + migration);
+                }
+            } else {
+                System.out.println("Applied " + migrator.migrate() + " migrations");
+            }
+        } catch (Exception e) {
+            System.out.println("Migration failed: " + e.getMessage());
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Applies all pending migrations in version order, waiting while another process is migrating.
+     *
+     * @return number of applied migrations
+     */
+    public int migrate() throws BackendException {
+        int created = 0;
+        if (!hasBookkeepingTables()) {
+            if (!createBookkeeping) {
+                throw new BackendException("Could not migrate schema. The keyspace has no SchemaMigrations table, "
+                        + "run schema.SchemaMigrator first.");
+            }
+            apply(MIGRATIONS[0]);
+            awaitSchemaAgreement();
+            created = 1;
+        }
+        long deadline = System.currentTimeMillis() + LOCK_WAIT_MILLIS;
+        while (true) {
+            if (pending(appliedVersions()).isEmpty()) return created;
+            if (lock()) break;
+            if (System.currentTimeMillis() > deadline) {
+                throw new BackendException("Could not migrate schema. Another migration holds the lock.");
+            }
+            logger.info("Waiting for schema migration run by another process");
+            sleep(TimeUnit.SECONDS.toMillis(1));
+        }
+        try {
+            // read again under the lock, the previous holder may have applied some
+            List<String> pending = pending(appliedVersions());
+            for (String migration : pending) {
+                apply(migration);
+            }
+            return created + pending.size();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Versions recorded in the keyspace, none when the bookkeeping tables are missing.
+     */
+    TreeSet<Integer> appliedVersions() throws BackendException {
+        try {
+            TreeSet<Integer> versions = new TreeSet<>();
+            if (!hasBookkeepingTables()) return versions;
+            for (Row row : session.execute("SELECT version FROM SchemaMigrations")) {
+                versions.add(row.getInt(0));
+            }
+            return versions;
+        } catch (RuntimeException e) {
+            throw new BackendException("Could not read schema version.", e);
+        }
+    }
+
+    private boolean hasBookkeepingTables() {
+        KeyspaceMetadata keyspace = session.getCluster().getMetadata().getKeyspace(session.getLoggedKeyspace());
+        return keyspace != null && keyspace.getTable("schemamigrations") != null && keyspace.getTable("schemalock") != null;
+    }
+
+    /**
+     * Waits until all nodes see the bookkeeping tables, so that the lock is not taken on a node which does not
+     * know its table yet.
+     */
+    private void awaitSchemaAgreement() throws BackendException {
+        long deadline = System.currentTimeMillis() + SCHEMA_AGREEMENT_WAIT_MILLIS;
+        while (!session.getCluster().getMetadata().checkSchemaAgreement()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new BackendException("Could not migrate schema. Nodes did not agree on the schema in "
+                        + TimeUnit.MILLISECONDS.toSeconds(SCHEMA_AGREEMENT_WAIT_MILLIS) + " seconds.");
+            }
+            logger.info("Waiting for schema agreement");
+            sleep(TimeUnit.SECONDS.toMillis(1));
+        }
+    }
+
+    private static List<String> pending(TreeSet<Integer> applied) {
+        List<String> pending = new ArrayList<>();
+        for (String migration : MIGRATIONS) {
+            if (!applied.contains(versionOf(migration))) pending.add(migration);
+        }
+        return pending;
+    }
+
+    private void apply(String migration) throws BackendException {
+        logger.info("Applying schema migration {}", migration);
+        try {
+            for (String statement : statements(migration)) {
+                ResultSet rs = session.execute(statement);
+                if (!rs.getExecutionInfo().isSchemaInAgreement()) {
+                    logger.warn("Schema not in agreement after a statement of {}, continuing", migration);
+                }
+            }
+            session.execute(new SimpleStatement("INSERT INTO SchemaMigrations (version, name, appliedAt) VALUES (?, ?, ?)",
+                    versionOf(migration), migration, new Date()));
+        } catch (IOException | RuntimeException e) {
+            throw new BackendException("Could not apply schema migration " + migration + ". Reason: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Splits a migration into statements at semicolons, skipping {@code --} comment lines.
+     */
+    static List<String> statements(String migration) throws IOException {
+        StringBuilder cql = new StringBuilder();
+        try (InputStream stream = SchemaMigrator.class.getClassLoader().getResourceAsStream("schema/" + migration)) {
+            if (stream == null) throw new IOException("Missing migration file schema/" + migration);
+            Scanner lines = new Scanner(stream, StandardCharsets.UTF_8.name());
+            while (lines.hasNextLine()) {
+                String line = lines.nextLine();
+                if (!line.trim().startsWith("--")) cql.append(line).append('\n');
+            }
+        }
+        List<String> statements = new ArrayList<>();
+        for (String statement : cql.toString().split(";")) {
+            if (!statement.trim().isEmpty()) statements.add(statement.trim());
+        }
+        return statements;
+    }
+
+    static int versionOf(String migration) {
+        return Integer.parseInt(migration.substring(0, migration.indexOf('-')));
+    }
+
+    /**
+     * The lock expires on its own when its holder dies in the middle of a migration.
+     */
+    private boolean lock() {
+        Row result = session.execute(new SimpleStatement("INSERT INTO SchemaLock (id, owner) VALUES (0, ?) IF NOT EXISTS USING TTL "
+                + LOCK_TTL_SECONDS, owner)).one();
+        return result.getBool("[applied]");
+    }
+
+    private void unlock() {
+        try {
+            session.execute(new SimpleStatement("DELETE FROM SchemaLock WHERE id = 0 IF owner = ?", owner));
+        } catch (RuntimeException e) {
+            logger.warn("Could not release schema lock, it expires in {} seconds", LOCK_TTL_SECONDS, e);
+        }
+    }
+
+    private static void sleep(long millis) throws BackendException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BackendException("Interrupted while waiting for schema migration.", e);
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package server;
+
+import backend.BackendException;
+import backend.BackendSession;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import graph.FollowRecommender;
+import model.FeedPage;
+import model.Page;
+import model.Post;
+import model.User;
+import model.UserSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.FeedProvider;
+import utils.FollowerManager;
+import utils.LoginValidator;
+import utils.PostManager;
+import utils.ProfilePropagator;
+import utils.UserDataValidator;
+import utils.UserSearch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Routes {@code /api/...} requests to the managers. Bodies are JSON objects, responses are JSON values.
+ * <pre>
+ * POST   /api/register              {nick, password, repeatedPassword, firstName, lastName, birthDate, bio} -> {token}
+ * POST   /api/login                 {nick, password} -> {token}
+ * POST   /api/logout
+ * GET    /api/posts                 own posts
+ * POST   /api/posts                 {text}
+ * PUT    /api/posts                 {creationDate, text} edits own post created at the given epoch millis
+ * GET    /api/feed?cursor=&amp;size=    {posts, cursor}
+ * GET    /api/search?q=             [{nick, firstName, lastName, term, distance}] best matching users
+ * GET    /api/suggestions           [{nick, score}] users to follow, empty when recommendations are disabled
+ * GET    /api/users/{nick}          {user, counters, followed}
+ * PUT    /api/users/{nick}/follow
+ * DELETE /api/users/{nick}/follow
+ * GET    /api/followers?cursor=&amp;size=, /api/following?cursor=&amp;size=   {items, cursor}
+ * PUT    /api/profile               {password, repeatedPassword, firstName, lastName, birthDate, bio}
+ * </pre>
+ * All requests except register and login need an {@code Authorization: Bearer <token>} header.
+ */
+class ApiHandler implements HttpHandler {
+    private static final Logger logger = LoggerFactory.getLogger(ApiHandler.class);
+    private static final String PREFIX = "/api/";
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final int MAX_LIST_PAGE_SIZE = 1000;
+
+    /**
+     * Request rejected before reaching the database, turned into a response with the given status.
+     */
+    private static class ApiException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private final ApiServer server;
+    private final BackendSession session;
+    private final ProfilePropagator profilePropagator;
+    private final LoginValidator loginValidator;
+    private final PostManager postManager;
+    private final FeedProvider feedProvider;
+    private final FollowerManager followerManager;
+    private final UserSearch userSearch;
+    private final FollowRecommender recommender;
+    private final int feedPageSize;
+    private final int listPageSize;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    ApiHandler(ApiServer server, BackendSession session, ProfilePropagator profilePropagator,
+               LoginValidator loginValidator, PostManager postManager, FeedProvider feedProvider,
+               FollowerManager followerManager, UserSearch userSearch, FollowRecommender recommender,
+               int feedPageSize, int listPageSize) {
+        this.server = server;
+        this.session = session;
+        this.profilePropagator = profilePropagator;
+        this.loginValidator = loginValidator;
+        this.postManager = postManager;
+        this.feedProvider = feedProvider;
+        this.followerManager = followerManager;
+        this.userSearch = userSearch;
+        this.recommender = recommender;
+        this.feedPageSize = feedPageSize;
+        this.listPageSize = listPageSize;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            Object response = route(exchange);
+            send(exchange, 200, response);
+        } catch (ApiException e) {
+            send(exchange, e.status, error(e.getMessage()));
+        } catch (JsonProcessingException e) {
+            send(exchange, 400, error("Malformed JSON: " + e.getOriginalMessage()));
+        } catch (BackendException e) {
+            logger.warn("{} {} failed: {}", exchange.getRequestMethod(), exchange.getRequestURI(), e.getMessage());
+            send(exchange, 503, error(e.getMessage()));
+        } catch (RuntimeException e) {
+            logger.error(exchange.getRequestMethod() + " " + exchange.getRequestURI() + " failed", e);
+            send(exchange, 500, error("Internal error"));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Object route(HttpExchange exchange) throws ApiException, BackendException, IOException {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().substring(PREFIX.length()).split("/");
+        String resource = path[0];
+
+        if (resource.equals("register") && path.length == 1) {
+            requireMethod(method, "POST");
+            return register(readBody(exchange));
+        }
+        if (resource.equals("login") && path.length == 1) {
+            requireMethod(method, "POST");
+            return login(readBody(exchange));
+        }
+
+        String token = bearerToken(exchange);
+        String nick = server.authenticate(token);
+        if (nick == null) {
+            throw new ApiException(401, "Missing or expired token");
+        }
+
+        switch (resource) {
+            case "logout":
+                requireMethod(method, "POST");
+                server.logout(token);
+                return ok();
+            case "posts":
+                if (path.length != 1) break;
+                switch (method) {
+                    case "GET":
+                        return session.selectPosts(nick);
+                    case "POST":
+                        return createPost(nick, readBody(exchange));
+                    case "PUT":
+                        return updatePost(nick, readBody(exchange));
+                    default:
+                        throw methodNotAllowed(method);
+                }
+            case "feed":
+                if (path.length != 1) break;
+                requireMethod(method, "GET");
+                return feed(nick, queryParameters(exchange));
+            case "followers":
+            case "following":
+                if (path.length != 1) break;
+                requireMethod(method, "GET");
+                return userList(nick, resource.equals("followers"), queryParameters(exchange));
+            case "search":
+                if (path.length != 1) break;
+                requireMethod(method, "GET");
+                String query = queryParameters(exchange).get("q");
+                if (query == null) throw new ApiException(400, "Missing q");
+                return userSearch.search(query);
+            case "suggestions":
+                if (path.length != 1) break;
+                requireMethod(method, "GET");
+                return recommender != null ? recommender.recommend(nick) : new ArrayList<>();
+            case "profile":
+                if (path.length != 1) break;
+                requireMethod(method, "PUT");
+                return updateProfile(nick, readBody(exchange));
+            case "users":
+                if (path.length == 2) {
+                    requireMethod(method, "GET");
+                    return userInfo(nick, decode(path[1]));
+                }
+                if (path.length == 3 && path[2].equals("follow")) {
+                    if (method.equals("PUT")) return follow(nick, decode(path[1]), true);
+                    if (method.equals("DELETE")) return follow(nick, decode(path[1]), false);
+                    throw methodNotAllowed(method);
+                }
+                break;
+        }
+        throw new ApiException(404, "Unknown resource " + exchange.getRequestURI().getPath());
+    }
+
+    private Object register(JsonNode body) throws ApiException, BackendException {
+        String nick = required(body, "nick");
+        UserDataValidator validator = new UserDataValidator(session, profilePropagator);
+        if (!validator.validate(nick, required(body, "password"), required(body, "repeatedPassword"),
+                required(body, "firstName"), required(body, "lastName"), required(body, "birthDate"),
+                optional(body, "bio"), true)) {
+            throw new ApiException(400, String.join(" ", validator.getErrorMessages()));
+        }
+        return tokenResponse(nick);
+    }
+
+    private Object login(JsonNode body) throws ApiException, BackendException {
+        String nick = required(body, "nick");
+        if (!loginValidator.validateLogin(nick, required(body, "password"))) {
+            throw new ApiException(401, "Wrong nick or password");
+        }
+        return tokenResponse(nick);
+    }
+
+    private Object createPost(String nick, JsonNode body) throws ApiException, BackendException {
+        if (!postManager.createPost(nick, required(body, "text"))) {
+            throw new ApiException(400, "Post must have between 1 and 399 characters");
+        }
+        return ok();
+    }
+
+    private Object updatePost(String nick, JsonNode body) throws ApiException, BackendException {
+        JsonNode creationDate = body.get("creationDate");
+        if (creationDate == null || !creationDate.canConvertToLong()) {
+            throw new ApiException(400, "Missing creationDate");
+        }
+        long date = creationDate.asLong();
+        Post post = null;
+        for (Post candidate : session.selectPosts(nick)) {
+            if (candidate.getCreationDate() == date) {
+                post = candidate;
+                break;
+            }
+        }
+        if (post == null) {
+            throw new ApiException(404, "No post created at " + date);
+        }
+        post.setText(required(body, "text"));
+        if (!postManager.updatePost(post)) {
+            throw new ApiException(400, "Post must have between 1 and 399 characters");
+        }
+        return post;
+    }
+
+    private FeedPage feed(String nick, Map<String, String> parameters) throws ApiException, BackendException {
+        int size = pageSize(parameters, feedPageSize, FeedProvider.DEFAULT_FEED_SIZE);
+        try {
+            return feedProvider.getFeedPage(nick, parameters.get("cursor"), size);
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, "Invalid cursor");
+        }
+    }
+
+    private Page<UserSummary> userList(String nick, boolean followers, Map<String, String> parameters)
+            throws ApiException, BackendException {
+        int size = pageSize(parameters, listPageSize, MAX_LIST_PAGE_SIZE);
+        try {
+            return followers
+                    ? session.selectFollowersPage(nick, parameters.get("cursor"), size)
+                    : session.selectFollowingPage(nick, parameters.get("cursor"), size);
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, "Invalid cursor");
+        }
+    }
+
+    private Object userInfo(String nick, String searchedNick) throws ApiException, BackendException {
+        User searched = findUser(searchedNick);
+        // the password stays on the server
+        User profile = new User(searched.getNickname(), null, searched.getFirstName(), searched.getLastName(),
+                searched.getBirthDate(), searched.getBio());
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("user", profile);
+        response.put("counters", session.selectCounters(searchedNick));
+        response.put("followed", followerManager.isFollowed(findUser(nick), searched));
+        return response;
+    }
+
+    private Object follow(String nick, String followedNick, boolean follow) throws ApiException, BackendException {
+        if (nick.equals(followedNick)) {
+            throw new ApiException(400, "Cannot follow yourself");
+        }
+        User user = findUser(nick);
+        User followed = findUser(followedNick);
+        if (follow) {
+            followerManager.followUser(user, followed);
+        } else {
+            followerManager.unfollowUser(user, followed);
+        }
+        if (recommender != null) recommender.invalidate(nick);
+        return ok();
+    }
+
+    private Object updateProfile(String nick, JsonNode body) throws ApiException, BackendException {
+        UserDataValidator validator = new UserDataValidator(session, profilePropagator);
+        if (!validator.validate(nick, required(body, "password"), required(body, "repeatedPassword"),
+                required(body, "firstName"), required(body, "lastName"), required(body, "birthDate"),
+                optional(body, "bio"), false)) {
+            throw new ApiException(400, String.join(" ", validator.getErrorMessages()));
+        }
+        return ok();
+    }
+
+    private static int pageSize(Map<String, String> parameters, int defaultSize, int maxSize) throws ApiException {
+        if (!parameters.containsKey("size")) return defaultSize;
+        int size;
+        try {
+            size = Integer.parseInt(parameters.get("size"));
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "Invalid size");
+        }
+        if (size < 1 || size > maxSize) {
+            throw new ApiException(400, "Size must be between 1 and " + maxSize);
+        }
+        return size;
+    }
+
+    private User findUser(String nick) throws ApiException, BackendException {
+        User user = session.selectUser(nick);
+        if (user == null) {
+            throw new ApiException(404, "No user " + nick);
+        }
+        return user;
+    }
+
+    private Map<String, String> tokenResponse(String nick) {
+        Map<String, String> response = new HashMap<>();
+        response.put("token", server.login(nick));
+        return response;
+    }
+
+    private JsonNode readBody(HttpExchange exchange) throws ApiException, IOException {
+        byte[] body;
+        try (InputStream stream = exchange.getRequestBody()) {
+            body = stream.readNBytes(MAX_BODY_BYTES + 1);
+        }
+        if (body.length > MAX_BODY_BYTES) {
+            throw new ApiException(413, "Request body exceeds " + MAX_BODY_BYTES + " bytes");
+        }
+        JsonNode node = body.length == 0 ? null : mapper.readTree(body);
+        if (node == null || !node.isObject()) {
+            throw new ApiException(400, "Request body must be a JSON object");
+        }
+        return node;
+    }
+
+    private static String required(JsonNode body, String field) throws ApiException {
+        JsonNode value = body.get(field);
+        if (value == null || !value.isTextual()) {
+            throw new ApiException(400, "Missing " + field);
+        }
+        return value.asText();
+    }
+
+    private static String optional(JsonNode body, String field) {
+        JsonNode value = body.get(field);
+        return value == null || value.isNull() ? "" : value.asText();
+    }
+
+    private static String bearerToken(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) return null;
+        return header.substring("Bearer ".length()).trim();
+    }
+
+    private static Map<String, String> queryParameters(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return parameters;
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                parameters.put(decode(pair.substring(0, separator)), decode(pair.substring(separator + 1)));
+            }
+        }
+        return parameters;
+    }
+
+    private static String decode(String value) {
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+
+    private static void requireMethod(String method, String expected) throws ApiException {
+        if (!method.equals(expected)) throw methodNotAllowed(method);
+    }
+
+    private static ApiException methodNotAllowed(String method) {
+        return new ApiException(405, "Method " + method + " not allowed");
+    }
+
+    private static Map<String, String> ok() {
+        Map<String, String> response = new HashMap<>();
+        response.put("status", "ok");
+        return response;
+    }
+
+    private static Map<String, String> error(String message) {
+        Map<String, String> response = new HashMap<>();
+        response.put("error", message);
+        return response;
+    }
+
+    private void send(HttpExchange exchange, int status, Object response) throws IOException {
+        byte[] body = mapper.writeValueAsBytes(response);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream stream = exchange.getResponseBody()) {
+            stream.write(body);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package server;
+
+import backend.BackendException;
+import backend.BackendSession;
+import backend.ExpiringLruCache;
+import cdc.CdcConsumer;
+import cdc.ChangeHandler;
+import cdc.ChangeHandlers;
+import cli.Menu;
+import com.sun.net.httpserver.HttpServer;
+import config.Config;
+import graph.FollowRecommender;
+import graph.SocialGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.FanoutService;
+import utils.FeedCache;
+import utils.FeedProvider;
+import utils.FollowerManager;
+import utils.LoginValidator;
+import utils.PostManager;
+import utils.PostWriteQueue;
+import utils.ProfilePropagator;
+import utils.UserSearch;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP/JSON front end exposing the operations of the console client to many concurrent users.
+ * All requests share one {@link BackendSession} and one instance of every manager; only
+ * {@link utils.UserDataValidator}, which keeps error messages of the last validation, is created per request.
+ * <p>
+ * Requests run on virtual threads when the JVM provides them (Java 21+), otherwise on a pool of
+ * {@code server_threads} platform threads. Logged users are identified by a bearer token returned by login
+ * and register, kept in memory for {@code server_session_ttl_minutes}.
+ */
+public class ApiServer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ApiServer.class);
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_THREADS = 200;
+    public static final int DEFAULT_MAX_SESSIONS = 100000;
+    public static final int DEFAULT_SESSION_TTL_MINUTES = 60;
+
+    private final BackendSession session;
+    private final SocialGraph graph;
+    private final FanoutService fanoutService;
+    private final PostWriteQueue postQueue;
+    private final CdcConsumer cdcConsumer;
+    private final FollowRecommender recommender;
+    private final ProfilePropagator profilePropagator;
+    private final ExecutorService executor;
+    private final HttpServer httpServer;
+    // bearer token -> nick of the logged user
+    private final ExpiringLruCache<String, String> tokens;
+    private final SecureRandom random = new SecureRandom();
+
+    public ApiServer(Config config) throws BackendException, IOException {
+        session = new BackendSession(config.getString("contact_point"), config.getString("keyspace"), config);
+        try {
+            graph = SocialGraph.fromConfig(session, config);
+            fanoutService = "fanout".equalsIgnoreCase(config.getString("feed_mode", "pull"))
+                    ? new FanoutService(session,
+                    config.getInt("fanout_follower_threshold", FanoutService.DEFAULT_FOLLOWER_THRESHOLD),
+                    config.getInt("fanout_batch_size", FanoutService.DEFAULT_BATCH_SIZE), graph)
+                    : null;
+            profilePropagator = ProfilePropagator.fromConfig(session, config);
+
+            tokens = new ExpiringLruCache<>(config.getInt("server_max_sessions", DEFAULT_MAX_SESSIONS),
+                    TimeUnit.MINUTES.toMillis(config.getInt("server_session_ttl_minutes", DEFAULT_SESSION_TTL_MINUTES)), 0);
+            FeedCache feedCache = FeedCache.fromConfig(session, config);
+            postQueue = PostWriteQueue.fromConfig(session, config);
+
+            // with CDC propagation saving a profile writes only the users table
+            boolean cdcPropagation = config.getBoolean("cdc_profile_propagation", false);
+            List<ChangeHandler> changeHandlers = new ArrayList<>();
+            changeHandlers.add(ChangeHandlers.cacheInvalidation(session, feedCache));
+            if (graph != null) changeHandlers.add(ChangeHandlers.graphMaintenance(graph));
+            if (cdcPropagation) changeHandlers.add(ChangeHandlers.profilePropagation(profilePropagator));
+            cdcConsumer = CdcConsumer.fromConfig(session, config, changeHandlers);
+            if (cdcConsumer != null) {
+                cdcConsumer.start(config.getInt("cdc_poll_interval_millis", CdcConsumer.DEFAULT_POLL_INTERVAL_MILLIS));
+            }
+
+            recommender = FollowRecommender.fromConfig(session, config, graph);
+            ApiHandler handler = new ApiHandler(this, session, cdcConsumer != null && cdcPropagation ? null : profilePropagator,
+                    new LoginValidator(session),
+                    new PostManager(session, fanoutService, feedCache, postQueue),
+                    new FeedProvider(session, config.getInt("feed_max_in_flight", FeedProvider.DEFAULT_MAX_IN_FLIGHT),
+                            fanoutService, feedCache, graph),
+                    new FollowerManager(session, fanoutService, feedCache, graph),
+                    new UserSearch(session, config),
+                    recommender,
+                    config.getInt("feed_page_size", FeedProvider.DEFAULT_PAGE_SIZE),
+                    config.getInt("list_page_size", Menu.DEFAULT_LIST_PAGE_SIZE));
+
+            executor = createExecutor(config.getInt("server_threads", DEFAULT_THREADS));
+            httpServer = HttpServer.create(new InetSocketAddress(config.getInt("server_port", DEFAULT_PORT)),
+                    config.getInt("server_backlog", 0));
+            httpServer.createContext("/api/", handler);
+            httpServer.setExecutor(executor);
+        } catch (BackendException | IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            ApiServer server = new ApiServer(Config.load());
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close, "api-server-shutdown"));
+            server.start();
+        } catch (BackendException | IOException e) {
+            System.out.println("Could not start server: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    public void start() {
+        httpServer.start();
+        logger.info("Listening on {}", httpServer.getAddress());
+    }
+
+    /**
+     * @return new bearer token identifying {@code nick} in subsequent requests
+     */
+    String login(String nick) {
+        byte[] bytes = new byte[24];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        tokens.put(token, nick);
+        return token;
+    }
+
+    /**
+     * @return nick of the user logged with {@code token}, {@code null} when the token is unknown or expired
+     */
+    String authenticate(String token) {
+        return token == null ? null : tokens.getIfPresent(token);
+    }
+
+    void logout(String token) {
+        tokens.invalidate(token);
+    }
+
+    /**
+     * Virtual thread per task executor when available. The build targets Java 17, so it is looked up reflectively.
+     */
+    private static ExecutorService createExecutor(int threads) {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            logger.info("Handling requests on virtual threads");
+            return executor;
+        } catch (ReflectiveOperationException e) {
+            logger.info("Virtual threads not available, handling requests on {} threads", threads);
+            AtomicInteger count = new AtomicInteger();
+            return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    runnable -> new Thread(runnable, "api-" + count.incrementAndGet()));
+        }
+    }
+
+    @Override
+    public void close() {
+        if (httpServer != null) httpServer.stop(1);
+        if (executor != null) executor.shutdown();
+        if (cdcConsumer != null) cdcConsumer.close();
+        if (recommender != null) recommender.close();
+        if (postQueue != null) postQueue.close();
+        if (fanoutService != null) fanoutService.close();
+        if (profilePropagator != null) profilePropagator.close();
+        if (graph != null) graph.close();
+        session.close();
+    }
+}
@@ -0,0 +1,99 @@
+package utils;
+
+import backend.BackendException;
+import backend.BackendSession;
+import config.Config;
+import model.UserCounters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recomputes user counters from followers, following and posts tables and fixes the ones which drifted,
+ * e.g. after a counter update timed out or after a bulk load. Counters cannot be set, so the difference
+ * between the counted and the stored value is added; updates done concurrently with reconciliation may
+ * therefore still be off and are fixed by the next run. Counts and counters are read with the {@code reconcile}
+ * execution profile, at the consistency level counters are written at.
+ * <p>
+ * Run with user nicknames as arguments to reconcile only them, or without arguments to reconcile all users.
+ */
+public class CounterReconciler {
+    private static final int PAGE_SIZE = 500;
+
+    BackendSession session;
+    int threads;
+
+    public CounterReconciler(BackendSession session, int threads) {
+        this.session = session;
+        this.threads = Math.max(1, threads);
+    }
+
+    public static void main(String[] args) {
+        try {
+            Config config = Config.load();
+            try (BackendSession session = new BackendSession(config.getString("contact_point"), config.getString("keyspace"), config)) {
+                CounterReconciler reconciler = new CounterReconciler(session, config.getInt("reconcile_threads", 16));
+                if (args.length == 0) {
+                    reconciler.reconcileAll();
+                } else {
+                    for (String nick : args) {
+                        System.out.println(nick + (reconciler.reconcile(nick) ? ": fixed" : ": correct"));
+                    }
+                }
+            }
+        } catch (BackendException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * @return whether counters of {@code nick} had to be fixed
+     */
+    public boolean reconcile(String nick) throws BackendException {
+        UserCounters actual = session.countFromBaseTables(nick);
+        UserCounters stored = session.selectCountersForReconciliation(nick);
+        UserCounters deltas = new UserCounters(nick, actual.getFollowers() - stored.getFollowers(),
+                actual.getFollowing() - stored.getFollowing(), actual.getPosts() - stored.getPosts());
+        if (deltas.getFollowers() == 0 && deltas.getFollowing() == 0 && deltas.getPosts() == 0) {
+            return false;
+        }
+        session.updateCounters(deltas);
+        return true;
+    }
+
+    /**
+     * Walks through all users page by page, reconciling users of a page in parallel.
+     */
+    public void reconcileAll() throws BackendException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        LongAdder checked = new LongAdder();
+        LongAdder fixed = new LongAdder();
+        try {
+            String after = null;
+            ArrayList<String> page;
+            do {
+                page = session.selectUserNicknamesAfter(after, PAGE_SIZE);
+                List<Future<Boolean>> results = new ArrayList<>(page.size());
+                for (String nick : page) {
+                    results.add(executor.submit(() -> reconcile(nick)));
+                }
+                for (Future<Boolean> result : results) {
+                    if (BackendSession.awaitResult(result, "Could not reconcile counters.")) fixed.increment();
+                    checked.increment();
+                }
+                if (!page.isEmpty()) {
+                    after = page.get(page.size() - 1);
+                    System.out.println("Checked " + checked.sum() + " users, fixed " + fixed.sum());
+                }
+            } while (page.size() == PAGE_SIZE);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package utils;
+
+import backend.BackendException;
+import backend.BackendSession;
+import com.datastax.driver.core.ResultSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import graph.SocialGraph;
+import model.Post;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Copies new posts into timelines of author's followers (fan-out on write).
+ * Authors with more followers than the threshold are not fanned out - they are recorded
+ * as pull authors and their posts are merged into the feed at read time.
+ */
+public class FanoutService implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(FanoutService.class);
+
+    public static final int DEFAULT_FOLLOWER_THRESHOLD = 10000;
+    public static final int DEFAULT_BATCH_SIZE = 64;
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final long PULL_AUTHORS_REFRESH_MILLIS = 60_000;
+
+    BackendSession session;
+    int followerThreshold;
+    int batchSize;
+    SocialGraph graph;
+    private final ThreadPoolExecutor executor;
+
+    private volatile Set<String> pullAuthors = Collections.emptySet();
+    private volatile long pullAuthorsLoadedAt;
+
+    public FanoutService(BackendSession session, int followerThreshold, int batchSize) {
+        this(session, followerThreshold, batchSize, null);
+    }
+
+    /**
+     * @param graph when given, followers of authors are taken from the in-memory follow graph, may be {@code null}
+     */
+    public FanoutService(BackendSession session, int followerThreshold, int batchSize, SocialGraph graph) {
+        this.session = session;
+        this.followerThreshold = followerThreshold;
+        this.batchSize = Math.max(1, batchSize);
+        this.graph = graph;
+        // a full queue makes the posting thread do the fan-out itself instead of growing without bound
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), runnable -> {
+                    Thread thread = new Thread(runnable, "timeline-fanout");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Schedules copying of a created or edited post into timelines of author's followers.
+     */
+    public void publish(Post post) {
+        executor.execute(() -> {
+            try {
+                fanOut(post);
+            } catch (BackendException e) {
+                logger.error("Could not fan out post of " + post.getAuthorNick(), e);
+            }
+        });
+    }
+
+    /**
+     * Schedules copying of the newest posts of a followed author into follower's timeline,
+     * so that a new follow is visible in the feed without waiting for the next post.
+     */
+    public void backfill(String followerNick, String authorNick, int limit) {
+        executor.execute(() -> {
+            try {
+                if (getPullAuthors().contains(authorNick)) return;
+                List<Post> posts = BackendSession.awaitResult(session.selectRecentPostsAsync(authorNick, limit),
+                        "Could not fetch recent posts.");
+                writeInBatches(posts, post -> session.addTimelinePostAsync(followerNick, post));
+            } catch (BackendException e) {
+                logger.error("Could not backfill timeline of " + followerNick, e);
+            }
+        });
+    }
+
+    /**
+     * Returns authors whose posts are not fanned out. The set is small and reloaded periodically.
+     */
+    public Set<String> getPullAuthors() throws BackendException {
+        if (System.currentTimeMillis() - pullAuthorsLoadedAt > PULL_AUTHORS_REFRESH_MILLIS) {
+            pullAuthors = Collections.unmodifiableSet(session.selectPullAuthors());
+            pullAuthorsLoadedAt = System.currentTimeMillis();
+        }
+        return pullAuthors;
+    }
+
+    private void fanOut(Post post) throws BackendException {
+        String author = post.getAuthorNick();
+        if (getPullAuthors().contains(author)) return;
+
+        ArrayList<String> followers = graph != null
+                ? graph.followers(author, followerThreshold + 1)
+                : session.selectFollowerNicknames(author, followerThreshold + 1);
+        if (followers.size() > followerThreshold) {
+            session.addPullAuthor(author);
+            pullAuthorsLoadedAt = 0;
+            logger.info("Author {} exceeded {} followers, posts will be pulled at read time", author, followerThreshold);
+            return;
+        }
+
+        writeInBatches(followers, follower -> session.addTimelinePostAsync(follower, post));
+    }
+
+    /**
+     * Issues at most {@code batchSize} concurrent timeline writes and waits for each batch before starting the next one.
+     * Every timeline row lives in a different partition, so the writes are not grouped into CQL batches.
+     */
+    private <T> void writeInBatches(List<T> items, Function<T, ListenableFuture<ResultSet>> write) throws BackendException {
+        for (int from = 0; from < items.size(); from += batchSize) {
+            List<ListenableFuture<ResultSet>> batch = new ArrayList<>(batchSize);
+            for (T item : items.subList(from, Math.min(items.size(), from + batchSize))) {
+                batch.add(write.apply(item));
+            }
+            BackendSession.awaitResult(Futures.allAsList(batch), "Could not update timeline.");
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("Timeline fan-out did not finish in time, {} posts were dropped", executor.getQueue().size());
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
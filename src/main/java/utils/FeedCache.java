@@ -0,0 +1,176 @@
+package utils;
+
+import backend.BackendException;
+import backend.BackendSession;
+import backend.ExpiringLruCache;
+import com.codahale.metrics.Gauge;
+import config.Config;
+import model.Post;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assembled feeds of recently active users. Every entry keeps the newest {@code feedSize} posts of user's followees
+ * together with the creation date of the newest post seen from each followee (its watermark), so a refresh only reads
+ * posts created after the watermarks. Entries of users inactive for the TTL expire, and the least recently used ones
+ * are evicted when the cache is full.
+ * <p>
+ * Following or unfollowing invalidates the feed of the follower; editing a post invalidates the feeds containing
+ * posts of its author, found in an in-memory index. Only changes made through this process are seen,
+ * changes made by other processes show up once the entry expires.
+ */
+public class FeedCache {
+    public static final int DEFAULT_MAX_SIZE = 1000;
+    public static final int DEFAULT_TTL_SECONDS = 600;
+
+    /**
+     * Immutable snapshot of a feed; a refresh creates a new one.
+     */
+    static final class CachedFeed {
+        final List<String> following;
+        final Map<String, Long> watermarks;
+        /** newest first, at most feed size posts */
+        final ArrayList<Post> posts;
+        /** whether {@link #posts} holds all posts of the followees, not just the newest ones */
+        final boolean complete;
+
+        CachedFeed(List<String> following, Map<String, Long> watermarks, ArrayList<Post> posts, boolean complete) {
+            this.following = following;
+            this.watermarks = watermarks;
+            this.posts = posts;
+            this.complete = complete;
+        }
+
+        /**
+         * Returns {@code pageSize} posts following {@code after} ({@code null} for the first page),
+         * or {@code null} when the page reaches beyond the cached posts.
+         */
+        ArrayList<Post> pageAfter(Post after, int pageSize) {
+            int from = 0;
+            if (after != null) {
+                from = Collections.binarySearch(posts, after, PostMerger.NEWEST_FIRST);
+                from = from >= 0 ? from + 1 : -from - 1;
+            }
+            int to = from + pageSize;
+            if (to > posts.size()) {
+                if (!complete) return null;
+                to = posts.size();
+            }
+            return new ArrayList<>(posts.subList(Math.min(from, to), to));
+        }
+
+        Set<String> authors() {
+            Set<String> authors = new HashSet<>();
+            for (Post post : posts) {
+                authors.add(post.getAuthorNick());
+            }
+            return authors;
+        }
+    }
+
+    private final int feedSize;
+    private final ExpiringLruCache<String, CachedFeed> feeds;
+    // author -> users whose cached feed contains author's posts; may also list users whose feed is gone,
+    // such leftovers are dropped with the next edit of the author
+    private final ConcurrentHashMap<String, Set<String>> readers = new ConcurrentHashMap<>();
+
+    public FeedCache(BackendSession session, int maxSize, long ttlMillis, int feedSize) {
+        this.feedSize = feedSize;
+        this.feeds = new ExpiringLruCache<>(maxSize, ttlMillis, 0, this::unindex);
+        session.getMetrics().registerGauge("cache.feeds.size", (Gauge<Integer>) feeds::size);
+        session.getMetrics().registerGauge("cache.feeds.hitRatio", (Gauge<Double>) feeds::getHitRatio);
+        session.getMetrics().registerGauge("cache.feeds.evictions", (Gauge<Long>) feeds::getEvictionCount);
+    }
+
+    /**
+     * Creates the cache configured with {@code feed_cache_max_size} and {@code feed_cache_ttl_seconds},
+     * {@code null} when it is disabled with max size 0.
+     */
+    public static FeedCache fromConfig(BackendSession session, Config config) {
+        int maxSize = config.getInt("feed_cache_max_size", DEFAULT_MAX_SIZE);
+        if (maxSize <= 0) return null;
+        return new FeedCache(session, maxSize,
+                TimeUnit.SECONDS.toMillis(config.getInt("feed_cache_ttl_seconds", DEFAULT_TTL_SECONDS)),
+                FeedProvider.DEFAULT_FEED_SIZE);
+    }
+
+    /**
+     * Number of newest posts kept per user.
+     */
+    public int getFeedSize() {
+        return feedSize;
+    }
+
+    CachedFeed getIfPresent(String nick) {
+        return feeds.getIfPresent(nick);
+    }
+
+    CachedFeed get(String nick, ExpiringLruCache.Loader<String, CachedFeed> loader) throws BackendException {
+        return feeds.get(nick, key -> {
+            CachedFeed feed = loader.load(key);
+            index(key, feed);
+            return feed;
+        });
+    }
+
+    /**
+     * Stores a refreshed feed unless the entry was invalidated or refreshed by someone else in the meantime.
+     */
+    void replace(String nick, CachedFeed expected, CachedFeed refreshed) {
+        // indexed before being stored, so an edit racing with the refresh still finds it
+        index(nick, refreshed);
+        if (feeds.replace(nick, expected, refreshed)) {
+            Set<String> gone = expected.authors();
+            gone.removeAll(refreshed.authors());
+            for (String author : gone) {
+                unindex(nick, author);
+            }
+        }
+    }
+
+    /**
+     * Drops the feed of {@code nick}, e.g. after the user followed or unfollowed someone.
+     */
+    public void invalidate(String nick) {
+        feeds.invalidate(nick);
+    }
+
+    /**
+     * Drops the feeds containing posts of {@code author}, e.g. after one of them was edited.
+     */
+    public void invalidateAuthor(String author) {
+        Set<String> nicks = readers.remove(author);
+        if (nicks == null) return;
+        for (String nick : nicks) {
+            feeds.invalidate(nick);
+        }
+    }
+
+    private void index(String nick, CachedFeed feed) {
+        if (feed == null) return;
+        for (String author : feed.authors()) {
+            readers.computeIfAbsent(author, key -> ConcurrentHashMap.newKeySet()).add(nick);
+        }
+    }
+
+    private void unindex(String nick, CachedFeed feed) {
+        if (feed == null) return;
+        for (String author : feed.authors()) {
+            unindex(nick, author);
+        }
+    }
+
+    private void unindex(String nick, String author) {
+        readers.computeIfPresent(author, (key, nicks) -> {
+            nicks.remove(nick);
+            return nicks.isEmpty() ? null : nicks;
+        });
+    }
+}
@@ -0,0 +1,35 @@
+package utils;
+
+import model.Post;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Encodes position of the last post shown on a feed page (its creation date and author),
+ * which is enough to seek every followee's partition with {@code creationDate <= ?}.
+ */
+final class FeedCursor {
+
+    private FeedCursor() {
+    }
+
+    static String encode(Post lastPost) {
+        String position = lastPost.getCreationDate() + ":" + lastPost.getAuthorNick();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns post-shaped position stored in the cursor, without text.
+     */
+    static Post decode(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = position.indexOf(':');
+            long creationTime = Long.parseLong(position.substring(0, separator));
+            return new Post(position.substring(separator + 1), creationTime, null);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Malformed feed cursor: " + cursor, e);
+        }
+    }
+}
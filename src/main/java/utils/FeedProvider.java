@@ -2,25 +2,265 @@ package utils;
 
 import backend.BackendException;
 import backend.BackendSession;
+import backend.PostStream;
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import graph.SocialGraph;
+import model.FeedPage;
 import model.Post;
 
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
 
 public class FeedProvider {
+    public static final int DEFAULT_FEED_SIZE = 100;
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 32;
+    private static final int MIN_FETCH_SIZE = 5;
+
     BackendSession session;
+    int maxInFlight;
+    FanoutService fanoutService;
+    FeedCache feedCache;
+    SocialGraph graph;
 
     public FeedProvider(BackendSession session) {
+        this(session, DEFAULT_MAX_IN_FLIGHT, null);
+    }
+
+    public FeedProvider(BackendSession session, int maxInFlight, FanoutService fanoutService) {
+        this(session, maxInFlight, fanoutService, null);
+    }
+
+    /**
+     * @param fanoutService when given, feed is read from timelines materialized on write
+     *                      and only posts of pull authors are fetched at read time
+     * @param feedCache     when given, feeds assembled at read time are cached and refreshed incrementally;
+     *                      not used together with {@code fanoutService}, whose timelines are a single read already
+     */
+    public FeedProvider(BackendSession session, int maxInFlight, FanoutService fanoutService, FeedCache feedCache) {
+        this(session, maxInFlight, fanoutService, feedCache, null);
+    }
+
+    /**
+     * @param graph when given, followees are taken from the in-memory follow graph instead of the following table
+     */
+    public FeedProvider(BackendSession session, int maxInFlight, FanoutService fanoutService, FeedCache feedCache,
+                        SocialGraph graph) {
         this.session = session;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.fanoutService = fanoutService;
+        this.feedCache = fanoutService == null ? feedCache : null;
+        this.graph = graph;
     }
 
     public ArrayList<Post> getRecentPosts(String nick) throws BackendException {
-        ArrayList<String> followingUsersNicknames = session.selectFollowingUsersNicknames(nick);
-        ArrayList<Post> recentPosts = new ArrayList<Post>();
-        for (String followingNick: followingUsersNicknames) {
-            recentPosts.addAll(session.selectPosts(followingNick));
+        return getRecentPosts(nick, DEFAULT_FEED_SIZE);
+    }
+
+    /**
+     * Returns {@code limit} newest posts of users followed by {@code nick}, oldest first.
+     * Followees' partitions are queried concurrently and merged with a k-way merge.
+     */
+    public ArrayList<Post> getRecentPosts(String nick, int limit) throws BackendException {
+        return session.getMetrics().time("feed.getRecentPosts", () -> {
+            if (feedCache != null && limit <= feedCache.getFeedSize()) {
+                List<Post> cached = refreshedFeed(nick).posts;
+                ArrayList<Post> recentPosts = new ArrayList<>(cached.subList(0, Math.min(limit, cached.size())));
+                Collections.reverse(recentPosts);
+                return recentPosts;
+            }
+            List<ArrayList<Post>> partitions = fanoutService == null
+                    ? fetchRecentPosts(following(nick), limit)
+                    : fetchTimeline(nick, limit);
+            ArrayList<Post> recentPosts = PostMerger.mergeNewestFirst(partitions, limit);
+            Collections.reverse(recentPosts);
+            return recentPosts;
+        });
+    }
+
+    /**
+     * Returns a page of {@code pageSize} newest posts older than the position in {@code cursor}
+     * ({@code null} for the first page), newest first.
+     * Every followee's partition is seeked with {@code creationDate <= ?} and read lazily in small fetches,
+     * so the cost of a page depends on the page size, not on how deep the user has scrolled.
+     * With the feed cache the first page refreshes the cached feed and pages within it are served from memory.
+     */
+    public FeedPage getFeedPage(String nick, String cursor, int pageSize) throws BackendException {
+        return session.getMetrics().time("feed.getFeedPage", () -> readFeedPage(nick, cursor, pageSize));
+    }
+
+    private FeedPage readFeedPage(String nick, String cursor, int pageSize) throws BackendException {
+        Post after = cursor == null ? null : FeedCursor.decode(cursor);
+        if (feedCache != null) {
+            FeedCache.CachedFeed feed = after == null ? refreshedFeed(nick) : feedCache.getIfPresent(nick);
+            ArrayList<Post> posts = feed == null ? null : feed.pageAfter(after, pageSize);
+            if (posts != null) {
+                String nextCursor = posts.size() < pageSize ? null : FeedCursor.encode(posts.get(posts.size() - 1));
+                return new FeedPage(posts, nextCursor);
+            }
+        }
+        long before = after == null ? Long.MAX_VALUE : after.getCreationDate();
+
+        List<? extends Iterator<Post>> streams;
+        if (fanoutService == null) {
+            List<String> following = following(nick);
+            streams = openPostStreams(following, before, fetchSizeFor(pageSize, following.size()));
+        } else {
+            streams = openTimelineStreams(nick, before, pageSize);
+        }
+
+        ArrayList<Post> posts = PostMerger.mergeIterators(streams, after, pageSize);
+        String nextCursor = posts.size() < pageSize ? null : FeedCursor.encode(posts.get(posts.size() - 1));
+        return new FeedPage(posts, nextCursor);
+    }
+
+    private ArrayList<String> following(String nick) throws BackendException {
+        return graph != null ? graph.following(nick) : session.selectFollowingUsersNicknames(nick);
+    }
+
+    private ListenableFuture<ArrayList<String>> followingAsync(String nick) {
+        return graph != null ? Futures.immediateFuture(graph.following(nick)) : session.selectFollowingUsersNicknamesAsync(nick);
+    }
+
+    /**
+     * Each followee gets an equal share of the page as its first fetch; followees dominating the page
+     * are paged further on demand.
+     */
+    private static int fetchSizeFor(int pageSize, int followees) {
+        return Math.max(MIN_FETCH_SIZE, pageSize / Math.max(1, followees) + 1);
+    }
+
+    private List<Iterator<Post>> openPostStreams(List<String> authors, long before, int fetchSize) throws BackendException {
+        return boundedFanOut(authors, author -> session.selectPostsBeforeAsync(author, before, fetchSize));
+    }
+
+    private List<Iterator<Post>> openTimelineStreams(String nick, long before, int pageSize) throws BackendException {
+        ListenableFuture<PostStream> timelineFuture = session.selectTimelineBeforeAsync(nick, before, pageSize + 1);
+        ListenableFuture<ArrayList<String>> followingFuture = followingAsync(nick);
+
+        Set<String> following = new HashSet<>(BackendSession.awaitResult(followingFuture, "Could not fetch feed content."));
+        List<String> pulledAuthors = new ArrayList<>(following);
+        pulledAuthors.retainAll(fanoutService.getPullAuthors());
+
+        List<Iterator<Post>> streams = new ArrayList<>(openPostStreams(pulledAuthors, before, fetchSizeFor(pageSize, pulledAuthors.size())));
+        PostStream timeline = BackendSession.awaitResult(timelineFuture, "Could not fetch recent posts.");
+        streams.add(Iterators.filter(timeline, post -> following.contains(post.getAuthorNick())));
+        return streams;
+    }
+
+    /**
+     * Reads the materialized timeline slice together with the following list, drops timeline entries
+     * of users that are no longer followed and pulls posts of followed high-follower authors.
+     */
+    private List<ArrayList<Post>> fetchTimeline(String nick, int limit) throws BackendException {
+        ListenableFuture<ArrayList<Post>> timelineFuture = session.selectTimelineAsync(nick, limit);
+        ListenableFuture<ArrayList<String>> followingFuture = followingAsync(nick);
+
+        Set<String> following = new HashSet<>(BackendSession.awaitResult(followingFuture, "Could not fetch feed content."));
+        Set<String> pullAuthors = fanoutService.getPullAuthors();
+        List<String> pulledAuthors = new ArrayList<>();
+        for (String author : following) {
+            if (pullAuthors.contains(author)) pulledAuthors.add(author);
+        }
+
+        List<ArrayList<Post>> partitions = new ArrayList<>(fetchRecentPosts(pulledAuthors, limit));
+        ArrayList<Post> timeline = BackendSession.awaitResult(timelineFuture, "Could not fetch recent posts.");
+        timeline.removeIf(post -> !following.contains(post.getAuthorNick()));
+        partitions.add(timeline);
+        return partitions;
+    }
+
+    /**
+     * Returns the cached feed of {@code nick} with posts created after its watermarks merged in,
+     * or builds the feed when it is not cached.
+     */
+    private FeedCache.CachedFeed refreshedFeed(String nick) throws BackendException {
+        FeedCache.CachedFeed cached = feedCache.getIfPresent(nick);
+        if (cached == null) {
+            return feedCache.get(nick, this::buildFeed);
+        }
+        List<ArrayList<Post>> newPosts = fetchPostsAfter(cached.following, cached.watermarks, feedCache.getFeedSize());
+        if (newPosts.stream().allMatch(List::isEmpty)) {
+            return cached;
+        }
+        FeedCache.CachedFeed refreshed = assembleFeed(cached.following, cached.watermarks, newPosts, cached);
+        feedCache.replace(nick, cached, refreshed);
+        return refreshed;
+    }
+
+    private FeedCache.CachedFeed buildFeed(String nick) throws BackendException {
+        List<String> following = following(nick);
+        return assembleFeed(following, new HashMap<>(), fetchRecentPosts(following, feedCache.getFeedSize()), null);
+    }
+
+    /**
+     * @param slices  newest posts of each of {@code following}, in the same order
+     * @param current feed the slices are merged into, {@code null} when building a new one
+     */
+    private FeedCache.CachedFeed assembleFeed(List<String> following, Map<String, Long> watermarks,
+                                              List<ArrayList<Post>> slices, FeedCache.CachedFeed current) {
+        int feedSize = feedCache.getFeedSize();
+        Map<String, Long> newWatermarks = new HashMap<>(watermarks);
+        for (int i = 0; i < following.size(); i++) {
+            if (!slices.get(i).isEmpty()) {
+                newWatermarks.put(following.get(i), slices.get(i).get(0).getCreationDate());
+            }
+        }
+        List<List<Post>> partitions = new ArrayList<>(slices);
+        if (current != null) partitions.add(current.posts);
+        ArrayList<Post> posts = PostMerger.mergeNewestFirst(partitions, feedSize);
+        // every slice was read up to the feed size, so fewer merged posts mean nothing older was left out
+        boolean complete = posts.size() < feedSize && (current == null || current.complete);
+        return new FeedCache.CachedFeed(following, newWatermarks, posts, complete);
+    }
+
+    /**
+     * Reads posts of every author newer than its watermark, or its newest posts when none was seen yet.
+     */
+    private List<ArrayList<Post>> fetchPostsAfter(List<String> authors, Map<String, Long> watermarks, int limit)
+            throws BackendException {
+        return boundedFanOut(authors, author -> {
+            Long watermark = watermarks.get(author);
+            return watermark == null
+                    ? session.selectRecentPostsAsync(author, limit)
+                    : session.selectPostsAfterAsync(author, watermark, limit);
+        });
+    }
+
+    private List<ArrayList<Post>> fetchRecentPosts(List<String> authors, int limit) throws BackendException {
+        return boundedFanOut(authors, author -> session.selectRecentPostsAsync(author, limit));
+    }
+
+    /**
+     * Sends {@code query} for every key, with at most {@code maxInFlight} queries pending at a time,
+     * and returns their results in the order of {@code keys}. A query failing to start fails the whole fan-out
+     * like a failed query.
+     */
+    private <T, R> List<R> boundedFanOut(List<T> keys, Function<T, ListenableFuture<R>> query) throws BackendException {
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        List<ListenableFuture<R>> futures = new ArrayList<>(keys.size());
+        for (T key : keys) {
+            inFlight.acquireUninterruptibly();
+            ListenableFuture<R> future;
+            try {
+                future = query.apply(key);
+            } catch (RuntimeException e) {
+                future = Futures.immediateFailedFuture(e);
+            }
+            future.addListener(inFlight::release, MoreExecutors.directExecutor());
+            futures.add(future);
         }
-        recentPosts.sort(Comparator.comparing(Post::getCreationDate));
-        return recentPosts;
+        return BackendSession.awaitResult(Futures.allAsList(futures), "Could not fetch recent posts.");
     }
 }
@@ -2,30 +2,97 @@ package utils;
 
 import backend.BackendException;
 import backend.BackendSession;
+import com.google.common.util.concurrent.ListenableFuture;
+import graph.SocialGraph;
 import model.User;
 
+/**
+ * Follows and unfollows users. Whether a relation changed is decided by a lightweight transaction on the followers
+ * row, so follower counters are adjusted once however many times a follow or an unfollow is repeated, also
+ * concurrently. Once it completes, the following row and, when the relation changed, the counters are written
+ * concurrently; the following row is written in both cases, which repairs a relation left half-written by a failed
+ * earlier attempt.
+ */
 public class FollowerManager {
     BackendSession session;
+    FanoutService fanoutService;
+    FeedCache feedCache;
+    SocialGraph graph;
 
     public FollowerManager(BackendSession session) {
+        this(session, null, null, null);
+    }
+
+    /**
+     * @param feedCache feeds of followers dropped when they follow or unfollow someone, may be {@code null}
+     * @param graph     in-memory follow graph answering {@link #isFollowed} and updated on every change,
+     *                  may be {@code null}
+     */
+    public FollowerManager(BackendSession session, FanoutService fanoutService, FeedCache feedCache, SocialGraph graph) {
         this.session = session;
+        this.fanoutService = fanoutService;
+        this.feedCache = feedCache;
+        this.graph = graph;
     }
 
     public void followUser(User user, User userToFollow) throws BackendException {
-        session.addFollower(userToFollow.getNickname(), user);
-        session.addFollowing(user.getNickname(), userToFollow);
+        session.getMetrics().time("followers.followUser", () -> {
+            boolean followed = BackendSession.awaitResult(session.addFollowerIfAbsentAsync(user, userToFollow),
+                    "Could not follow user.");
+            ListenableFuture<?> following = session.addFollowingAsync(user, userToFollow);
+            ListenableFuture<?> counters = followed
+                    ? session.updateFollowCountersAsync(user.getNickname(), userToFollow.getNickname(), 1)
+                    : null;
+            BackendSession.awaitResult(following, "Could not follow user.");
+            if (graph != null) {
+                graph.follow(user.getNickname(), userToFollow.getNickname());
+            }
+            if (feedCache != null) {
+                feedCache.invalidate(user.getNickname());
+            }
+            if (counters != null) {
+                BackendSession.awaitResult(counters, "Could not update follower counters.");
+            }
+            if (fanoutService != null) {
+                fanoutService.backfill(user.getNickname(), userToFollow.getNickname(), FeedProvider.DEFAULT_FEED_SIZE);
+            }
+            return null;
+        });
     }
 
     public boolean isFollowed(User user, User followed) throws BackendException {
-        User fromFollowers = session.selectFollower(user.getNickname(), followed.getNickname());
-        User fromFollowing = session.selectFollowing(followed.getNickname(), user.getNickname());
-        if (fromFollowers != null && fromFollowing != null) return true;
-        else if ((fromFollowers == null && fromFollowing == null)) return false;
-        throw new BackendException("Couldn't get consistent information about following");
+        return session.getMetrics().time("followers.isFollowed", () -> {
+            if (graph != null) return graph.isFollowing(user.getNickname(), followed.getNickname());
+            ListenableFuture<User> fromFollowersFuture = session.selectFollowerAsync(user.getNickname(), followed.getNickname());
+            ListenableFuture<User> fromFollowingFuture = session.selectFollowingAsync(followed.getNickname(), user.getNickname());
+            User fromFollowers = BackendSession.awaitResult(fromFollowersFuture, "Could not fetch information about user.");
+            User fromFollowing = BackendSession.awaitResult(fromFollowingFuture, "Could not fetch information about user.");
+            if (fromFollowers != null && fromFollowing != null) return true;
+            else if ((fromFollowers == null && fromFollowing == null)) return false;
+            throw new BackendException("Couldn't get consistent information about following");
+        });
     }
 
     public void unfollowUser(User user, User userToFollow) throws BackendException {
-        session.removeFollower(userToFollow.getNickname(), user.getNickname());
-        session.removeFollowing(user.getNickname(), userToFollow.getNickname());
+        session.getMetrics().time("followers.unfollowUser", () -> {
+            boolean unfollowed = BackendSession.awaitResult(
+                    session.removeFollowerIfPresentAsync(user.getNickname(), userToFollow.getNickname()),
+                    "Could not unfollow user.");
+            ListenableFuture<?> following = session.removeFollowingAsync(user.getNickname(), userToFollow.getNickname());
+            ListenableFuture<?> counters = unfollowed
+                    ? session.updateFollowCountersAsync(user.getNickname(), userToFollow.getNickname(), -1)
+                    : null;
+            BackendSession.awaitResult(following, "Could not unfollow user.");
+            if (graph != null) {
+                graph.unfollow(user.getNickname(), userToFollow.getNickname());
+            }
+            if (feedCache != null) {
+                feedCache.invalidate(user.getNickname());
+            }
+            if (counters != null) {
+                BackendSession.awaitResult(counters, "Could not update follower counters.");
+            }
+            return null;
+        });
     }
 }
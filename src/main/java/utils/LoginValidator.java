@@ -11,7 +11,9 @@ public class LoginValidator extends Validator {
     }
 
     public Boolean validateLogin(String nick, String password) throws BackendException {
-        User user = session.selectUser(nick);
-        return checkIfUserExists(user) && user.getPassword().equals(password);
+        return session.getMetrics().time("login.validateLogin", () -> {
+            User user = session.selectUser(nick);
+            return checkIfUserExists(user) && user.getPassword().equals(password);
+        });
     }
 }
@@ -5,14 +5,48 @@ import backend.BackendSession;
 import model.Post;
 
 public class PostManager extends Validator {
+    FanoutService fanoutService;
+    FeedCache feedCache;
+    PostWriteQueue postQueue;
 
     public PostManager(BackendSession session) {
+        this(session, null);
+    }
+
+    public PostManager(BackendSession session, FanoutService fanoutService) {
+        this(session, fanoutService, null);
+    }
+
+    /**
+     * @param feedCache feeds dropped when a post shown in them is edited, may be {@code null}
+     */
+    public PostManager(BackendSession session, FanoutService fanoutService, FeedCache feedCache) {
+        this(session, fanoutService, feedCache, null);
+    }
+
+    /**
+     * @param postQueue write-behind queue new posts are written through, may be {@code null} to write them directly
+     */
+    public PostManager(BackendSession session, FanoutService fanoutService, FeedCache feedCache, PostWriteQueue postQueue) {
         super(session);
+        this.fanoutService = fanoutService;
+        this.feedCache = feedCache;
+        this.postQueue = postQueue;
     }
 
     public boolean createPost(String authorNick, String content) throws BackendException {
         if (validatePostLength(content)) {
-            session.addPost(authorNick, content);
+            session.getMetrics().time("posts.createPost", () -> {
+                Post post = postQueue == null
+                        ? session.addPost(authorNick, content)
+                        : BackendSession.awaitResult(postQueue.submit(new Post(authorNick, System.currentTimeMillis(), content)),
+                        "Could not add post.");
+                session.incrementPostsCount(authorNick);
+                if (fanoutService != null) {
+                    fanoutService.publish(post);
+                }
+                return post;
+            });
             return true;
         }
         return false;
@@ -20,7 +54,16 @@ public class PostManager extends Validator {
 
     public boolean updatePost(Post post) throws BackendException {
         if (validatePostLength(post.getText())) {
-            session.updatePost(post);
+            session.getMetrics().time("posts.updatePost", () -> {
+                session.updatePost(post);
+                if (feedCache != null) {
+                    feedCache.invalidateAuthor(post.getAuthorNick());
+                }
+                if (fanoutService != null) {
+                    fanoutService.publish(post);
+                }
+                return post;
+            });
             return true;
         }
         return false;
@@ -0,0 +1,84 @@
+package utils;
+
+import model.Post;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * K-way merge of post streams which are already ordered newest first (e.g. per-author partitions).
+ * Only the head of every stream is kept in the heap, so merging stops as soon as the limit is reached
+ * without touching the remaining posts. The same post delivered by several streams is emitted once.
+ */
+public final class PostMerger {
+
+    public static final Comparator<Post> NEWEST_FIRST =
+            Comparator.comparingLong(Post::getCreationDate).reversed().thenComparing(Post::getAuthorNick);
+
+    private PostMerger() {
+    }
+
+    public static ArrayList<Post> mergeNewestFirst(List<? extends List<Post>> partitions, int limit) {
+        List<Iterator<Post>> sources = new ArrayList<>(partitions.size());
+        for (List<Post> partition : partitions) {
+            sources.add(partition.iterator());
+        }
+        return mergeIterators(sources, limit);
+    }
+
+    public static ArrayList<Post> mergeIterators(List<? extends Iterator<Post>> sources, int limit) {
+        return mergeIterators(sources, null, limit);
+    }
+
+    /**
+     * Merges sources skipping their leading posts which are not strictly older than {@code after}
+     * (in {@link #NEWEST_FIRST} order), which is how a page continues from a cursor.
+     */
+    public static ArrayList<Post> mergeIterators(List<? extends Iterator<Post>> sources, Post after, int limit) {
+        ArrayList<Post> merged = new ArrayList<>(Math.min(limit, 1024));
+        if (limit <= 0) return merged;
+
+        PriorityQueue<Head> heap = new PriorityQueue<>(Math.max(1, sources.size()));
+        for (Iterator<Post> source : sources) {
+            while (source.hasNext()) {
+                Post post = source.next();
+                if (after == null || NEWEST_FIRST.compare(post, after) > 0) {
+                    heap.add(new Head(post, source));
+                    break;
+                }
+            }
+        }
+
+        Post last = null;
+        while (!heap.isEmpty() && merged.size() < limit) {
+            Head head = heap.poll();
+            if (last == null || NEWEST_FIRST.compare(last, head.post) != 0) {
+                merged.add(head.post);
+                last = head.post;
+            }
+            if (head.source.hasNext()) {
+                head.post = head.source.next();
+                heap.add(head);
+            }
+        }
+        return merged;
+    }
+
+    private static final class Head implements Comparable<Head> {
+        Post post;
+        final Iterator<Post> source;
+
+        Head(Post post, Iterator<Post> source) {
+            this.post = post;
+            this.source = source;
+        }
+
+        @Override
+        public int compareTo(Head other) {
+            return NEWEST_FIRST.compare(post, other.post);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package utils;
+
+import backend.BackendSession;
+import com.codahale.metrics.Gauge;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import config.Config;
+import model.Post;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind queue of new posts. Submitted posts are collected for up to {@code flushIntervalMillis}, or until
+ * {@code batchSize} of them are waiting, and written with one unlogged batch per partition
+ * (see {@link BackendSession#addPostsAsync(List)}), so that a spike of posting turns into fewer, larger writes.
+ * <p>
+ * A full queue blocks submitting threads, and so does reaching {@code maxInFlight} pending writes, which keeps
+ * memory bounded when the cluster falls behind. Closing the queue writes all posts submitted before it was closed.
+ */
+public class PostWriteQueue implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(PostWriteQueue.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final int DEFAULT_FLUSH_INTERVAL_MILLIS = 5;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private static final class PendingPost {
+        final Post post;
+        final SettableFuture<Post> written = SettableFuture.create();
+
+        PendingPost(Post post) {
+            this.post = post;
+        }
+    }
+
+    BackendSession session;
+    int batchSize;
+    long flushIntervalMillis;
+    int maxInFlight;
+    private final BlockingQueue<PendingPost> queue;
+    private final Semaphore inFlight;
+    // submitters hold the read lock while enqueuing, so no post is enqueued after close() took the write lock
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private volatile boolean closed;
+    private final Thread flusher;
+
+    public PostWriteQueue(BackendSession session, int capacity, int batchSize, long flushIntervalMillis, int maxInFlight) {
+        this.session = session;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMillis = Math.max(0, flushIntervalMillis);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.inFlight = new Semaphore(this.maxInFlight);
+        session.getMetrics().registerGauge("posts.queue.size", (Gauge<Integer>) queue::size);
+
+        this.flusher = new Thread(this::run, "post-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Creates the queue configured with {@code post_queue_size}, {@code post_batch_size},
+     * {@code post_flush_interval_millis} and {@code post_queue_max_in_flight},
+     * {@code null} when write-behind is disabled with queue size 0.
+     */
+    public static PostWriteQueue fromConfig(BackendSession session, Config config) {
+        int capacity = config.getInt("post_queue_size", 0);
+        if (capacity <= 0) return null;
+        return new PostWriteQueue(session, capacity, config.getInt("post_batch_size", DEFAULT_BATCH_SIZE),
+                config.getInt("post_flush_interval_millis", DEFAULT_FLUSH_INTERVAL_MILLIS),
+                config.getInt("post_queue_max_in_flight", DEFAULT_MAX_IN_FLIGHT));
+    }
+
+    /**
+     * Queues the post, waiting while the queue is full.
+     *
+     * @return future completed with the post once it is written with the session's consistency level
+     * @throws IllegalStateException when the queue is already closed
+     */
+    public ListenableFuture<Post> submit(Post post) {
+        PendingPost pending = new PendingPost(post);
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Post queue is closed");
+            }
+            queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.written.setException(e);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        return pending.written;
+    }
+
+    private void run() {
+        while (!closed || !queue.isEmpty()) {
+            List<PendingPost> batch = new ArrayList<>(batchSize);
+            try {
+                PendingPost first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() == batchSize || remaining <= 0) break;
+                    PendingPost next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // not interrupted by close(), which lets the queue drain; write what was collected
+                logger.warn("Post write-behind thread interrupted");
+            }
+            flush(batch);
+        }
+    }
+
+    /**
+     * Writes posts of every author separately, so that a failed write fails only the posts it contained.
+     */
+    private void flush(List<PendingPost> batch) {
+        Map<String, List<PendingPost>> byAuthor = new LinkedHashMap<>();
+        for (PendingPost pending : batch) {
+            byAuthor.computeIfAbsent(pending.post.getAuthorNick(), key -> new ArrayList<>()).add(pending);
+        }
+        for (List<PendingPost> group : byAuthor.values()) {
+            List<Post> posts = new ArrayList<>(group.size());
+            for (PendingPost pending : group) {
+                posts.add(pending.post);
+            }
+            inFlight.acquireUninterruptibly();
+            ListenableFuture<?> write;
+            try {
+                write = session.addPostsAsync(posts);
+            } catch (RuntimeException e) {
+                write = Futures.immediateFailedFuture(e);
+            }
+            Futures.addCallback(write, new FutureCallback<Object>() {
+                @Override
+                public void onSuccess(Object result) {
+                    inFlight.release();
+                    for (PendingPost pending : group) {
+                        pending.written.set(pending.post);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    inFlight.release();
+                    for (PendingPost pending : group) {
+                        pending.written.setException(t);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops accepting posts and returns once all queued posts are written or failed.
+     */
+    @Override
+    public void close() {
+        closeLock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        boolean interrupted = false;
+        while (flusher.isAlive()) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        // all permits are back once every pending write has completed
+        inFlight.acquireUninterruptibly(maxInFlight);
+        inFlight.release(maxInFlight);
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+}
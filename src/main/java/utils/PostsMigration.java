@@ -0,0 +1,118 @@
+package utils;
+
+import backend.BackendException;
+import backend.BackendSession;
+import backend.PostStream;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import config.Config;
+import model.Post;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Copies the posts table into the bucketed layout (postsbybucket and authorbuckets tables), using the bucket size
+ * from config.properties. The token ring is split into {@code migration_splits} ranges scanned in parallel,
+ * writes are asynchronous with at most {@code migration_max_in_flight} pending. All writes are idempotent,
+ * so an interrupted migration can be restarted, optionally from the split given as the first argument.
+ * Switch {@code posts_layout} to {@code bucketed} once it finishes; posts written in the meantime
+ * are copied by running the migration again.
+ */
+public class PostsMigration {
+    private static final int FETCH_SIZE = 1000;
+
+    BackendSession session;
+    int splits;
+    int threads;
+    int maxInFlight;
+    private final Semaphore inFlight;
+    private final LongAdder copied = new LongAdder();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    public PostsMigration(BackendSession session, int splits, int threads, int maxInFlight) {
+        this.session = session;
+        this.splits = Math.max(1, splits);
+        this.threads = Math.max(1, threads);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.inFlight = new Semaphore(this.maxInFlight);
+    }
+
+    public static void main(String[] args) {
+        // the session writes posts in the target layout
+        Config config = Config.load("posts_layout=bucketed");
+        try {
+            try (BackendSession session = new BackendSession(config.getString("contact_point"), config.getString("keyspace"), config)) {
+                PostsMigration migration = new PostsMigration(session, config.getInt("migration_splits", 256),
+                        config.getInt("migration_threads", 8), config.getInt("migration_max_in_flight", 512));
+                migration.run(args.length > 0 ? Integer.parseInt(args[0]) : 0);
+            }
+        } catch (Exception e) {
+            System.out.println("Migration failed: " + e.getMessage());
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    public void run(int fromSplit) throws Exception {
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int split = fromSplit; split < splits; split++) {
+            int current = split;
+            tasks.add(executor.submit(() -> {
+                copySplit(current);
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // all permits are back once every pending write has completed
+        inFlight.acquireUninterruptibly(maxInFlight);
+        inFlight.release(maxInFlight);
+        if (failure.get() != null) {
+            throw new BackendException("Could not copy posts. Reason: " + failure.get().getMessage());
+        }
+        System.out.printf("Copied %d posts in %.1fs%n", copied.sum(), (System.nanoTime() - start) / 1e9);
+    }
+
+    private void copySplit(int split) throws BackendException {
+        PostStream posts = BackendSession.awaitResult(
+                session.selectPostsInTokenRangeAsync(BackendSession.tokenRangeBoundary(split, splits),
+                        BackendSession.tokenRangeBoundary(split + 1, splits), FETCH_SIZE),
+                "Could not read posts.");
+        while (posts.hasNext()) {
+            Post post = posts.next();
+            inFlight.acquireUninterruptibly();
+            if (failure.get() != null) {
+                inFlight.release();
+                throw new BackendException("Could not copy posts. Reason: " + failure.get().getMessage());
+            }
+            Futures.addCallback(session.addPostAsync(post), new FutureCallback<Object>() {
+                @Override
+                public void onSuccess(Object result) {
+                    copied.increment();
+                    inFlight.release();
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    failure.compareAndSet(null, t);
+                    inFlight.release();
+                }
+            });
+        }
+        System.out.println("Split " + split + "/" + splits + " done, " + copied.sum() + " posts copied");
+    }
+}
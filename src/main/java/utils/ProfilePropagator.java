@@ -0,0 +1,230 @@
+package utils;
+
+import backend.BackendException;
+import backend.BackendSession;
+import com.codahale.metrics.Meter;
+import com.datastax.driver.core.ResultSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import config.Config;
+import model.PropagationCheckpoint;
+import model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies a changed profile into the rows denormalizing it: followers partitions of users the owner follows
+ * and following partitions of owner's followers. Both sets are found in owner's own following and followers
+ * partitions, so the cost of a profile edit depends on the number of connections of the user only.
+ * <p>
+ * Partitions are read in pages of {@code pageSize} nicks and the rows of a page are rewritten with at most
+ * {@code maxInFlight} concurrent writes. After every page the position is saved in the profilepropagation table,
+ * so a propagation interrupted by a restart or a failure continues with {@link #resumePending()}.
+ * The profile itself is always read from the users table, which makes a resumed propagation write the newest data.
+ * Rows of a page are rewritten with the time the page was read as their write time, so when an unfollow deletes
+ * a row after the read, its tombstone is newer than the rewrite and the row stays deleted.
+ * <p>
+ * Unfinished propagations are resumed by a single owner process, the one with {@code propagation_resume_pending},
+ * so that processes starting at the same time do not run each other's propagations twice.
+ */
+public class ProfilePropagator implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ProfilePropagator.class);
+
+    public static final int DEFAULT_PAGE_SIZE = 500;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 32;
+
+    enum Phase {
+        /** rows in followers partitions of users followed by the owner */
+        FOLLOWERS,
+        /** rows in following partitions of owner's followers */
+        FOLLOWING
+    }
+
+    BackendSession session;
+    int pageSize;
+    int maxInFlight;
+    private final ExecutorService executor;
+    private final Meter rowsMeter;
+    // newest propagation request for each nick; older ones still queued or running give up
+    private final ConcurrentHashMap<String, Object> latestRequests = new ConcurrentHashMap<>();
+
+    public ProfilePropagator(BackendSession session, int pageSize, int maxInFlight) {
+        this.session = session;
+        this.pageSize = Math.max(1, pageSize);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.rowsMeter = session.getMetrics().getRegistry().meter("propagation.rows");
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "profile-propagation");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates the propagator configured with {@code propagation_page_size} and {@code propagation_max_in_flight},
+     * resuming unfinished propagations when this process owns them, that is {@code propagation_resume_pending} is set.
+     */
+    public static ProfilePropagator fromConfig(BackendSession session, Config config) throws BackendException {
+        ProfilePropagator propagator = new ProfilePropagator(session,
+                config.getInt("propagation_page_size", DEFAULT_PAGE_SIZE),
+                config.getInt("propagation_max_in_flight", DEFAULT_MAX_IN_FLIGHT));
+        if (config.getBoolean("propagation_resume_pending", false)) {
+            propagator.resumePending();
+        }
+        return propagator;
+    }
+
+    /**
+     * Finishes propagations left unfinished, for deployments without a process owning them.
+     */
+    public static void main(String[] args) {
+        Config config = Config.load();
+        try (BackendSession session = new BackendSession(config.getString("contact_point"), config.getString("keyspace"), config)) {
+            ProfilePropagator propagator = new ProfilePropagator(session,
+                    config.getInt("propagation_page_size", DEFAULT_PAGE_SIZE),
+                    config.getInt("propagation_max_in_flight", DEFAULT_MAX_IN_FLIGHT));
+            propagator.resumePending();
+            propagator.executor.shutdown();
+            propagator.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (Exception e) {
+            System.out.println("Profile propagation failed: " + e.getMessage());
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Records and schedules propagation of the current profile of {@code nick}.
+     * A propagation of the same profile which is still in progress is abandoned and started over.
+     */
+    public void propagate(String nick) throws BackendException {
+        PropagationCheckpoint checkpoint = new PropagationCheckpoint(nick, Phase.FOLLOWERS.name(), null, 0);
+        session.savePropagationCheckpoint(checkpoint);
+        schedule(checkpoint);
+    }
+
+    /**
+     * Schedules propagations left unfinished by a previous run.
+     */
+    public void resumePending() throws BackendException {
+        List<PropagationCheckpoint> checkpoints = session.selectPropagationCheckpoints();
+        for (PropagationCheckpoint checkpoint : checkpoints) {
+            logger.info("Resuming profile propagation of {} from {} after {}", checkpoint.getNick(),
+                    checkpoint.getPhase(), checkpoint.getPosition());
+            schedule(checkpoint);
+        }
+    }
+
+    private void schedule(PropagationCheckpoint checkpoint) {
+        Object request = new Object();
+        latestRequests.put(checkpoint.getNick(), request);
+        executor.execute(() -> {
+            try {
+                run(checkpoint, request);
+            } catch (BackendException e) {
+                logger.error("Profile propagation of " + checkpoint.getNick() + " failed, it will be resumed on next start", e);
+            } finally {
+                latestRequests.remove(checkpoint.getNick(), request);
+            }
+        });
+    }
+
+    private void run(PropagationCheckpoint checkpoint, Object request) throws BackendException {
+        String nick = checkpoint.getNick();
+        User profile = session.selectUser(nick);
+        if (profile == null) {
+            session.removePropagationCheckpoint(nick);
+            return;
+        }
+
+        Phase start = Phase.valueOf(checkpoint.getPhase());
+        for (Phase phase : Phase.values()) {
+            if (phase.compareTo(start) < 0) continue;
+            if (phase != start) {
+                checkpoint.setPhase(phase.name());
+                checkpoint.setPosition(null);
+            }
+            if (!runPhase(phase, profile, checkpoint, request)) {
+                logger.debug("Profile propagation of {} superseded by a newer one", nick);
+                return;
+            }
+        }
+        if (isLatest(nick, request)) {
+            session.removePropagationCheckpoint(nick);
+        }
+        logger.info("Profile of {} propagated to {} rows", nick, checkpoint.getRowsDone());
+    }
+
+    /**
+     * @return {@code false} when the propagation was superseded by a newer request for the same user
+     */
+    private boolean runPhase(Phase phase, User profile, PropagationCheckpoint checkpoint, Object request) throws BackendException {
+        String nick = profile.getNickname();
+        while (true) {
+            if (!isLatest(nick, request)) return false;
+
+            long readMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+            ArrayList<String> page = phase == Phase.FOLLOWERS
+                    ? session.selectFollowingNicknamesAfter(nick, checkpoint.getPosition(), pageSize)
+                    : session.selectFollowerNicknamesAfter(nick, checkpoint.getPosition(), pageSize);
+            if (page.isEmpty()) return true;
+
+            rewrite(page, phase == Phase.FOLLOWERS ? session::updateFollowerAsync : session::updateFollowingAsync, profile,
+                    readMicros);
+
+            checkpoint.setPosition(page.get(page.size() - 1));
+            checkpoint.setRowsDone(checkpoint.getRowsDone() + page.size());
+            rowsMeter.mark(page.size());
+            if (!isLatest(nick, request)) return false;
+            session.savePropagationCheckpoint(checkpoint);
+            logger.info("Profile propagation of {}: {} rows done, {} up to {}", nick, checkpoint.getRowsDone(),
+                    phase, checkpoint.getPosition());
+
+            if (page.size() < pageSize) return true;
+        }
+    }
+
+    @FunctionalInterface
+    private interface CopyWrite {
+        ListenableFuture<ResultSet> write(String owner, User profile, long timestampMicros);
+    }
+
+    private void rewrite(List<String> owners, CopyWrite write, User profile, long timestampMicros)
+            throws BackendException {
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        List<ListenableFuture<ResultSet>> futures = new ArrayList<>(owners.size());
+        for (String owner : owners) {
+            inFlight.acquireUninterruptibly();
+            ListenableFuture<ResultSet> future = write.write(owner, profile, timestampMicros);
+            future.addListener(inFlight::release, MoreExecutors.directExecutor());
+            futures.add(future);
+        }
+        BackendSession.awaitResult(Futures.allAsList(futures), "Could not update profile copies.");
+    }
+
+    private boolean isLatest(String nick, Object request) {
+        return latestRequests.get(nick) == request;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("Profile propagation did not finish in time, it will be resumed on next start");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
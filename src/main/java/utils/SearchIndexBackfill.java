@@ -0,0 +1,76 @@
+package utils;
+
+import backend.BackendException;
+import backend.BackendSession;
+import config.Config;
+import model.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes search index entries of all users, e.g. of users created before the index existed or by the bulk loader.
+ * Entries are idempotent, so the backfill can be run again at any time.
+ */
+public class SearchIndexBackfill {
+    private static final int PAGE_SIZE = 500;
+
+    BackendSession session;
+    int threads;
+
+    public SearchIndexBackfill(BackendSession session, int threads) {
+        this.session = session;
+        this.threads = Math.max(1, threads);
+    }
+
+    public static void main(String[] args) {
+        try {
+            Config config = Config.load();
+            try (BackendSession session = new BackendSession(config.getString("contact_point"), config.getString("keyspace"), config)) {
+                new SearchIndexBackfill(session, config.getInt("search_backfill_threads", 16)).run();
+            }
+        } catch (BackendException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Walks through all users page by page, indexing users of a page in parallel.
+     */
+    public void run() throws BackendException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        LongAdder indexed = new LongAdder();
+        try {
+            String after = null;
+            ArrayList<String> page;
+            do {
+                page = session.selectUserNicknamesAfter(after, PAGE_SIZE);
+                List<Future<Object>> results = new ArrayList<>(page.size());
+                for (String nick : page) {
+                    results.add(executor.submit(() -> {
+                        User user = session.selectUser(nick);
+                        if (user == null) return null;
+                        return BackendSession.awaitResult(session.updateSearchTermsAsync(null, user),
+                                "Could not update search index.");
+                    }));
+                }
+                for (Future<Object> result : results) {
+                    BackendSession.awaitResult(result, "Could not update search index.");
+                    indexed.increment();
+                }
+                if (!page.isEmpty()) {
+                    after = page.get(page.size() - 1);
+                    System.out.println("Indexed " + indexed.sum() + " users");
+                }
+            } while (page.size() == PAGE_SIZE);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -12,10 +12,19 @@ import java.util.ArrayList;
 public class UserDataValidator extends Validator {
     SimpleDateFormat dateFormat;
     @Getter ArrayList<String> errorMessages;
+    ProfilePropagator profilePropagator;
 
 
     public UserDataValidator(BackendSession session) {
+        this(session, null);
+    }
+
+    /**
+     * @param profilePropagator copies edited profiles into followers/following rows, may be {@code null}
+     */
+    public UserDataValidator(BackendSession session, ProfilePropagator profilePropagator) {
         super(session);
+        this.profilePropagator = profilePropagator;
         dateFormat = new SimpleDateFormat("dd-MM-yyyy");
         dateFormat.setLenient(false);
         errorMessages = new ArrayList<>();
@@ -57,10 +66,18 @@ public class UserDataValidator extends Validator {
             errorMessages.add(props.getProperty("bio_wrong_length"));
             validationPassed = false;
         }
-        if (validationPassed) {
+        if (validationPassed && isNewUser) {
+            // the check above misses a concurrent registration of the same nick
+            if (!session.registerUser(nick, password, firstName, lastName, birthDate, bio)) {
+                errorMessages.add(props.getProperty("duplicated_login"));
+                validationPassed = false;
+            }
+        } else if (validationPassed) {
             session.addUser(nick, password, firstName, lastName, birthDate, bio);
+            if (profilePropagator != null) {
+                profilePropagator.propagate(nick);
+            }
         }
-        System.out.println(errorMessages);
         return validationPassed;
     }
 
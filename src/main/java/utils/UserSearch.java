@@ -0,0 +1,168 @@
+package utils;
+
+import backend.BackendException;
+import backend.BackendSession;
+import backend.ExpiringLruCache;
+import backend.SearchTerms;
+import com.codahale.metrics.Gauge;
+import config.Config;
+import model.UserMatch;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prefix and typo-tolerant search of users by nick, first and last name, served from the usersearch table.
+ * <p>
+ * The longest word of the query selects one index partition (its first {@link SearchTerms#PREFIX_LENGTH}
+ * characters), which is read once. Words of that length are matched as prefixes only, shorter ones, which have no
+ * prefix partitions, only as whole terms, and a query of single characters finds nobody. Longer words also match
+ * terms with up to one typo (two for words of 8 or more characters) after the first characters, counting
+ * a swap of adjacent characters as one typo. The remaining words of the query must match the nick or a name word
+ * of the same user. Results are ordered by the number of typos, then by the length of the matched term,
+ * which puts exact matches before longer terms sharing the prefix.
+ * <p>
+ * Results of recent queries are cached for a short time, which covers the popular short prefixes typed by many users.
+ */
+public class UserSearch {
+    public static final int DEFAULT_RESULTS = 10;
+    public static final int DEFAULT_CANDIDATES = 1000;
+    public static final int DEFAULT_CACHE_SIZE = 1000;
+    public static final int DEFAULT_CACHE_TTL_SECONDS = 60;
+
+    private static final Comparator<UserMatch> RANKING = Comparator.comparingInt(UserMatch::getDistance)
+            .thenComparingInt(match -> match.getTerm().length())
+            .thenComparing(UserMatch::getNick);
+
+    BackendSession session;
+    int results;
+    int candidates;
+    private final ExpiringLruCache<String, List<UserMatch>> cache;
+
+    public UserSearch(BackendSession session, Config config) {
+        this(session, config.getInt("search_results", DEFAULT_RESULTS),
+                config.getInt("search_candidates", DEFAULT_CANDIDATES),
+                config.getInt("search_cache_max_size", DEFAULT_CACHE_SIZE),
+                TimeUnit.SECONDS.toMillis(config.getInt("search_cache_ttl_seconds", DEFAULT_CACHE_TTL_SECONDS)));
+    }
+
+    /**
+     * @param results    maximum number of returned users
+     * @param candidates maximum number of index entries read per query
+     */
+    public UserSearch(BackendSession session, int results, int candidates, int cacheSize, long cacheTtlMillis) {
+        this.session = session;
+        this.results = Math.max(1, results);
+        this.candidates = Math.max(this.results, candidates);
+        this.cache = new ExpiringLruCache<>(cacheSize, cacheTtlMillis, 0);
+        session.getMetrics().registerGauge("cache.search.size", (Gauge<Integer>) cache::size);
+        session.getMetrics().registerGauge("cache.search.hitRatio", (Gauge<Double>) cache::getHitRatio);
+    }
+
+    /**
+     * Returns users best matching {@code query}, best first.
+     */
+    public List<UserMatch> search(String query) throws BackendException {
+        List<String> words = SearchTerms.words(query);
+        if (words.isEmpty()) return new ArrayList<>();
+        return session.getMetrics().time("search.search", () -> cache.get(String.join(" ", words), key -> find(words)));
+    }
+
+    private List<UserMatch> find(List<String> words) throws BackendException {
+        String key = words.get(0);
+        for (String word : words) {
+            if (word.length() > key.length()) key = word;
+        }
+        if (key.length() < SearchTerms.MIN_TERM_LENGTH) return new ArrayList<>();
+        String partition = SearchTerms.partitionOf(key);
+        // short words are matched as prefixes only, so the read is narrowed down to them; words shorter than
+        // the prefix only to equal terms, skipping entries left by indexes of shorter prefixes
+        String from = key.length() > SearchTerms.PREFIX_LENGTH ? partition : key;
+        String to = key.length() < SearchTerms.PREFIX_LENGTH ? key + '\0' : from + SearchTerms.MAX_CHAR;
+        List<UserMatch> entries = session.selectSearchTerms(partition, from, to, candidates);
+
+        Map<String, UserMatch> best = new LinkedHashMap<>();
+        int maxTypos = maxTypos(key);
+        for (UserMatch entry : entries) {
+            int distance = prefixDistance(key, entry.getTerm(), maxTypos);
+            if (distance > maxTypos) continue;
+            int others = otherWordsDistance(words, key, entry);
+            if (others < 0) continue;
+            entry.setDistance(distance + others);
+            UserMatch current = best.get(entry.getNick());
+            if (current == null || RANKING.compare(entry, current) < 0) {
+                best.put(entry.getNick(), entry);
+            }
+        }
+
+        List<UserMatch> ranked = new ArrayList<>(best.values());
+        ranked.sort(RANKING);
+        return new ArrayList<>(ranked.subList(0, Math.min(results, ranked.size())));
+    }
+
+    /**
+     * @return total typos of the query words other than {@code key} matched against terms of the user,
+     * {@code -1} when one of them does not match
+     */
+    private static int otherWordsDistance(List<String> words, String key, UserMatch entry) {
+        if (words.size() == 1) return 0;
+        List<String> terms = new ArrayList<>(SearchTerms.terms(entry.getNick(), entry.getFirstName(), entry.getLastName()));
+        terms.remove(entry.getTerm());
+        boolean keySkipped = false;
+        int total = 0;
+        for (String word : words) {
+            if (!keySkipped && word.equals(key)) {
+                keySkipped = true;
+                continue;
+            }
+            int maxTypos = maxTypos(word);
+            int distance = Integer.MAX_VALUE;
+            for (String term : terms) {
+                distance = Math.min(distance, prefixDistance(word, term, maxTypos));
+            }
+            if (distance > maxTypos) return -1;
+            total += distance;
+        }
+        return total;
+    }
+
+    private static int maxTypos(String word) {
+        if (word.length() <= SearchTerms.PREFIX_LENGTH) return 0;
+        return word.length() < 8 ? 1 : 2;
+    }
+
+    /**
+     * Smallest edit distance (optimal string alignment) between {@code word} and any prefix of {@code term},
+     * or a value above {@code limit} once it is known to exceed it.
+     */
+    static int prefixDistance(String word, String term, int limit) {
+        if (term.startsWith(word)) return 0;
+        if (limit == 0) return 1;
+        int n = word.length();
+        int m = Math.min(term.length(), n + limit);
+        int[][] d = new int[n + 1][m + 1];
+        for (int i = 0; i <= n; i++) d[i][0] = i;
+        for (int j = 0; j <= m; j++) d[0][j] = j;
+        for (int i = 1; i <= n; i++) {
+            int rowMin = Integer.MAX_VALUE;
+            for (int j = 1; j <= m; j++) {
+                int cost = word.charAt(i - 1) == term.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && word.charAt(i - 1) == term.charAt(j - 2) && word.charAt(i - 2) == term.charAt(j - 1)) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+                }
+                rowMin = Math.min(rowMin, d[i][j]);
+            }
+            if (rowMin > limit) return limit + 1;
+        }
+        int distance = Integer.MAX_VALUE;
+        for (int j = 0; j <= m; j++) {
+            distance = Math.min(distance, d[n][j]);
+        }
+        return distance;
+    }
+}
@@ -0,0 +1,154 @@
+package backend;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    private static final long LONG_OPEN_MILLIS = 60000;
+
+    @Test
+    void staysClosedBelowMinimumCalls() {
+        CircuitBreaker breaker = new CircuitBreaker(50, 10, 4, LONG_OPEN_MILLIS, 1);
+
+        for (int i = 0; i < 3; i++) breaker.onFailure(breaker.tryAcquire());
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void opensWhenFailureRateReachesThreshold() {
+        CircuitBreaker breaker = new CircuitBreaker(50, 10, 4, LONG_OPEN_MILLIS, 1);
+
+        breaker.onSuccess(breaker.tryAcquire());
+        breaker.onSuccess(breaker.tryAcquire());
+        breaker.onFailure(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onFailure(breaker.tryAcquire());
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1, breaker.opened.sum());
+    }
+
+    @Test
+    void countsOnlyLastWindowOfCalls() {
+        CircuitBreaker breaker = new CircuitBreaker(50, 4, 4, LONG_OPEN_MILLIS, 1);
+
+        breaker.onFailure(breaker.tryAcquire());
+        for (int i = 0; i < 4; i++) breaker.onSuccess(breaker.tryAcquire());
+        // the first failure has left the window, so one failure out of four is below the threshold
+        breaker.onFailure(breaker.tryAcquire());
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void ignoredOutcomesDoNotCount() {
+        CircuitBreaker breaker = new CircuitBreaker(50, 10, 2, LONG_OPEN_MILLIS, 1);
+
+        for (int i = 0; i < 10; i++) breaker.onIgnored(breaker.tryAcquire());
+        breaker.onSuccess(breaker.tryAcquire());
+        breaker.onFailure(breaker.tryAcquire());
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void rejectsRequestsWhileOpen() {
+        CircuitBreaker breaker = open(new CircuitBreaker(50, 1, 1, LONG_OPEN_MILLIS, 1));
+
+        assertNull(breaker.tryAcquire());
+        assertNull(breaker.tryAcquire());
+        assertEquals(2, breaker.rejected.sum());
+    }
+
+    @Test
+    void letsThroughLimitedProbesOnceOpenPeriodEnds() {
+        CircuitBreaker breaker = open(new CircuitBreaker(50, 1, 1, 0, 2));
+
+        CircuitBreaker.Permit first = breaker.tryAcquire();
+        CircuitBreaker.Permit second = breaker.tryAcquire();
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(first.probe);
+        assertTrue(second.probe);
+        assertNull(breaker.tryAcquire());
+    }
+
+    @Test
+    void closesWhenAllProbesSucceed() {
+        CircuitBreaker breaker = open(new CircuitBreaker(50, 1, 1, 0, 2));
+        CircuitBreaker.Permit first = breaker.tryAcquire();
+        CircuitBreaker.Permit second = breaker.tryAcquire();
+
+        breaker.onSuccess(first);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(second);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertFalse(breaker.tryAcquire().probe);
+    }
+
+    @Test
+    void reopensWhenProbeFails() {
+        CircuitBreaker breaker = open(new CircuitBreaker(50, 1, 1, 0, 2));
+        CircuitBreaker.Permit probe = breaker.tryAcquire();
+
+        breaker.onFailure(probe);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2, breaker.opened.sum());
+    }
+
+    @Test
+    void ignoredProbeFreesItsSlot() {
+        CircuitBreaker breaker = open(new CircuitBreaker(50, 1, 1, 0, 1));
+        CircuitBreaker.Permit probe = breaker.tryAcquire();
+        assertNull(breaker.tryAcquire());
+
+        breaker.onIgnored(probe);
+
+        assertNotNull(breaker.tryAcquire());
+    }
+
+    @Test
+    void probeOfEarlierHalfOpenPeriodIsNotCounted() {
+        CircuitBreaker breaker = open(new CircuitBreaker(50, 1, 1, 0, 2));
+        CircuitBreaker.Permit failed = breaker.tryAcquire();
+        CircuitBreaker.Permit late = breaker.tryAcquire();
+        breaker.onFailure(failed);
+        CircuitBreaker.Permit current = breaker.tryAcquire();
+
+        breaker.onSuccess(late);
+        breaker.onSuccess(current);
+
+        // one of two probes of the current period succeeded so far
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void regularRequestCompletingAfterOpeningIsNotCounted() {
+        CircuitBreaker breaker = new CircuitBreaker(50, 1, 1, 0, 1);
+        CircuitBreaker.Permit regular = breaker.tryAcquire();
+        open(breaker);
+        breaker.tryAcquire();
+
+        breaker.onSuccess(regular);
+        breaker.onFailure(regular);
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    private static CircuitBreaker open(CircuitBreaker breaker) {
+        breaker.onFailure(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        return breaker;
+    }
+}
@@ -0,0 +1,152 @@
+package backend;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.PreparedStatement;
+import config.Config;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExecutionProfileTest {
+
+    @Test
+    void definesBuiltInProfilesByDefault() {
+        Map<String, ExecutionProfile> profiles = ExecutionProfile.fromConfig(config());
+
+        assertEquals(Arrays.asList(ExecutionProfile.AUTH, ExecutionProfile.FEED, ExecutionProfile.SOCIAL_WRITE,
+                ExecutionProfile.BULK, ExecutionProfile.RECONCILE), List.copyOf(profiles.keySet()));
+        assertEquals(settings(ConsistencyLevel.LOCAL_QUORUM, ConsistencyLevel.LOCAL_SERIAL),
+                applied(profiles.get(ExecutionProfile.AUTH)));
+        assertEquals(settings(ConsistencyLevel.LOCAL_ONE, null), applied(profiles.get(ExecutionProfile.FEED)));
+        assertTrue(profiles.get(ExecutionProfile.BULK).hasExecutionSettings());
+        assertFalse(profiles.get(ExecutionProfile.SOCIAL_WRITE).hasExecutionSettings());
+    }
+
+    @Test
+    void overridesSettingsOfBuiltInProfile() {
+        Map<String, ExecutionProfile> profiles = ExecutionProfile.fromConfig(config(
+                "profile_feed_consistency", " quorum ", "profile_feed_read_timeout_millis", "0"));
+
+        assertEquals(settings(ConsistencyLevel.QUORUM, null), applied(profiles.get(ExecutionProfile.FEED)));
+        assertFalse(profiles.get(ExecutionProfile.FEED).hasExecutionSettings());
+    }
+
+    @Test
+    void readsCustomProfile() {
+        Map<String, ExecutionProfile> profiles = ExecutionProfile.fromConfig(config(
+                "execution_profiles", "auth, analytics",
+                "profile_analytics_consistency", "ALL", "profile_analytics_fetch_size", "500"));
+
+        assertEquals(Arrays.asList("auth", "analytics"), List.copyOf(profiles.keySet()));
+        assertEquals(settings(ConsistencyLevel.ALL, null), applied(profiles.get("analytics")));
+        assertTrue(profiles.get("analytics").hasExecutionSettings());
+    }
+
+    @Test
+    void profileWithoutSettingsKeepsDriverDefaults() {
+        ExecutionProfile profile = ExecutionProfile.fromConfig(config("execution_profiles", "plain")).get("plain");
+
+        assertEquals(settings(null, null), applied(profile));
+        assertFalse(profile.hasExecutionSettings());
+    }
+
+    @Test
+    void rejectsNonSerialSerialConsistency() {
+        assertThrows(IllegalArgumentException.class, () -> ExecutionProfile.fromConfig(config(
+                "profile_auth_serial_consistency", "QUORUM")));
+    }
+
+    @Test
+    void idempotenceCanOnlyBeTurnedOff() {
+        Map<String, ExecutionProfile> profiles = ExecutionProfile.fromConfig(config(
+                "execution_profiles", "unset,on,off",
+                "profile_on_idempotent", "true", "profile_off_idempotent", "false"));
+
+        assertTrue(profiles.get("unset").isIdempotent(true));
+        assertFalse(profiles.get("unset").isIdempotent(false));
+        assertTrue(profiles.get("on").isIdempotent(true));
+        assertFalse(profiles.get("on").isIdempotent(false));
+        assertFalse(profiles.get("off").isIdempotent(true));
+        assertFalse(profiles.get("off").isIdempotent(false));
+    }
+
+    @Test
+    void assignsStatementsToBuiltInProfiles() {
+        Config config = config();
+        Map<String, ExecutionProfile> profiles = ExecutionProfile.fromConfig(config);
+
+        assertSame(profiles.get(ExecutionProfile.AUTH), ExecutionProfile.forStatement("SELECT_USER", profiles, config));
+        assertSame(profiles.get(ExecutionProfile.RECONCILE),
+                ExecutionProfile.forStatement("COUNT_POSTS", profiles, config));
+        assertNull(ExecutionProfile.forStatement("UNKNOWN_STATEMENT", profiles, config));
+    }
+
+    @Test
+    void movesStatementToAnotherProfile() {
+        Config config = config("statement_select_posts_profile", "auth", "statement_select_user_profile", "none");
+        Map<String, ExecutionProfile> profiles = ExecutionProfile.fromConfig(config);
+
+        assertSame(profiles.get(ExecutionProfile.AUTH), ExecutionProfile.forStatement("SELECT_POSTS", profiles, config));
+        assertNull(ExecutionProfile.forStatement("SELECT_USER", profiles, config));
+    }
+
+    @Test
+    void leavesStatementOfUnlistedBuiltInProfileWithDriverDefaults() {
+        Config config = config("execution_profiles", "auth");
+        Map<String, ExecutionProfile> profiles = ExecutionProfile.fromConfig(config);
+
+        assertNull(ExecutionProfile.forStatement("SELECT_POSTS", profiles, config));
+    }
+
+    @Test
+    void rejectsStatementAssignedToUndefinedProfile() {
+        Config config = config("statement_select_posts_profile", "missing");
+        Map<String, ExecutionProfile> profiles = ExecutionProfile.fromConfig(config);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> ExecutionProfile.forStatement("SELECT_POSTS", profiles, config));
+    }
+
+    private static Config config(String... keysAndValues) {
+        Properties properties = new Properties();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            properties.setProperty(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return new Config(properties);
+    }
+
+    private static Map<String, ConsistencyLevel> settings(ConsistencyLevel consistency, ConsistencyLevel serialConsistency) {
+        Map<String, ConsistencyLevel> settings = new HashMap<>();
+        if (consistency != null) settings.put("setConsistencyLevel", consistency);
+        if (serialConsistency != null) settings.put("setSerialConsistencyLevel", serialConsistency);
+        return settings;
+    }
+
+    /**
+     * Returns consistency levels the profile sets on a prepared statement, by setter name.
+     */
+    private static Map<String, ConsistencyLevel> applied(ExecutionProfile profile) {
+        Map<String, ConsistencyLevel> applied = new HashMap<>();
+        PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                (proxy, method, args) -> {
+                    if (!method.getName().startsWith("set")) throw new UnsupportedOperationException(method.getName());
+                    applied.put(method.getName(), (ConsistencyLevel) args[0]);
+                    return proxy;
+                });
+        profile.applyTo(statement);
+        return applied;
+    }
+}
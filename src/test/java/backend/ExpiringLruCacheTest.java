@@ -0,0 +1,203 @@
+package backend;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExpiringLruCacheTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Test
+    void loadsOnceAndServesFromCache() throws BackendException {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10, 60000, 60000);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals("ALICE", cache.get("alice", key -> load(key, loads)));
+        assertEquals("ALICE", cache.get("alice", key -> load(key, loads)));
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntry() throws BackendException {
+        List<String> removed = new ArrayList<>();
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(2, 60000, 60000,
+                (key, value) -> removed.add(key));
+        cache.put("alice", "ALICE");
+        cache.put("bob", "BOB");
+        cache.get("alice", key -> "reloaded");
+
+        cache.put("carol", "CAROL");
+
+        assertEquals("ALICE", cache.getIfPresent("alice"));
+        assertNull(cache.getIfPresent("bob"));
+        assertEquals(List.of("bob"), removed);
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    void reloadsExpiredEntry() throws Exception {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10, 50, 50);
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("alice", key -> load(key, loads));
+
+        Thread.sleep(100);
+
+        assertNull(cache.getIfPresent("alice"));
+        assertEquals("ALICE", cache.get("alice", key -> load(key, loads)));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void cleanUpDropsExpiredEntries() throws Exception {
+        List<String> removed = new ArrayList<>();
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10, 50, 50, (key, value) -> removed.add(key));
+        cache.put("alice", "ALICE");
+
+        Thread.sleep(100);
+        cache.cleanUp();
+
+        assertEquals(0, cache.size());
+        assertEquals(List.of("alice"), removed);
+    }
+
+    @Test
+    void cachesMissingValuesWithTheirOwnTtl() throws BackendException {
+        ExpiringLruCache<String, String> negativeCached = new ExpiringLruCache<>(10, 60000, 60000);
+        ExpiringLruCache<String, String> negativeUncached = new ExpiringLruCache<>(10, 60000, 0);
+        AtomicInteger loads = new AtomicInteger();
+
+        negativeCached.get("ghost", key -> missing(loads));
+        negativeCached.get("ghost", key -> missing(loads));
+        assertEquals(1, loads.get());
+
+        negativeUncached.get("ghost", key -> missing(loads));
+        negativeUncached.get("ghost", key -> missing(loads));
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void doesNotCacheFailedLoad() throws BackendException {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10, 60000, 60000);
+
+        assertThrows(BackendException.class, () -> cache.get("alice", key -> {
+            throw new BackendException("Could not load user.");
+        }));
+
+        assertEquals("ALICE", cache.get("alice", String::toUpperCase));
+    }
+
+    @Test
+    void slowLoadDoesNotBlockOtherKeys() throws Exception {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10, 60000, 60000);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> slow = CompletableFuture.supplyAsync(() -> getQuietly(cache, "alice", key -> {
+            loading.countDown();
+            await(release);
+            return "ALICE";
+        }));
+        assertTrue(loading.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        CompletableFuture<String> fast = CompletableFuture.supplyAsync(() -> getQuietly(cache, "bob", String::toUpperCase));
+
+        assertEquals("BOB", fast.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        release.countDown();
+        assertEquals("ALICE", slow.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void loadStartedBeforeInvalidationDoesNotStoreStaleValue() throws Exception {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10, 60000, 60000);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> stale = CompletableFuture.supplyAsync(() -> getQuietly(cache, "alice", key -> {
+            loading.countDown();
+            await(release);
+            return "stale";
+        }));
+        assertTrue(loading.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        cache.invalidate("alice");
+        release.countDown();
+
+        assertEquals("stale", stale.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertNull(cache.getIfPresent("alice"));
+    }
+
+    @Test
+    void newerLoadOfKeyWins() throws Exception {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10, 60000, 60000);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> older = CompletableFuture.supplyAsync(() -> getQuietly(cache, "alice", key -> {
+            loading.countDown();
+            await(release);
+            return "older";
+        }));
+        assertTrue(loading.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        cache.invalidate("alice");
+        assertEquals("newer", cache.get("alice", key -> "newer"));
+        release.countDown();
+
+        assertEquals("older", older.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("newer", cache.getIfPresent("alice"));
+    }
+
+    @Test
+    void replaceStoresOnlyOverExpectedValue() {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10, 60000, 60000);
+        String cached = "ALICE";
+        cache.put("alice", cached);
+
+        assertTrue(cache.replace("alice", cached, "ALICE2"));
+        assertEquals("ALICE2", cache.getIfPresent("alice"));
+        assertFalse(cache.replace("alice", cached, "ALICE3"));
+        cache.invalidate("alice");
+        assertFalse(cache.replace("alice", "ALICE2", "ALICE3"));
+        assertNull(cache.getIfPresent("alice"));
+    }
+
+    private static String load(String key, AtomicInteger loads) {
+        loads.incrementAndGet();
+        return key.toUpperCase();
+    }
+
+    private static String missing(AtomicInteger loads) {
+        loads.incrementAndGet();
+        return null;
+    }
+
+    private static String getQuietly(ExpiringLruCache<String, String> cache, String key,
+                                     ExpiringLruCache.Loader<String, String> loader) {
+        try {
+            return cache.get(key, loader);
+        } catch (BackendException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) throw new IllegalStateException("Test timed out");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
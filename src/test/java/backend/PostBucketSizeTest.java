@@ -0,0 +1,81 @@
+package backend;
+
+import config.Config;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PostBucketSizeTest {
+
+    private static long millis(String instant) {
+        return Instant.parse(instant).toEpochMilli();
+    }
+
+    @Test
+    void dayBucketsAreEpochDays() {
+        assertEquals(0, PostBucketSize.DAY.bucketOf(0));
+        assertEquals(0, PostBucketSize.DAY.bucketOf(millis("1970-01-01T23:59:59.999Z")));
+        assertEquals(1, PostBucketSize.DAY.bucketOf(millis("1970-01-02T00:00:00Z")));
+        assertEquals(-1, PostBucketSize.DAY.bucketOf(-1));
+    }
+
+    @Test
+    void weekBucketsStartOnMonday() {
+        // 1970-01-01 was a Thursday
+        assertEquals(0, PostBucketSize.WEEK.bucketOf(millis("1970-01-01T00:00:00Z")));
+        assertEquals(0, PostBucketSize.WEEK.bucketOf(millis("1970-01-04T23:59:59.999Z")));
+        assertEquals(1, PostBucketSize.WEEK.bucketOf(millis("1970-01-05T00:00:00Z")));
+        assertEquals(-1, PostBucketSize.WEEK.bucketOf(millis("1969-12-28T12:00:00Z")));
+        assertEquals(PostBucketSize.WEEK.bucketOf(millis("2020-11-16T00:00:00Z")),
+                PostBucketSize.WEEK.bucketOf(millis("2020-11-22T23:59:59Z")));
+    }
+
+    @Test
+    void monthBucketsFollowCalendarMonths() {
+        long february = PostBucketSize.MONTH.bucketOf(millis("2020-02-01T00:00:00Z"));
+
+        assertEquals(2020 * 12 + 1, february);
+        assertEquals(february, PostBucketSize.MONTH.bucketOf(millis("2020-02-29T23:59:59.999Z")));
+        assertEquals(february - 1, PostBucketSize.MONTH.bucketOf(millis("2020-01-31T23:59:59.999Z")));
+        assertEquals(february + 11, PostBucketSize.MONTH.bucketOf(millis("2021-01-01T00:00:00Z")));
+    }
+
+    @Test
+    void bucketsNeverDecreaseWithTime() {
+        long step = 3 * 3600 * 1000 + 17;
+        for (PostBucketSize size : PostBucketSize.values()) {
+            long previous = size.bucketOf(millis("1969-06-01T00:00:00Z"));
+            for (long time = millis("1969-06-01T00:00:00Z"); time < millis("1971-06-01T00:00:00Z"); time += step) {
+                long bucket = size.bucketOf(time);
+                assertTrue(bucket == previous || bucket == previous + 1, size + " at " + time);
+                previous = bucket;
+            }
+        }
+    }
+
+    @Test
+    void readsLayoutFromConfig() {
+        assertNull(PostBucketSize.fromConfig(config()));
+        assertNull(PostBucketSize.fromConfig(config("posts_layout", "single")));
+        assertEquals(PostBucketSize.MONTH, PostBucketSize.fromConfig(config("posts_layout", "bucketed")));
+        assertEquals(PostBucketSize.WEEK,
+                PostBucketSize.fromConfig(config("posts_layout", "bucketed", "posts_bucket_size", "week")));
+        assertThrows(IllegalArgumentException.class, () -> PostBucketSize.fromConfig(config("posts_layout", "sharded")));
+        assertThrows(IllegalArgumentException.class,
+                () -> PostBucketSize.fromConfig(config("posts_layout", "bucketed", "posts_bucket_size", "year")));
+    }
+
+    private static Config config(String... keysAndValues) {
+        Properties properties = new Properties();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            properties.setProperty(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return new Config(properties);
+    }
+}
@@ -0,0 +1,185 @@
+package backend;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.InvalidQueryException;
+import com.datastax.driver.core.exceptions.OperationTimedOutException;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.ListenableFuture;
+import config.Config;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ResilientExecutorTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+    private static final Statement STATEMENT = new SimpleStatement("SELECT * FROM users");
+    private static final ResultSet RESULT = stub(ResultSet.class);
+
+    private final FakeSession session = new FakeSession();
+
+    @Test
+    void retriesOverloadFailureOfIdempotentStatement() throws Exception {
+        try (ResilientExecutor executor = executor("retry_base_delay_millis=1")) {
+            session.respond(timeout(), RESULT);
+
+            assertSame(RESULT, executor.executeAsync(STATEMENT, true).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertEquals(2, session.executions.get());
+            assertEquals(1, executor.getRetryCount());
+        }
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() {
+        try (ResilientExecutor executor = executor("retry_base_delay_millis=1", "retry_max_attempts=3")) {
+            session.respond(timeout(), timeout(), timeout(), RESULT);
+
+            assertInstanceOf(OperationTimedOutException.class, failure(executor.executeAsync(STATEMENT, true)));
+            assertEquals(3, session.executions.get());
+            assertEquals(2, executor.getRetryCount());
+            assertEquals(1, executor.getRetriesExhaustedCount());
+        }
+    }
+
+    @Test
+    void doesNotRetryNonIdempotentStatement() {
+        try (ResilientExecutor executor = executor("retry_base_delay_millis=1")) {
+            session.respond(timeout(), RESULT);
+
+            assertInstanceOf(OperationTimedOutException.class, failure(executor.executeAsync(STATEMENT, false)));
+            assertEquals(1, session.executions.get());
+            assertEquals(0, executor.getRetryCount());
+            assertEquals(0, executor.getRetriesExhaustedCount());
+        }
+    }
+
+    @Test
+    void doesNotRetryFailureUnrelatedToOverload() {
+        try (ResilientExecutor executor = executor("retry_base_delay_millis=1")) {
+            session.respond(new InvalidQueryException("Undefined column name"), RESULT);
+
+            assertInstanceOf(InvalidQueryException.class, failure(executor.executeAsync(STATEMENT, true)));
+            assertEquals(1, session.executions.get());
+        }
+    }
+
+    @Test
+    void doesNotRetryPastDeadline() {
+        try (ResilientExecutor executor = executor("retry_base_delay_millis=1", "operation_deadline_millis=0")) {
+            session.respond(timeout(), RESULT);
+
+            assertInstanceOf(OperationTimedOutException.class, failure(executor.executeAsync(STATEMENT, true)));
+            assertEquals(1, session.executions.get());
+            assertEquals(1, executor.getRetriesExhaustedCount());
+        }
+    }
+
+    @Test
+    void failsPendingRetryOnClose() {
+        ResilientExecutor executor = executor("retry_base_delay_millis=60000", "retry_max_delay_millis=60000",
+                "operation_deadline_millis=120000");
+        session.respond(timeout(), RESULT);
+
+        ListenableFuture<ResultSet> result = executor.executeAsync(STATEMENT, true);
+        executor.close();
+
+        assertInstanceOf(BackendException.class, failure(result));
+        assertEquals(1, session.executions.get());
+    }
+
+    @Test
+    void rejectsStatementsWhileCircuitBreakerIsOpen() {
+        try (ResilientExecutor executor = executor("breaker_window_size=1", "breaker_minimum_calls=1",
+                "breaker_open_millis=60000")) {
+            session.respond(timeout(), RESULT);
+            failure(executor.executeAsync(STATEMENT, false));
+
+            assertInstanceOf(CircuitBreakerOpenException.class, failure(executor.executeAsync(STATEMENT, true)));
+            assertEquals(1, session.executions.get());
+            assertEquals(CircuitBreaker.State.OPEN, executor.getCircuitBreaker().getState());
+        }
+    }
+
+    private ResilientExecutor executor(String... settings) {
+        Properties properties = new Properties();
+        for (String setting : settings) {
+            String[] keyAndValue = setting.split("=", 2);
+            properties.setProperty(keyAndValue[0], keyAndValue[1]);
+        }
+        return new ResilientExecutor(session.proxy, new Config(properties));
+    }
+
+    private static Throwable failure(ListenableFuture<ResultSet> result) {
+        return assertThrows(ExecutionException.class, () -> result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS)).getCause();
+    }
+
+    private static OperationTimedOutException timeout() {
+        return new OperationTimedOutException(new InetSocketAddress("127.0.0.1", 9042));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    /**
+     * Session answering {@code executeAsync} with queued results and failures, in order.
+     */
+    private static final class FakeSession {
+        final Queue<Object> responses = new ConcurrentLinkedQueue<>();
+        final AtomicInteger executions = new AtomicInteger();
+        final Session proxy = (Session) Proxy.newProxyInstance(Session.class.getClassLoader(),
+                new Class<?>[]{Session.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("executeAsync")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    executions.incrementAndGet();
+                    return new CompletedResultSetFuture(responses.remove());
+                });
+
+        void respond(Object... responses) {
+            for (Object response : responses) {
+                this.responses.add(response);
+            }
+        }
+    }
+
+    private static final class CompletedResultSetFuture extends AbstractFuture<ResultSet> implements ResultSetFuture {
+
+        CompletedResultSetFuture(Object response) {
+            if (response instanceof Throwable) {
+                setException((Throwable) response);
+            } else {
+                set((ResultSet) response);
+            }
+        }
+
+        @Override
+        public ResultSet getUninterruptibly() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResultSet getUninterruptibly(long timeout, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package backend;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchTermsTest {
+
+    @Test
+    void normalizesCaseAndPolishCharacters() {
+        assertEquals("lukasz zolc", SearchTerms.normalize("  \u0141ukasz \u017b\u00f3\u0142\u0107 "));
+        assertEquals("", SearchTerms.normalize(null));
+    }
+
+    @Test
+    void splitsWordsOnSeparators() {
+        assertEquals(Arrays.asList("jan", "maria", "kowalski", "x"), SearchTerms.words("Jan-Maria  kowalski_x"));
+        assertEquals(Collections.emptyList(), SearchTerms.words(" - "));
+    }
+
+    @Test
+    void termsAreWholeNickAndWordsOfNickAndNames() {
+        assertEquals(Arrays.asList("john.smith", "john", "smith", "jan", "kowalski"),
+                List.copyOf(SearchTerms.terms("John.Smith", "Jan", "Kowalski")));
+    }
+
+    @Test
+    void indexedTermsSkipSingleCharacters() {
+        assertEquals(Arrays.asList("j_k", "kowalski"), List.copyOf(SearchTerms.indexedTerms("j_k", "J", "Kowalski")));
+    }
+
+    @Test
+    void partitionIsPrefixOfTerm() {
+        assertEquals("kow", SearchTerms.partitionOf("kowalski"));
+        assertEquals("kow", SearchTerms.partitionOf("kow"));
+        assertEquals("ko", SearchTerms.partitionOf("ko"));
+    }
+
+    @Test
+    void rangeUpperBoundSortsAfterTerms() {
+        String prefix = SearchTerms.normalize("Kowa");
+
+        assertTrue("kowalski".compareTo(prefix + SearchTerms.MAX_CHAR) < 0);
+        assertTrue("kowb".compareTo(prefix + SearchTerms.MAX_CHAR) > 0);
+    }
+}
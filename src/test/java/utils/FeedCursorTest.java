@@ -0,0 +1,45 @@
+package utils;
+
+import model.Post;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FeedCursorTest {
+
+    @Test
+    void decodesPositionOfEncodedPost() {
+        Post position = FeedCursor.decode(FeedCursor.encode(new Post("alice", 1600000000123L, "hello")));
+
+        assertEquals("alice", position.getAuthorNick());
+        assertEquals(1600000000123L, position.getCreationDate());
+        assertNull(position.getText());
+    }
+
+    @Test
+    void keepsNickWithSeparatorAndNonAsciiCharacters() {
+        Post position = FeedCursor.decode(FeedCursor.encode(new Post("a:b\u0142", 42, null)));
+
+        assertEquals("a:b\u0142", position.getAuthorNick());
+        assertEquals(42, position.getCreationDate());
+    }
+
+    @Test
+    void encodesUrlSafeCursor() {
+        String cursor = FeedCursor.encode(new Post("??>>??", 1, null));
+
+        assertTrue(cursor.matches("[A-Za-z0-9_-]+"), cursor);
+    }
+
+    @Test
+    void rejectsMalformedCursor() {
+        assertThrows(IllegalArgumentException.class, () -> FeedCursor.decode("not a cursor!"));
+        // valid Base64 of text without a separator
+        assertThrows(IllegalArgumentException.class, () -> FeedCursor.decode("YWxpY2U"));
+        // valid Base64 of a non-numeric creation date
+        assertThrows(IllegalArgumentException.class, () -> FeedCursor.decode("eDphbGljZQ"));
+    }
+}
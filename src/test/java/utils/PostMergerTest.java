@@ -0,0 +1,100 @@
+package utils;
+
+import model.Post;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PostMergerTest {
+
+    private static Post post(String author, long creationDate) {
+        return new Post(author, creationDate, author + "@" + creationDate);
+    }
+
+    @Test
+    void mergesPartitionsNewestFirst() {
+        List<Post> alice = Arrays.asList(post("alice", 50), post("alice", 30), post("alice", 10));
+        List<Post> bob = Arrays.asList(post("bob", 40), post("bob", 20));
+        List<Post> carol = Collections.emptyList();
+
+        assertEquals(Arrays.asList(post("alice", 50), post("bob", 40), post("alice", 30), post("bob", 20),
+                post("alice", 10)), PostMerger.mergeNewestFirst(Arrays.asList(alice, bob, carol), 10));
+    }
+
+    @Test
+    void breaksTiesOfCreationDateByAuthor() {
+        List<Post> bob = Collections.singletonList(post("bob", 10));
+        List<Post> alice = Collections.singletonList(post("alice", 10));
+
+        assertEquals(Arrays.asList(post("alice", 10), post("bob", 10)),
+                PostMerger.mergeNewestFirst(Arrays.asList(bob, alice), 10));
+    }
+
+    @Test
+    void stopsAtLimitWithoutReadingFurther() {
+        List<Post> alice = Arrays.asList(post("alice", 50), post("alice", 30), post("alice", 10));
+        CountingIterator bob = new CountingIterator(Arrays.asList(post("bob", 40), post("bob", 20), post("bob", 5)));
+
+        List<Post> merged = PostMerger.mergeIterators(Arrays.asList(alice.iterator(), bob), 2);
+
+        assertEquals(Arrays.asList(post("alice", 50), post("bob", 40)), merged);
+        // the head of the stream and the post replacing it in the heap
+        assertEquals(2, bob.read);
+    }
+
+    @Test
+    void emitsPostDeliveredBySeveralStreamsOnce() {
+        List<Post> first = Arrays.asList(post("alice", 30), post("alice", 10));
+        List<Post> second = Arrays.asList(post("alice", 30), post("bob", 20), post("alice", 10));
+
+        assertEquals(Arrays.asList(post("alice", 30), post("bob", 20), post("alice", 10)),
+                PostMerger.mergeNewestFirst(Arrays.asList(first, second), 10));
+    }
+
+    @Test
+    void skipsPostsNotOlderThanCursor() {
+        List<Post> alice = Arrays.asList(post("alice", 50), post("alice", 30), post("alice", 10));
+        List<Post> bob = Arrays.asList(post("bob", 40), post("bob", 30), post("bob", 20));
+        Post cursor = new Post("alice", 30, null);
+
+        List<Post> merged = PostMerger.mergeIterators(Arrays.asList(alice.iterator(), bob.iterator()), cursor, 10);
+
+        // bob's post of the same date sorts after alice's, so it was not shown yet
+        assertEquals(Arrays.asList(post("bob", 30), post("bob", 20), post("alice", 10)), merged);
+    }
+
+    @Test
+    void returnsNothingForNonPositiveLimit() {
+        List<Post> alice = Collections.singletonList(post("alice", 10));
+
+        assertTrue(PostMerger.mergeNewestFirst(Collections.singletonList(alice), 0).isEmpty());
+        assertTrue(PostMerger.mergeNewestFirst(Collections.emptyList(), 10).isEmpty());
+    }
+
+    private static final class CountingIterator implements Iterator<Post> {
+        private final Iterator<Post> posts;
+        int read;
+
+        CountingIterator(List<Post> posts) {
+            this.posts = new ArrayList<>(posts).iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return posts.hasNext();
+        }
+
+        @Override
+        public Post next() {
+            read++;
+            return posts.next();
+        }
+    }
+}